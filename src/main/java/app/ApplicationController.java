@@ -1,517 +1,821 @@
 package app;
 
-import java.io.BufferedReader;
 import java.io.FileInputStream;
-import java.io.InputStreamReader;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.text.SimpleDateFormat;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
-import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 import org.apache.poi.ss.usermodel.*;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 
+import app.ingest.CellCoercion;
+import app.ingest.DelimitedTaskScanner;
+import app.ingest.ExcelEventReaders;
+import app.ingest.ParallelDelimitedLoader;
+import app.ingest.SnapshotCache;
+import app.ingest.SourceRow;
+import app.ingest.SourceRowHandler;
+import app.ingest.SourceStreams;
+import app.ingest.SourceWatcher;
+import dom.gantt.Dependency;
 import dom.gantt.TaskAbstract;
-import dom.gantt.TaskConcrete;
+import service.IExportSession;
 import service.IMainController;
+import util.CriticalPath;
+import util.DurationDistribution;
 import util.FileTypes;
+import util.HierarchyIndex;
+import util.HistogramBucket;
+import util.LoadResult;
+import util.ProjectCalendars;
+import util.ProjectDiff;
 import util.ProjectInfo;
+import util.QueryResult;
+import util.ScheduleRisk;
+import util.SortKey;
+import util.TaskQuery;
+import util.TaskDelta;
+import util.TaskStore;
 
 public class ApplicationController implements IMainController {
 
-    private ProjectInfo projectInfo;
-    private Workbook targetWorkbook;
-    private String targetPath;
-    private Map<String, CellStyle> stylesMap = new HashMap<>();
-
-    @Override
-    public List<String> load(String sourcePath, FileTypes filetype) {
-        List<String> taskDescriptions = new ArrayList<>();
-        try {
-            List<TaskAbstract> tasks;
-            switch (filetype) {
-                case XLS:
-                case XLSX:
-                    tasks = loadAndParseFromExcel(sourcePath);
-                    break;
-                case CSV:
-                case TSV:
-                    tasks = loadAndParseFromCSV(sourcePath, filetype);
-                    break;
-                default:
-                    System.err.println("Unsupported file type: " + filetype);
-                    return null;
-            }
+    /*
+     * The loaded project as an immutable snapshot. Readers take it once per call and
+     * work on that version without locks, while loads and reloads build the next
+     * version and publish it here; a version stays usable for as long as anyone still
+     * holds it or one of its task views. Publishing is serialized on publishLock.
+     */
+    private final AtomicReference<ProjectInfo> project = new AtomicReference<>();
+    private final Object publishLock = new Object();
+    private ExportSession session;
+    private boolean streamingExcel = false;
+    private int loadParallelism = 1;
+    private SnapshotCache snapshotCache;
+    private boolean rollUpContainers = false;
+    private boolean scheduleColumns = false;
+    private ProjectCalendars calendars;
+    private Locale collationLocale = Locale.getDefault();
+    private long[] rowHashes;
+
+    public void setStreamingExcel(boolean streamingExcel) {
+        this.streamingExcel = streamingExcel;
+    }
 
-            tasks.sort(Comparator.comparingInt(TaskAbstract::getId));
-            projectInfo = new ProjectInfo();
-            projectInfo.setTasks(tasks);
+    public void setLoadParallelism(int loadParallelism) {
+        this.loadParallelism = Math.max(1, loadParallelism);
+    }
 
-            for (TaskAbstract t : tasks) {
-                taskDescriptions.add(t.toString());
-            }
+    public void setSnapshotCache(SnapshotCache snapshotCache) {
+        this.snapshotCache = snapshotCache;
+    }
 
-            return taskDescriptions;
-        } catch (Exception e) {
-            e.printStackTrace();
-            return null;
+    // When set, Gantt sheets show containers with the span, cost and effort of their subtree.
+    public void setRollUpContainers(boolean rollUpContainers) {
+        this.rollUpContainers = rollUpContainers;
+        if (session != null) {
+            session.setRollUpContainers(rollUpContainers);
         }
     }
 
-    private List<TaskAbstract> loadAndParseFromExcel(String sourcePath) throws IOException {
-        List<TaskAbstract> tasks = new ArrayList<>();
-        try (FileInputStream fis = new FileInputStream(sourcePath);
-             Workbook workbook = WorkbookFactory.create(fis)) {
+    // Adds early/late start and finish, slack and a critical flag after Effort in exported Gantt sheets.
+    public void setScheduleColumns(boolean scheduleColumns) {
+        this.scheduleColumns = scheduleColumns;
+        if (session != null) {
+            session.setScheduleColumns(scheduleColumns);
+        }
+    }
 
-            Sheet sheet = workbook.getSheetAt(0);
-            boolean header = true;
-            for (Row row : sheet) {
-                if (header) {
-                    header = false;
-                    continue;
-                }
-                if (row == null) continue;
-                int id = (int) getNumericCellValue(row.getCell(0));
-                String name = getStringCellValue(row.getCell(1));
-                int containerId = (int) getNumericCellValue(row.getCell(2));
-                Integer startDay = null;
-                Integer endDay = null;
-                Double cost = 0.0;
-                Double effort = 0.0;
+    // When set, Gantt sheets are headed by dates and leave out days on which no task's calendar works.
+    public void setCalendars(ProjectCalendars calendars) {
+        this.calendars = calendars;
+        if (session != null) {
+            session.setCalendars(calendars);
+        }
+    }
 
-                if (containerId != 0) {
-                    startDay = (int) getNumericCellValue(row.getCell(3));
-                    endDay = (int) getNumericCellValue(row.getCell(4));
-                    cost = getNumericCellValue(row.getCell(5));
-                    effort = getNumericCellValue(row.getCell(6));
-                }
+    // Locale whose collation rules order task names in getTasksSortedBy(SortKey.NAME).
+    public void setCollationLocale(Locale collationLocale) {
+        this.collationLocale = collationLocale;
+    }
 
-                TaskAbstract task = new TaskConcrete(id, name, containerId, startDay, endDay, cost, effort);
-                tasks.add(task);
-            }
-        }
-        return tasks;
+    // The current version of the loaded project, or null before the first load.
+    public ProjectInfo getSnapshot() {
+        return project.get();
     }
 
-    private List<TaskAbstract> loadAndParseFromCSV(String sourcePath, FileTypes filetype) throws IOException {
-        List<TaskAbstract> tasks = new ArrayList<>();
-        String delimiter = filetype == FileTypes.TSV ? "\t" : ",";
-        try (BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(sourcePath), "UTF-8"))) {
-            String line;
-            boolean header = true;
-            while ((line = br.readLine()) != null) {
-                if (header) {
-                    header = false;
-                    continue;
-                }
-                String[] parts = line.split(delimiter, -1);
-                if (parts.length < 7) {
-                    continue;
-                }
-                try {
-                    int id = parts[0].trim().isEmpty() ? 0 : Integer.parseInt(parts[0].trim());
-                    String name = parts[1].trim();
-                    int containerId = parts[2].trim().isEmpty() ? 0 : Integer.parseInt(parts[2].trim());
-                    Integer startDay = null;
-                    Integer endDay = null;
-                    Double cost = 0.0;
-                    Double effort = 0.0;
-
-                    if (containerId != 0) {
-                        startDay = parts[3].trim().isEmpty() ? null : Integer.parseInt(parts[3].trim());
-                        endDay = parts[4].trim().isEmpty() ? null : Integer.parseInt(parts[4].trim());
-                        cost = parts[5].trim().isEmpty() ? 0.0 : Double.parseDouble(parts[5].trim());
-                        effort = parts[6].trim().isEmpty() ? 0.0 : Double.parseDouble(parts[6].trim());
-                    }
-
-                    TaskAbstract task = new TaskConcrete(id, name, containerId, startDay, endDay, cost, effort);
-                    tasks.add(task);
-                } catch (NumberFormatException e) {
-                    
-                }
-            }
+    public CriticalPath getSchedule() {
+        ProjectInfo snapshot = project.get();
+        if (snapshot == null) {
+            return null;
         }
-        return tasks;
+        return snapshot.getSchedule();
     }
 
-    private double getNumericCellValue(Cell cell) {
-        if (cell == null) return 0;
-        if (cell.getCellType() == CellType.NUMERIC) {
-            return cell.getNumericCellValue();
-        } else if (cell.getCellType() == CellType.STRING) {
-            try {
-                return Double.parseDouble(cell.getStringCellValue().trim());
-            } catch (NumberFormatException e) {
-                return 0;
-            }
-        } else {
-            return 0;
+    public HierarchyIndex getHierarchy() {
+        ProjectInfo snapshot = project.get();
+        if (snapshot == null) {
+            return null;
         }
+        return snapshot.getHierarchy(loadParallelism);
     }
 
-    private String getStringCellValue(Cell cell) {
-        if (cell == null) return "";
-        if (cell.getCellType() == CellType.STRING) {
-            return cell.getStringCellValue().trim();
-        } else if (cell.getCellType() == CellType.NUMERIC) {
-            if (DateUtil.isCellDateFormatted(cell)) {
-                SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
-                return dateFormat.format(cell.getDateCellValue());
-            } else {
-                return String.valueOf((int) cell.getNumericCellValue());
-            }
-        } else if (cell.getCellType() == CellType.BOOLEAN) {
-            return String.valueOf(cell.getBooleanCellValue());
-        } else {
-            return "";
-        }
+    @Override
+    public List<String> load(String sourcePath, FileTypes filetype) {
+        LoadResult result = loadLazy(sourcePath, filetype);
+        return result != null ? result.toDescriptionList() : null;
     }
 
     @Override
-    public ProjectInfo prepareTargetWorkbook(FileTypes fileType, String targetPath) {
-        this.targetPath = targetPath;
+    public LoadResult loadLazy(String sourcePath, FileTypes filetype) {
         try {
-            if (fileType == FileTypes.XLSX) {
-                targetWorkbook = new XSSFWorkbook();
-            } else if (fileType == FileTypes.XLS) {
-                targetWorkbook = new XSSFWorkbook();
-                System.err.println("XLS format is deprecated. Using XLSX instead.");
-            } else {
-                System.err.println("Unsupported target file type: " + fileType);
+            TaskStore tasks = readSource(sourcePath, filetype);
+            if (tasks == null) {
                 return null;
             }
-
-            ProjectInfo info = new ProjectInfo();
-            info.setTargetPath(targetPath);
-            info.setFileType(fileType);
-            return info;
-
+            return publish(tasks);
         } catch (Exception e) {
             e.printStackTrace();
             return null;
         }
     }
 
+    // Reads the source to its end without closing it; gzip and zip wrappers are removed on the fly.
     @Override
-    public List<TaskAbstract> getAllTasks() {
-        if (projectInfo == null) {
+    public List<String> load(InputStream source, FileTypes filetype) {
+        try {
+            TaskStore tasks = parseSource(SourceStreams.unwrap(source, filetype), filetype);
+            if (tasks == null) {
+                return null;
+            }
+            return publish(tasks).toDescriptionList();
+        } catch (Exception e) {
+            e.printStackTrace();
             return null;
         }
-        return projectInfo.getAllTasks();
     }
 
     @Override
-    public List<TaskAbstract> getTopLevelTasksOnly() {
-        if (projectInfo == null) {
+    public List<String> load(ReadableByteChannel source, FileTypes filetype) {
+        return load(Channels.newInputStream(source), filetype);
+    }
+
+    /*
+     * Loads every sheet of a workbook, or only the named ones, into its own ProjectInfo.
+     * Sheets are streamed concurrently up to the load parallelism; the map keeps
+     * workbook order. Passing null for sheetNames selects all sheets.
+     */
+    public Map<String, ProjectInfo> loadSheets(String sourcePath, FileTypes filetype, Collection<String> sheetNames) {
+        if (filetype != FileTypes.XLS && filetype != FileTypes.XLSX) {
+            System.err.println("Multi-sheet loading needs a workbook, not " + filetype);
             return null;
         }
-        return projectInfo.getTopLevelTasks();
-    }
+        try {
+            List<String> names = ExcelEventReaders.sheetNames(sourcePath);
+            List<Integer> indexes = new ArrayList<>();
+            for (int i = 0; i < names.size(); i++) {
+                if (sheetNames == null || sheetNames.contains(names.get(i))) {
+                    indexes.add(i);
+                }
+            }
+            if (sheetNames != null && indexes.size() < new HashSet<>(sheetNames).size()) {
+                System.err.println("Some of the sheets " + sheetNames + " are not in " + sourcePath + " " + names);
+                return null;
+            }
 
-    @Override
-    public List<TaskAbstract> getTasksInRange(int firstIncluded, int lastIncluded) {
-        if (projectInfo == null) {
+            List<TaskStore> sheetTasks = new ArrayList<>(Collections.nCopies(names.size(), null));
+            ExcelEventReaders.readSheets(sourcePath, indexes, loadParallelism, index -> {
+                TaskStore tasks = new TaskStore();
+                sheetTasks.set(index, tasks);
+                return taskRowHandler(tasks);
+            });
+
+            Map<String, ProjectInfo> sheets = new LinkedHashMap<>();
+            for (int index : indexes) {
+                TaskStore tasks = sheetTasks.get(index);
+                tasks.sortById();
+                sheets.put(names.get(index), new ProjectInfo(tasks));
+            }
+            return sheets;
+        } catch (Exception e) {
+            e.printStackTrace();
             return null;
         }
-        return projectInfo.getTasksInRange(firstIncluded, lastIncluded);
     }
 
-    @Override
-    public boolean rawWriteToExcelFile(List<TaskAbstract> tasks) {
-        if (targetWorkbook == null) {
-            System.err.println("Target workbook is not prepared.");
-            return false;
+    /*
+     * Loads the selected sheets as one project. Ids, container ids and predecessor ids
+     * of the n-th sheet (0-based) are shifted by n * stride, where stride is the
+     * smallest power of ten above every id in the workbook, so sheet 0 keeps its ids
+     * and task 12 of sheet 2 becomes 212 when all ids are below 100. Top-level tasks
+     * keep container id 0.
+     */
+    public List<String> loadSheetsMerged(String sourcePath, FileTypes filetype, Collection<String> sheetNames) {
+        Map<String, ProjectInfo> sheets = loadSheets(sourcePath, filetype, sheetNames);
+        if (sheets == null) {
+            return null;
         }
-
-        String sheetName = new SimpleDateFormat("dd-MM-yyyy HH_mm_ss").format(new Date());
-        Sheet sheet = targetWorkbook.createSheet(sheetName);
-
-        int rowNum = 0;
-        for (TaskAbstract task : tasks) {
-            Row row = sheet.createRow(rowNum++);
-            List<String> taskData = task.toStringList();
-            int cellNum = 0;
-            for (String data : taskData) {
-                Cell cell = row.createCell(cellNum++);
-                cell.setCellValue(data);
+        long maxId = 0;
+        int total = 0;
+        for (ProjectInfo sheet : sheets.values()) {
+            TaskStore tasks = sheet.getStore();
+            for (int row = 0; row < tasks.size(); row++) {
+                maxId = Math.max(maxId, Math.max(Math.abs((long) tasks.getId(row)), Math.abs((long) tasks.getContainerId(row))));
             }
+            total += tasks.size();
+        }
+        long stride = 10;
+        while (stride <= maxId) {
+            stride *= 10;
+        }
+        if (stride * sheets.size() > Integer.MAX_VALUE) {
+            System.err.println("Ids of " + sheets.size() + " sheets below " + stride + " do not fit a merged int id space");
+            return null;
         }
 
-        try (FileOutputStream fos = new FileOutputStream(targetPath)) {
-            targetWorkbook.write(fos);
-            return true;
-        } catch (IOException e) {
-            e.printStackTrace();
-            return false;
+        TaskStore merged = new TaskStore(total);
+        int offset = 0;
+        for (ProjectInfo sheet : sheets.values()) {
+            TaskStore tasks = sheet.getStore();
+            for (int row = 0; row < tasks.size(); row++) {
+                int containerId = tasks.getContainerId(row) != 0 ? tasks.getContainerId(row) + offset : 0;
+                merged.add(tasks.getId(row) + offset, tasks.getName(row), containerId, tasks.hasStartDay(row),
+                        tasks.getStartDay(row), tasks.hasEndDay(row), tasks.getEndDay(row), tasks.getCost(row),
+                        tasks.getEffort(row));
+                for (int i = 0; i < tasks.getPredecessorCount(row); i++) {
+                    merged.addPredecessor(tasks.getPredecessorId(row, i) + offset, tasks.getDependencyType(row, i),
+                            tasks.getLag(row, i));
+                }
+            }
+            offset += (int) stride;
         }
+        return publish(merged).toDescriptionList();
     }
 
-    @Override
-    public String addFontedStyle(String styleName, short styleFontColor, short styleFontHeightInPoints, String styleFontName,
-                                 boolean styleFontBold, boolean styleFontItalic, boolean styleFontStrikeout, short styleFillForegroundColor,
-                                 String styleFillPatternString, String horizontalAlignmentString, boolean styleWrapText) {
-        if (targetWorkbook == null) {
-            System.err.println("Target workbook is not prepared.");
-            return "Normal";
+    private LoadResult publish(TaskStore tasks) {
+        synchronized (publishLock) {
+            project.set(nextVersion(project.get(), tasks));
+            rowHashes = null;
         }
+        return LoadResult.forTasks(tasks);
+    }
 
-        try {
-            CellStyle style = targetWorkbook.createCellStyle();
-            Font font = targetWorkbook.createFont();
-            font.setColor(styleFontColor);
-            font.setFontHeightInPoints(styleFontHeightInPoints);
-            font.setFontName(styleFontName);
-            font.setBold(styleFontBold);
-            font.setItalic(styleFontItalic);
-            font.setStrikeout(styleFontStrikeout);
-            style.setFont(font);
-
-            FillPatternType fillPattern = FillPatternType.valueOf(styleFillPatternString.toUpperCase());
-            style.setFillForegroundColor(styleFillForegroundColor);
-            style.setFillPattern(fillPattern);
-
-            HorizontalAlignment alignment = HorizontalAlignment.valueOf(horizontalAlignmentString.toUpperCase());
-            style.setAlignment(alignment);
+    private static ProjectInfo nextVersion(ProjectInfo previous, TaskStore tasks) {
+        if (previous != null) {
+            return previous.nextVersion(tasks);
+        }
+        return new ProjectInfo(tasks);
+    }
 
-            style.setWrapText(styleWrapText);
+    // Publishes the loaded tasks in id order as the next version; views already handed out keep their order.
+    public List<TaskAbstract> sortTasksById() {
+        return publishSorted(false);
+    }
 
-            stylesMap.put(styleName, style);
+    public List<TaskAbstract> sortTasksByName() {
+        return publishSorted(true);
+    }
 
-            return styleName;
+    private List<TaskAbstract> publishSorted(boolean byName) {
+        synchronized (publishLock) {
+            ProjectInfo snapshot = project.get();
+            if (snapshot == null) {
+                return null;
+            }
+            ProjectInfo sorted = byName ? snapshot.sortedByName() : snapshot.sortedById();
+            if (sorted != snapshot) {
+                project.set(sorted);
+                // Row hashes follow row order, so they are rebuilt on the next reload.
+                rowHashes = null;
+            }
+            return sorted.getAllTasks();
+        }
+    }
 
+    public TaskDelta reload(String sourcePath, FileTypes filetype) {
+        try {
+            TaskStore fresh = readSource(sourcePath, filetype);
+            if (fresh == null) {
+                return null;
+            }
+            synchronized (publishLock) {
+                return publishMerged(fresh);
+            }
         } catch (Exception e) {
             e.printStackTrace();
-            return "Normal";
+            return null;
         }
     }
 
-    @Override
-    public boolean createNewSheet(String sheetName, List<TaskAbstract> tasks, String headerStyleName, String topBarStyleName,
-                                  String topDataStyleName, String nonTopBarStyleName, String nonTopDataStyleName, String normalStyleName) {
-        if (targetWorkbook == null) {
-            System.err.println("Target workbook is not prepared.");
-            return false;
+    /*
+     * Merges a freshly read store into the current version and publishes the result as
+     * the next version. Unchanged rows are copied from the current store, which is left
+     * as it is for readers still working on it.
+     */
+    private TaskDelta publishMerged(TaskStore fresh) {
+        TaskDelta delta = new TaskDelta();
+        ProjectInfo snapshot = project.get();
+        if (snapshot == null) {
+            project.set(nextVersion(null, fresh));
+            rowHashes = rowHashes(fresh);
+            fresh.asList().forEach(delta::addAdded);
+            return delta;
         }
 
-        try {
-            if (tasks == null || tasks.isEmpty()) {
-                return false;
+        TaskStore current = snapshot.getStore();
+        if (!current.isSortedById()) {
+            current = current.copy();
+            current.sortById();
+            rowHashes = null;
+        }
+        if (rowHashes == null || rowHashes.length != current.size()) {
+            rowHashes = rowHashes(current);
+        }
+
+        // Both stores are id-sorted, so one merge pass pairs old and new rows.
+        TaskStore patched = new TaskStore(fresh.size(), current.getDictionary());
+        long[] patchedHashes = new long[fresh.size()];
+        int[] changedRows = new int[16];
+        int changedCount = 0;
+        int i = 0;
+        int j = 0;
+        while (i < current.size() || j < fresh.size()) {
+            if (j == fresh.size() || (i < current.size() && current.getId(i) < fresh.getId(j))) {
+                delta.addRemoved(current.getTask(i++));
+                continue;
             }
+            long hash = TaskDelta.rowHash(fresh, j);
+            patchedHashes[patched.size()] = hash;
+            if (i == current.size() || fresh.getId(j) < current.getId(i)) {
+                patched.addRow(fresh, j);
+                delta.addAdded(fresh.getTask(j));
+            } else if (hash == rowHashes[i] && TaskDelta.sameRow(current, i, fresh, j)) {
+                patched.addRow(current, i++);
+            } else {
+                if (changedCount == changedRows.length) {
+                    changedRows = Arrays.copyOf(changedRows, changedCount * 2);
+                }
+                changedRows[changedCount++] = patched.size();
+                patched.addRow(fresh, j);
+                delta.addChanged(fresh.getTask(j));
+                i++;
+            }
+            j++;
+        }
 
-            tasks.sort((t1, t2) -> Integer.compare(t1.getId(), t2.getId()));
-            List<String[]> intermediateData = createIntermediateRepresentation(tasks);
+        // With the same rows on both sides, a computed schedule is carried over from the changed rows only.
+        ProjectInfo next = delta.getAdded().isEmpty() && delta.getRemoved().isEmpty() && current == snapshot.getStore()
+                ? snapshot.nextVersion(patched, Arrays.copyOf(changedRows, changedCount))
+                : snapshot.nextVersion(patched);
+        next.applyDelta(delta);
+        rowHashes = patchedHashes;
+        project.set(next);
+        return delta;
+    }
 
-            Sheet sheet = targetWorkbook.createSheet(sheetName);
-            writeSheetWithX(sheet, intermediateData, tasks, headerStyleName, topBarStyleName, topDataStyleName,
-                    nonTopBarStyleName, nonTopDataStyleName, normalStyleName);
+    /*
+     * Moves a task to other days and publishes the result as the next version. Tasks
+     * downstream that can no longer start on their own start day are pushed to their
+     * new early start and keep their length; only the downstream cone of the task is
+     * rescheduled. Returns the tasks whose days changed, in id order.
+     */
+    @Override
+    public List<TaskAbstract> moveTask(int id, Integer startDay, Integer endDay) {
+        synchronized (publishLock) {
+            ProjectInfo snapshot = project.get();
+            if (snapshot == null) {
+                return null;
+            }
+            TaskStore current = snapshot.getStore();
+            int[] rows = current.rowsWithIdBetween(id, id);
+            if (rows.length == 0) {
+                System.err.println("No task with id " + id + ".");
+                return null;
+            }
+            TaskStore next = current.copy();
+            BitSet moved = new BitSet(next.size());
+            for (int row : rows) {
+                next.setDays(row, startDay, endDay);
+                moved.set(row);
+            }
 
-            Sheet colorSheet = targetWorkbook.createSheet(sheetName + "_Colorized");
-            writeSheetWithColorOnly(colorSheet, intermediateData, tasks);
+            // The first update finds the pushed tasks; the second carries the schedule over to the moved store.
+            CriticalPath pushed = snapshot.getSchedule().update(next, rows);
+            for (int row : pushed.getChangedRows()) {
+                if (!moved.get(row) && next.hasStartDay(row) && pushed.getEarlyStart(row) != next.getStartDay(row)) {
+                    int shift = pushed.getEarlyStart(row) - next.getStartDay(row);
+                    next.setDays(row, next.getStartDay(row) + shift, next.hasEndDay(row) ? next.getEndDay(row) + shift : null);
+                    moved.set(row);
+                }
+            }
+            int[] movedRows = moved.stream().toArray();
+            ProjectInfo version = snapshot.nextVersion(next, movedRows);
+            if (rowHashes != null && rowHashes.length == next.size() && next.isSortedById()) {
+                for (int row : movedRows) {
+                    rowHashes[row] = TaskDelta.rowHash(next, row);
+                }
+            }
+            project.set(version);
+            return next.view(next.orderById(movedRows));
+        }
+    }
 
-            try (FileOutputStream fos = new FileOutputStream(targetPath)) {
-                targetWorkbook.write(fos);
+    // Reads the baseline from a file and joins it with the loaded project on task id.
+    @Override
+    public ProjectDiff compareWithBaseline(String baselinePath, FileTypes filetype) {
+        ProjectInfo snapshot = project.get();
+        if (snapshot == null) {
+            System.err.println("No project is loaded.");
+            return null;
+        }
+        try {
+            TaskStore baseline = readSource(baselinePath, filetype);
+            if (baseline == null) {
+                return null;
             }
+            return ProjectDiff.compare(baseline, snapshot.getStore());
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
 
-            return true;
+    @Override
+    public boolean writeVarianceWorkbook(ProjectDiff diff, String targetPath) {
+        return VarianceSheetWriter.write(diff, targetPath);
+    }
 
-        } catch (Exception e) {
+    // Finish-date percentiles of the loaded project over the given number of sampled schedules.
+    @Override
+    public ScheduleRisk simulateSchedule(DurationDistribution distribution, double lowFactor, double highFactor,
+                                         int iterations, long seed) {
+        ProjectInfo snapshot = project.get();
+        if (snapshot == null) {
+            System.err.println("No project is loaded.");
+            return null;
+        }
+        try {
+            return ScheduleRisk.simulate(snapshot.getSchedule(), snapshot.getHierarchy(loadParallelism), distribution,
+                    lowFactor, highFactor, iterations, seed, loadParallelism);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            return null;
+        }
+    }
+
+    public SourceWatcher watch(String sourcePath, FileTypes filetype, Consumer<TaskDelta> listener) {
+        try {
+            SourceWatcher watcher = new SourceWatcher(sourcePath, () -> reload(sourcePath, filetype), listener);
+            watcher.start();
+            return watcher;
+        } catch (IOException e) {
             e.printStackTrace();
-            return false;
+            return null;
         }
     }
 
-    private void writeSheetWithX(Sheet sheet, List<String[]> intermediateData, List<TaskAbstract> tasks,
-                                 String headerStyleName, String topBarStyleName, String topDataStyleName,
-                                 String nonTopBarStyleName, String nonTopDataStyleName, String normalStyleName) {
+    private static long[] rowHashes(TaskStore tasks) {
+        long[] hashes = new long[tasks.size()];
+        for (int row = 0; row < hashes.length; row++) {
+            hashes[row] = TaskDelta.rowHash(tasks, row);
+        }
+        return hashes;
+    }
 
-        CellStyle headerStyle = getStyleByName(headerStyleName);
-        CellStyle topBar = getStyleByName(topBarStyleName);
-        CellStyle topData = getStyleByName(topDataStyleName);
-        CellStyle nonTopBar = getStyleByName(nonTopBarStyleName);
-        CellStyle nonTopData = getStyleByName(nonTopDataStyleName);
-        CellStyle normal = getStyleByName(normalStyleName);
+    private TaskStore readSource(String sourcePath, FileTypes filetype) throws IOException {
+        SnapshotCache.Fingerprint fingerprint = snapshotCache != null ? SnapshotCache.fingerprint(sourcePath) : null;
+        TaskStore tasks = fingerprint != null ? snapshotCache.lookup(sourcePath, filetype, fingerprint) : null;
+        if (tasks == null) {
+            tasks = parseSource(sourcePath, filetype);
+            if (tasks != null && fingerprint != null) {
+                snapshotCache.store(sourcePath, filetype, fingerprint, tasks);
+            }
+        }
+        return tasks;
+    }
 
-        for (int rowNum = 0; rowNum < intermediateData.size(); rowNum++) {
-            Row row = sheet.createRow(rowNum);
-            String[] rowData = intermediateData.get(rowNum);
+    private TaskStore parseSource(String sourcePath, FileTypes filetype) throws IOException {
+        TaskStore tasks;
+        switch (filetype) {
+            case XLS:
+            case XLSX:
+                tasks = streamingExcel ? loadAndParseFromExcelStreaming(sourcePath)
+                        : loadAndParseFromExcel(sourcePath);
+                break;
+            case CSV:
+            case TSV:
+                if (loadParallelism > 1) {
+                    tasks = new ParallelDelimitedLoader(filetype, loadParallelism).load(sourcePath);
+                } else {
+                    tasks = loadAndParseFromCSV(sourcePath, filetype);
+                }
+                break;
+            default:
+                System.err.println("Unsupported file type: " + filetype);
+                return null;
+        }
 
-            for (int cellNum = 0; cellNum < rowData.length; cellNum++) {
-                Cell cell = row.createCell(cellNum);
-                String cellValue = rowData[cellNum];
+        tasks.sortById();
+        return tasks;
+    }
 
-                if (rowNum == 0) {
-                    cell.setCellValue(cellValue);
-                    if (headerStyle != null) cell.setCellStyle(headerStyle);
+    private TaskStore parseSource(InputStream source, FileTypes filetype) throws IOException {
+        TaskStore tasks = new TaskStore();
+        switch (filetype) {
+            case XLS:
+            case XLSX:
+                if (streamingExcel) {
+                    ExcelEventReaders.readFirstSheet(source, taskRowHandler(tasks));
                 } else {
-                    TaskAbstract task = tasks.get(rowNum - 1);
-                    boolean isTop = task.isTopLevel();
-                    if (cellNum < 5) { 
-                        cell.setCellValue(cellValue);
-                        if (cellNum == 0) {
-                            cell.setCellStyle(isTop ? topData : nonTopData);
-                        } else if (cellNum < 4) {
-                            cell.setCellStyle(isTop ? topData : nonTopData);
-                        } else {
-                            cell.setCellStyle(isTop ? topData : nonTopData);
-                        }
-                    } else {
-                        cell.setCellValue(cellValue);
-                        if (cellValue.equalsIgnoreCase("x")) {
-                            cell.setCellStyle(isTop ? topBar : nonTopBar);
-                        } else {
-                            cell.setCellStyle(normal);
-                        }
-                    }
+                    tasks = loadAndParseFromExcel(source);
                 }
-            }
+                break;
+            case CSV:
+            case TSV:
+                new DelimitedTaskScanner(filetype, tasks).scanChannel(Channels.newChannel(source));
+                break;
+            default:
+                System.err.println("Unsupported file type: " + filetype);
+                return null;
         }
 
-        for (int i = 0; i < intermediateData.get(0).length; i++) {
-            sheet.autoSizeColumn(i);
+        tasks.sortById();
+        return tasks;
+    }
+
+    private TaskStore loadAndParseFromExcel(String sourcePath) throws IOException {
+        try (FileInputStream fis = new FileInputStream(sourcePath)) {
+            return loadAndParseFromExcel(fis);
         }
     }
 
-    private void writeSheetWithColorOnly(Sheet sheet, List<String[]> intermediateData, List<TaskAbstract> tasks) {
-        for (int rowNum = 0; rowNum < intermediateData.size(); rowNum++) {
-            Row row = sheet.createRow(rowNum);
-            String[] rowData = intermediateData.get(rowNum);
-            for (int cellNum = 0; cellNum < rowData.length; cellNum++) {
-                Cell cell = row.createCell(cellNum);
-                String cellValue = rowData[cellNum];
+    private TaskStore loadAndParseFromExcel(InputStream source) throws IOException {
+        TaskStore tasks = new TaskStore();
+        try (Workbook workbook = WorkbookFactory.create(source)) {
 
-                if (rowNum == 0) {
-                    cell.setCellValue(cellValue);
-                } else {
-                    TaskAbstract task = tasks.get(rowNum - 1);
-                    boolean isTop = task.isTopLevel();
-                    if (cellNum < 5) {
-                        cell.setCellValue(cellValue);
-                    } else {
-                        if ("x".equalsIgnoreCase(cellValue)) {
-                            cell.setCellValue("");
-                            if (isTop) {
-                                changeCellBackgroundColor(cell, IndexedColors.LIGHT_BLUE.getIndex());
-                            } else {
-                                changeCellBackgroundColor(cell, IndexedColors.GREY_40_PERCENT.getIndex());
-                            }
-                        } else {
-                            cell.setCellValue("");
-                        }
-                    }
+            Sheet sheet = workbook.getSheetAt(0);
+            boolean header = true;
+            for (Row row : sheet) {
+                if (header) {
+                    header = false;
+                    continue;
                 }
+                if (row == null) continue;
+                int id = (int) getNumericCellValue(row.getCell(0));
+                String name = getStringCellValue(row.getCell(1));
+                int containerId = (int) getNumericCellValue(row.getCell(2));
+                Integer startDay = null;
+                Integer endDay = null;
+                Double cost = 0.0;
+                Double effort = 0.0;
+
+                if (containerId != 0) {
+                    startDay = (int) getNumericCellValue(row.getCell(3));
+                    endDay = (int) getNumericCellValue(row.getCell(4));
+                    cost = getNumericCellValue(row.getCell(5));
+                    effort = getNumericCellValue(row.getCell(6));
+                }
+
+                tasks.add(id, name, containerId, startDay, endDay, cost, effort);
+                addPredecessors(tasks, getStringCellValue(row.getCell(7)));
             }
         }
+        return tasks;
+    }
 
-        for (int i = 0; i < intermediateData.get(0).length; i++) {
-            sheet.autoSizeColumn(i);
-        }
+    private TaskStore loadAndParseFromExcelStreaming(String sourcePath) throws IOException {
+        TaskStore tasks = new TaskStore();
+        ExcelEventReaders.readFirstSheet(sourcePath, taskRowHandler(tasks));
+        return tasks;
     }
 
-    private void changeCellBackgroundColor(Cell cell, short color) {
-        CellStyle cellStyle = cell.getCellStyle();
-        if (cellStyle == null) {
-            cellStyle = cell.getSheet().getWorkbook().createCellStyle();
-        } else {
-            CellStyle newStyle = cell.getSheet().getWorkbook().createCellStyle();
-            newStyle.cloneStyleFrom(cellStyle);
-            cellStyle = newStyle;
-        }
-        cellStyle.setFillForegroundColor(color);
-        cellStyle.setFillPattern(FillPatternType.SOLID_FOREGROUND);
-        cell.setCellStyle(cellStyle);
+    private SourceRowHandler taskRowHandler(TaskStore tasks) {
+        boolean[] header = {true};
+        return row -> {
+            if (header[0]) {
+                header[0] = false;
+                return;
+            }
+            addTask(tasks, row);
+        };
     }
 
-    private CellStyle getStyleByName(String styleName) {
-        return stylesMap.getOrDefault(styleName, null);
+    private void addTask(TaskStore tasks, SourceRow row) {
+        int id = (int) row.getNumeric(0);
+        String name = row.getString(1);
+        int containerId = (int) row.getNumeric(2);
+        Integer startDay = null;
+        Integer endDay = null;
+        Double cost = 0.0;
+        Double effort = 0.0;
+
+        if (containerId != 0) {
+            startDay = (int) row.getNumeric(3);
+            endDay = (int) row.getNumeric(4);
+            cost = row.getNumeric(5);
+            effort = row.getNumeric(6);
+        }
+
+        tasks.add(id, name, containerId, startDay, endDay, cost, effort);
+        addPredecessors(tasks, row.getString(7));
     }
 
-    public List<String[]> createIntermediateRepresentation(List<TaskAbstract> tasks) {
-        Integer earliestStartDay = null;
-        Integer latestEndDay = null;
-
-        for (TaskAbstract task : tasks) {
-            Integer startDay = task.getStartDay();
-            Integer endDay = task.getEndDay();
-            if (startDay != null && (earliestStartDay == null || startDay < earliestStartDay)) {
-                earliestStartDay = startDay;
-            }
-            if (endDay != null && (latestEndDay == null || endDay > latestEndDay)) {
-                latestEndDay = endDay;
+    // Links that do not parse are dropped with a message; the task itself is kept.
+    private static void addPredecessors(TaskStore tasks, String text) {
+        try {
+            for (Dependency link : Dependency.parseList(text)) {
+                tasks.addPredecessor(link.getPredecessorId(), link.getType(), link.getLag());
             }
+        } catch (NumberFormatException e) {
+            System.err.println("Ignoring predecessors of task " + tasks.getId(tasks.size() - 1) + ": " + e.getMessage());
         }
+    }
 
-        if (earliestStartDay == null) earliestStartDay = 0;
-        if (latestEndDay == null) latestEndDay = 0;
+    private TaskStore loadAndParseFromCSV(String sourcePath, FileTypes filetype) throws IOException {
+        TaskStore tasks = new TaskStore();
+        new DelimitedTaskScanner(filetype, tasks).scanFile(sourcePath);
+        return tasks;
+    }
+
+    private double getNumericCellValue(Cell cell) {
+        if (cell == null) return 0;
+        CellType type = cell.getCellType();
+        double numericValue = type == CellType.NUMERIC ? cell.getNumericCellValue() : 0;
+        String stringValue = type == CellType.STRING ? cell.getStringCellValue() : null;
+        return CellCoercion.toNumeric(type, numericValue, stringValue);
+    }
 
-        List<String[]> intermediateData = new ArrayList<>();
-        List<String> headerRow = new ArrayList<>();
-        headerRow.add("Level");
-        headerRow.add("ID");
-        headerRow.add("Description");
-        headerRow.add("Cost");
-        headerRow.add("Effort");
+    private String getStringCellValue(Cell cell) {
+        if (cell == null) return "";
+        CellType type = cell.getCellType();
+        double numericValue = type == CellType.NUMERIC ? cell.getNumericCellValue() : 0;
+        String stringValue = type == CellType.STRING ? cell.getStringCellValue() : null;
+        boolean booleanValue = type == CellType.BOOLEAN && cell.getBooleanCellValue();
+        Date dateValue = type == CellType.NUMERIC && DateUtil.isCellDateFormatted(cell) ? cell.getDateCellValue() : null;
+        return CellCoercion.toText(type, numericValue, stringValue, booleanValue, dateValue);
+    }
 
-        List<Integer> dayList = new ArrayList<>();
-        for (int day = earliestStartDay; day <= latestEndDay; day++) {
-            headerRow.add(String.valueOf(day));
-            dayList.add(day);
+    @Override
+    public List<TaskAbstract> getAllTasks() {
+        ProjectInfo snapshot = project.get();
+        if (snapshot == null) {
+            return null;
         }
+        return snapshot.getAllTasks();
+    }
 
-        intermediateData.add(headerRow.toArray(new String[0]));
+    @Override
+    public List<TaskAbstract> getTopLevelTasksOnly() {
+        ProjectInfo snapshot = project.get();
+        if (snapshot == null) {
+            return null;
+        }
+        return snapshot.getTopLevelTasks();
+    }
 
-        for (TaskAbstract task : tasks) {
-            List<String> row = new ArrayList<>();
-            row.add(task.isTopLevel() ? "top" : "");
-            row.add(String.valueOf(task.getId()));
-            row.add(task.getName());
-            row.add(String.valueOf(task.getCost()));
-            row.add(String.valueOf(task.getEffort()));
+    @Override
+    public List<TaskAbstract> getTasksInRange(int firstIncluded, int lastIncluded) {
+        ProjectInfo snapshot = project.get();
+        if (snapshot == null) {
+            return null;
+        }
+        return snapshot.getTasksInRange(firstIncluded, lastIncluded);
+    }
 
-            for (int i = 0; i < dayList.size(); i++) {
-                row.add("");
-            }
+    @Override
+    public List<TaskAbstract> getTasksActiveInWindow(int firstDay, int lastDay) {
+        ProjectInfo snapshot = project.get();
+        if (snapshot == null) {
+            return null;
+        }
+        return snapshot.getTasksActiveInWindow(firstDay, lastDay);
+    }
 
-            Integer taskStartDay = task.getStartDay();
-            Integer taskEndDay = task.getEndDay();
+    @Override
+    public List<TaskAbstract> getTasksSortedBy(SortKey key) {
+        ProjectInfo snapshot = project.get();
+        if (snapshot == null) {
+            return null;
+        }
+        return snapshot.getTasksSortedBy(key, collationLocale);
+    }
 
-            if (taskStartDay != null && taskEndDay != null) {
-                for (int i = 0; i < dayList.size(); i++) {
-                    int currentDay = dayList.get(i);
-                    if (currentDay >= taskStartDay && currentDay <= taskEndDay) {
-                        row.set(5 + i, "x");
-                    }
-                }
-            }
+    @Override
+    public QueryResult query(String expression) {
+        ProjectInfo snapshot = project.get();
+        if (snapshot == null) {
+            return null;
+        }
+        try {
+            return TaskQuery.parse(expression).execute(snapshot, loadParallelism);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            return null;
+        }
+    }
 
-            intermediateData.add(row.toArray(new String[0]));
+    @Override
+    public List<TaskAbstract> findTasksByName(String fragment) {
+        ProjectInfo snapshot = project.get();
+        if (snapshot == null) {
+            return null;
         }
+        return snapshot.findTasksByName(fragment);
+    }
 
-        return intermediateData;
+    /*
+     * A new export session over the project version current now. Sessions own their
+     * workbook and styles and can run alongside each other and alongside reloads.
+     */
+    @Override
+    public IExportSession openExportSession() {
+        ProjectInfo snapshot = project.get();
+        return newSession(() -> snapshot);
     }
 
+    private ExportSession newSession(Supplier<ProjectInfo> source) {
+        ExportSession exportSession = new ExportSession(source, loadParallelism, rollUpContainers);
+        exportSession.setScheduleColumns(scheduleColumns);
+        exportSession.setCalendars(calendars);
+        return exportSession;
+    }
+
+    // The methods below write through the controller's own session, which always reads the current version.
     @Override
-    public void createDefaultStyles() {
-        addFontedStyle("Normal", IndexedColors.BLACK.getIndex(), (short)11, "Calibri",
-                false, false, false, IndexedColors.WHITE.getIndex(), "NO_FILL", "LEFT", false);
+    public ProjectInfo prepareTargetWorkbook(FileTypes fileType, String targetPath) {
+        if (session != null) {
+            session.close();
+        }
+        session = newSession(project::get);
+        return session.prepareTargetWorkbook(fileType, targetPath);
+    }
 
-        addFontedStyle("DefaultHeaderStyle", IndexedColors.WHITE.getIndex(), (short)12, "Arial",
-                true, false, false, IndexedColors.GREY_80_PERCENT.getIndex(), "SOLID_FOREGROUND", "CENTER", true);
+    @Override
+    public boolean rawWriteToExcelFile(List<TaskAbstract> tasks) {
+        if (session == null) {
+            System.err.println("Target workbook is not prepared.");
+            return false;
+        }
+        return session.rawWriteToExcelFile(tasks);
+    }
 
-        addFontedStyle("TopTask_bar_style", IndexedColors.BLACK.getIndex(), (short)11, "Calibri",
-                true, false, false, IndexedColors.BLUE.getIndex(), "SOLID_FOREGROUND", "CENTER", false);
+    @Override
+    public String addFontedStyle(String styleName, short styleFontColor, short styleFontHeightInPoints, String styleFontName,
+                                 boolean styleFontBold, boolean styleFontItalic, boolean styleFontStrikeout, short styleFillForegroundColor,
+                                 String styleFillPatternString, String horizontalAlignmentString, boolean styleWrapText) {
+        if (session == null) {
+            System.err.println("Target workbook is not prepared.");
+            return "Normal";
+        }
+        return session.addFontedStyle(styleName, styleFontColor, styleFontHeightInPoints, styleFontName, styleFontBold,
+                styleFontItalic, styleFontStrikeout, styleFillForegroundColor, styleFillPatternString,
+                horizontalAlignmentString, styleWrapText);
+    }
 
-        addFontedStyle("TopTask_data_style", IndexedColors.BLUE.getIndex(), (short)11, "Calibri",
-                true, false, false, IndexedColors.WHITE.getIndex(), "NO_FILL", "LEFT", false);
+    @Override
+    public boolean createNewSheet(String sheetName, List<TaskAbstract> tasks, String headerStyleName, String topBarStyleName,
+                                  String topDataStyleName, String nonTopBarStyleName, String nonTopDataStyleName, String normalStyleName) {
+        if (session == null) {
+            System.err.println("Target workbook is not prepared.");
+            return false;
+        }
+        return session.createNewSheet(sheetName, tasks, headerStyleName, topBarStyleName, topDataStyleName,
+                nonTopBarStyleName, nonTopDataStyleName, normalStyleName);
+    }
 
-        addFontedStyle("NonTopTask_bar_style", IndexedColors.BLACK.getIndex(), (short)11, "Calibri",
-                false, false, false, IndexedColors.GREY_50_PERCENT.getIndex(), "SOLID_FOREGROUND", "CENTER", false);
+    @Override
+    public boolean createHistogramSheet(String sheetName, List<TaskAbstract> tasks, HistogramBucket bucket,
+                                        String headerStyleName, String normalStyleName) {
+        if (session == null) {
+            System.err.println("Target workbook is not prepared.");
+            return false;
+        }
+        return session.createHistogramSheet(sheetName, tasks, bucket, headerStyleName, normalStyleName);
+    }
+
+    public List<String[]> createIntermediateRepresentation(List<TaskAbstract> tasks) {
+        return ExportSession.createIntermediateRepresentation(tasks);
+    }
 
-        addFontedStyle("NonTopTask_data_style", IndexedColors.BLACK.getIndex(), (short)11, "Calibri",
-                false, false, false, IndexedColors.WHITE.getIndex(), "NO_FILL", "LEFT", false);
+    @Override
+    public void createDefaultStyles() {
+        if (session == null) {
+            System.err.println("Target workbook is not prepared.");
+            return;
+        }
+        session.createDefaultStyles();
     }
 }
@@ -0,0 +1,685 @@
+package app;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import org.apache.poi.ss.usermodel.*;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+import dom.gantt.TaskAbstract;
+import service.IExportSession;
+import util.FileTypes;
+import util.CriticalPath;
+import util.HierarchyIndex;
+import util.HistogramBucket;
+import util.LoadHistogram;
+import util.ProjectCalendars;
+import util.ProjectInfo;
+import util.TaskStore;
+import util.WorkCalendar;
+
+/*
+ * One export: a target workbook with its path, style registry and shared string
+ * table. Sessions share nothing mutable with each other, so any number of them can
+ * write workbooks at the same time from a project snapshot that they only read.
+ * A session itself is used by one thread at a time.
+ */
+public class ExportSession implements IExportSession {
+
+    private static final int DATA_COLUMNS = 5;
+    private static final String[] SCHEDULE_HEADERS = {
+            "Early Start", "Early Finish", "Late Start", "Late Finish", "Slack", "Critical"
+    };
+    private static final String[] HISTOGRAM_HEADERS = {"From Day", "To Day", "Effort", "Cost"};
+
+    private final Supplier<ProjectInfo> project;
+    private final int parallelism;
+    private boolean rollUpContainers;
+    private boolean scheduleColumns;
+    private ProjectCalendars calendars;
+    private Workbook targetWorkbook;
+    private String targetPath;
+    private Map<String, CellStyle> stylesMap = new HashMap<>();
+    private SharedStringWriter sharedStrings;
+
+    // Exports from the given snapshot; null exports plain task lists without a loaded project.
+    public ExportSession(ProjectInfo project) {
+        this(() -> project, 1, false);
+    }
+
+    ExportSession(Supplier<ProjectInfo> project, int parallelism, boolean rollUpContainers) {
+        this.project = project;
+        this.parallelism = parallelism;
+        this.rollUpContainers = rollUpContainers;
+    }
+
+    public ProjectInfo getProject() {
+        return project.get();
+    }
+
+    void setRollUpContainers(boolean rollUpContainers) {
+        this.rollUpContainers = rollUpContainers;
+    }
+
+    void setScheduleColumns(boolean scheduleColumns) {
+        this.scheduleColumns = scheduleColumns;
+    }
+
+    void setCalendars(ProjectCalendars calendars) {
+        this.calendars = calendars;
+    }
+
+    @Override
+    public ProjectInfo prepareTargetWorkbook(FileTypes fileType, String targetPath) {
+        this.targetPath = targetPath;
+        close();
+        try {
+            if (fileType == FileTypes.XLSX) {
+                targetWorkbook = new XSSFWorkbook();
+            } else if (fileType == FileTypes.XLS) {
+                targetWorkbook = new XSSFWorkbook();
+                System.err.println("XLS format is deprecated. Using XLSX instead.");
+            } else {
+                System.err.println("Unsupported target file type: " + fileType);
+                return null;
+            }
+            sharedStrings = new SharedStringWriter(targetWorkbook);
+
+            ProjectInfo info = new ProjectInfo();
+            info.setTargetPath(targetPath);
+            info.setFileType(fileType);
+            return info;
+
+        } catch (Exception e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    @Override
+    public boolean rawWriteToExcelFile(List<TaskAbstract> tasks) {
+        if (targetWorkbook == null) {
+            System.err.println("Target workbook is not prepared.");
+            return false;
+        }
+
+        String sheetName = new SimpleDateFormat("dd-MM-yyyy HH_mm_ss").format(new Date());
+        Sheet sheet = targetWorkbook.createSheet(sheetName);
+
+        int rowNum = 0;
+        for (TaskAbstract task : tasks) {
+            Row row = sheet.createRow(rowNum++);
+            List<String> taskData = task.toStringList();
+            int cellNum = 0;
+            for (String data : taskData) {
+                Cell cell = row.createCell(cellNum++);
+                sharedStrings.setCellValue(cell, data);
+            }
+        }
+
+        try (FileOutputStream fos = new FileOutputStream(targetPath)) {
+            targetWorkbook.write(fos);
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    @Override
+    public String addFontedStyle(String styleName, short styleFontColor, short styleFontHeightInPoints, String styleFontName,
+                                 boolean styleFontBold, boolean styleFontItalic, boolean styleFontStrikeout, short styleFillForegroundColor,
+                                 String styleFillPatternString, String horizontalAlignmentString, boolean styleWrapText) {
+        if (targetWorkbook == null) {
+            System.err.println("Target workbook is not prepared.");
+            return "Normal";
+        }
+
+        try {
+            CellStyle style = targetWorkbook.createCellStyle();
+            Font font = targetWorkbook.createFont();
+            font.setColor(styleFontColor);
+            font.setFontHeightInPoints(styleFontHeightInPoints);
+            font.setFontName(styleFontName);
+            font.setBold(styleFontBold);
+            font.setItalic(styleFontItalic);
+            font.setStrikeout(styleFontStrikeout);
+            style.setFont(font);
+
+            FillPatternType fillPattern = FillPatternType.valueOf(styleFillPatternString.toUpperCase());
+            style.setFillForegroundColor(styleFillForegroundColor);
+            style.setFillPattern(fillPattern);
+
+            HorizontalAlignment alignment = HorizontalAlignment.valueOf(horizontalAlignmentString.toUpperCase());
+            style.setAlignment(alignment);
+
+            style.setWrapText(styleWrapText);
+
+            stylesMap.put(styleName, style);
+
+            return styleName;
+
+        } catch (Exception e) {
+            e.printStackTrace();
+            return "Normal";
+        }
+    }
+
+    @Override
+    public boolean createNewSheet(String sheetName, List<TaskAbstract> tasks, String headerStyleName, String topBarStyleName,
+                                  String topDataStyleName, String nonTopBarStyleName, String nonTopDataStyleName, String normalStyleName) {
+        if (targetWorkbook == null) {
+            System.err.println("Target workbook is not prepared.");
+            return false;
+        }
+
+        try {
+            if (tasks == null || tasks.isEmpty()) {
+                return false;
+            }
+
+            // The schedule and calendars are taken over the loaded tasks; a rolled-up copy keeps their row numbers.
+            CriticalPath schedule = null;
+            HierarchyIndex hierarchy = null;
+            if (scheduleColumns || calendars != null) {
+                if (!(tasks instanceof TaskStore.Rows)) {
+                    tasks = TaskStore.from(tasks).asList();
+                }
+                TaskStore store = ((TaskStore.Rows) tasks).getStore();
+                schedule = scheduleColumns ? scheduleOf(store) : null;
+                hierarchy = calendars != null ? hierarchyOf(store) : null;
+            }
+            List<TaskAbstract> sorted = sortedById(rollUpContainers ? rolledUp(tasks) : tasks);
+            TaskStore.Rows storeRows = sorted instanceof TaskStore.Rows ? (TaskStore.Rows) sorted : null;
+            List<String[]> intermediateData = schedule != null || hierarchy != null
+                    ? createIntermediateRepresentation(storeRows, schedule, calendars, hierarchy)
+                    : createIntermediateRepresentation(sorted);
+            int dataColumns = schedule != null ? DATA_COLUMNS + SCHEDULE_HEADERS.length : DATA_COLUMNS;
+
+            Sheet sheet = targetWorkbook.createSheet(sheetName);
+            writeSheetWithX(sheet, intermediateData, storeRows, dataColumns, headerStyleName, topBarStyleName,
+                    topDataStyleName, nonTopBarStyleName, nonTopDataStyleName, normalStyleName);
+
+            Sheet colorSheet = targetWorkbook.createSheet(sheetName + "_Colorized");
+            writeSheetWithColorOnly(colorSheet, intermediateData, storeRows, dataColumns);
+
+            try (FileOutputStream fos = new FileOutputStream(targetPath)) {
+                targetWorkbook.write(fos);
+            }
+
+            return true;
+
+        } catch (Exception e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /*
+     * Effort and cost per bucket of days over the given tasks, on a sheet of its own.
+     * Containers are not rolled up first, so every task counts its own effort and
+     * cost once.
+     */
+    @Override
+    public boolean createHistogramSheet(String sheetName, List<TaskAbstract> tasks, HistogramBucket bucket,
+                                        String headerStyleName, String normalStyleName) {
+        if (targetWorkbook == null) {
+            System.err.println("Target workbook is not prepared.");
+            return false;
+        }
+
+        try {
+            if (tasks == null || tasks.isEmpty()) {
+                return false;
+            }
+            TaskStore.Rows rows = tasks instanceof TaskStore.Rows
+                    ? (TaskStore.Rows) tasks : (TaskStore.Rows) TaskStore.from(tasks).asList();
+            LoadHistogram histogram = LoadHistogram.compute(rows.getStore(), selectedRows(rows), parallelism)
+                    .bucketed(bucket);
+
+            Sheet sheet = targetWorkbook.createSheet(sheetName);
+            writeHistogram(sheet, histogram, getStyleByName(headerStyleName), getStyleByName(normalStyleName));
+
+            try (FileOutputStream fos = new FileOutputStream(targetPath)) {
+                targetWorkbook.write(fos);
+            }
+
+            return true;
+
+        } catch (Exception e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    private void writeHistogram(Sheet sheet, LoadHistogram histogram, CellStyle headerStyle, CellStyle normal) {
+        Row header = sheet.createRow(0);
+        for (int i = 0; i < HISTOGRAM_HEADERS.length; i++) {
+            Cell cell = header.createCell(i);
+            sharedStrings.setCellValue(cell, HISTOGRAM_HEADERS[i]);
+            if (headerStyle != null) cell.setCellStyle(headerStyle);
+        }
+        for (int bucket = 0; bucket < histogram.getBucketCount(); bucket++) {
+            Row row = sheet.createRow(bucket + 1);
+            row.createCell(0).setCellValue(histogram.getBucketStartDay(bucket));
+            row.createCell(1).setCellValue(histogram.getBucketEndDay(bucket));
+            row.createCell(2).setCellValue(histogram.getEffort(bucket));
+            row.createCell(3).setCellValue(histogram.getCost(bucket));
+            if (normal != null) {
+                for (Cell cell : row) {
+                    cell.setCellStyle(normal);
+                }
+            }
+        }
+        for (int i = 0; i < HISTOGRAM_HEADERS.length; i++) {
+            sheet.autoSizeColumn(i);
+        }
+    }
+
+    private CriticalPath scheduleOf(TaskStore store) {
+        ProjectInfo snapshot = project.get();
+        CriticalPath schedule = snapshot != null && snapshot.getStore() == store
+                ? snapshot.getSchedule() : CriticalPath.compute(store);
+        if (schedule.getUnresolvedLinkCount() > 0 || schedule.getBlockedRows().length > 0) {
+            System.err.println("Schedule ignores " + schedule.getUnresolvedLinkCount() + " links to unknown tasks and leaves "
+                    + schedule.getBlockedRows().length + " tasks on or after link cycles unscheduled.");
+        }
+        return schedule;
+    }
+
+    private HierarchyIndex hierarchyOf(TaskStore store) {
+        ProjectInfo snapshot = project.get();
+        return snapshot != null && snapshot.getStore() == store
+                ? snapshot.getHierarchy(parallelism) : HierarchyIndex.build(store, parallelism);
+    }
+
+    private List<TaskAbstract> rolledUp(List<TaskAbstract> tasks) {
+        TaskStore.Rows rows = tasks instanceof TaskStore.Rows
+                ? (TaskStore.Rows) tasks : (TaskStore.Rows) TaskStore.from(tasks).asList();
+        HierarchyIndex hierarchy = hierarchyOf(rows.getStore());
+        if (!hierarchy.isConsistent()) {
+            System.err.println("Task hierarchy has " + hierarchy.getOrphanRows().length + " orphan containerIds and "
+                    + hierarchy.getCycleRows().length + " tasks on containerId cycles; those tasks are not rolled up.");
+        }
+        return hierarchy.rolledUpStore().view(selectedRows(rows));
+    }
+
+    private static int[] selectedRows(TaskStore.Rows rows) {
+        int[] selected = new int[rows.size()];
+        for (int i = 0; i < selected.length; i++) {
+            selected[i] = rows.storeRow(i);
+        }
+        return selected;
+    }
+
+    // Task lists from the store are read-only views, so ordering works on a copy or a reordered view.
+    private static List<TaskAbstract> sortedById(List<TaskAbstract> tasks) {
+        if (tasks instanceof TaskStore.Rows) {
+            return ((TaskStore.Rows) tasks).sortedById();
+        }
+        for (int i = 1; i < tasks.size(); i++) {
+            if (tasks.get(i - 1).getId() > tasks.get(i).getId()) {
+                List<TaskAbstract> sorted = new ArrayList<>(tasks);
+                sorted.sort((t1, t2) -> Integer.compare(t1.getId(), t2.getId()));
+                return sorted;
+            }
+        }
+        return tasks;
+    }
+
+    private void writeSheetWithX(Sheet sheet, List<String[]> intermediateData, TaskStore.Rows storeRows, int dataColumns,
+                                 String headerStyleName, String topBarStyleName, String topDataStyleName,
+                                 String nonTopBarStyleName, String nonTopDataStyleName, String normalStyleName) {
+
+        CellStyle headerStyle = getStyleByName(headerStyleName);
+        CellStyle topBar = getStyleByName(topBarStyleName);
+        CellStyle topData = getStyleByName(topDataStyleName);
+        CellStyle nonTopBar = getStyleByName(nonTopBarStyleName);
+        CellStyle nonTopData = getStyleByName(nonTopDataStyleName);
+        CellStyle normal = getStyleByName(normalStyleName);
+
+        for (int rowNum = 0; rowNum < intermediateData.size(); rowNum++) {
+            Row row = sheet.createRow(rowNum);
+            String[] rowData = intermediateData.get(rowNum);
+
+            for (int cellNum = 0; cellNum < rowData.length; cellNum++) {
+                Cell cell = row.createCell(cellNum);
+                String cellValue = rowData[cellNum];
+
+                if (rowNum == 0) {
+                    sharedStrings.setCellValue(cell, cellValue);
+                    if (headerStyle != null) cell.setCellStyle(headerStyle);
+                } else {
+                    boolean isTop = "top".equals(rowData[0]);
+                    if (cellNum < dataColumns) { 
+                        writeDataCell(cell, cellNum, cellValue, storeRows, rowNum - 1);
+                        if (cellNum == 0) {
+                            cell.setCellStyle(isTop ? topData : nonTopData);
+                        } else if (cellNum < 4) {
+                            cell.setCellStyle(isTop ? topData : nonTopData);
+                        } else {
+                            cell.setCellStyle(isTop ? topData : nonTopData);
+                        }
+                    } else {
+                        sharedStrings.setCellValue(cell, cellValue);
+                        if (cellValue.equalsIgnoreCase("x")) {
+                            cell.setCellStyle(isTop ? topBar : nonTopBar);
+                        } else {
+                            cell.setCellStyle(normal);
+                        }
+                    }
+                }
+            }
+        }
+
+        for (int i = 0; i < intermediateData.get(0).length; i++) {
+            sheet.autoSizeColumn(i);
+        }
+    }
+
+    private void writeSheetWithColorOnly(Sheet sheet, List<String[]> intermediateData, TaskStore.Rows storeRows,
+                                         int dataColumns) {
+        for (int rowNum = 0; rowNum < intermediateData.size(); rowNum++) {
+            Row row = sheet.createRow(rowNum);
+            String[] rowData = intermediateData.get(rowNum);
+            for (int cellNum = 0; cellNum < rowData.length; cellNum++) {
+                Cell cell = row.createCell(cellNum);
+                String cellValue = rowData[cellNum];
+
+                if (rowNum == 0) {
+                    sharedStrings.setCellValue(cell, cellValue);
+                } else {
+                    boolean isTop = "top".equals(rowData[0]);
+                    if (cellNum < dataColumns) {
+                        writeDataCell(cell, cellNum, cellValue, storeRows, rowNum - 1);
+                    } else {
+                        if ("x".equalsIgnoreCase(cellValue)) {
+                            sharedStrings.setCellValue(cell, "");
+                            if (isTop) {
+                                changeCellBackgroundColor(cell, IndexedColors.LIGHT_BLUE.getIndex());
+                            } else {
+                                changeCellBackgroundColor(cell, IndexedColors.GREY_40_PERCENT.getIndex());
+                            }
+                        } else {
+                            sharedStrings.setCellValue(cell, "");
+                        }
+                    }
+                }
+            }
+        }
+
+        for (int i = 0; i < intermediateData.get(0).length; i++) {
+            sheet.autoSizeColumn(i);
+        }
+    }
+
+    // Names of store rows are written by dictionary code, so each distinct name is resolved once per workbook.
+    private void writeDataCell(Cell cell, int cellNum, String cellValue, TaskStore.Rows storeRows, int index) {
+        if (cellNum == 2 && storeRows != null) {
+            TaskStore store = storeRows.getStore();
+            sharedStrings.setName(cell, store.getDictionary(), store.getNameCode(storeRows.storeRow(index)));
+        } else {
+            sharedStrings.setCellValue(cell, cellValue);
+        }
+    }
+
+    private void changeCellBackgroundColor(Cell cell, short color) {
+        CellStyle cellStyle = cell.getCellStyle();
+        if (cellStyle == null) {
+            cellStyle = cell.getSheet().getWorkbook().createCellStyle();
+        } else {
+            CellStyle newStyle = cell.getSheet().getWorkbook().createCellStyle();
+            newStyle.cloneStyleFrom(cellStyle);
+            cellStyle = newStyle;
+        }
+        cellStyle.setFillForegroundColor(color);
+        cellStyle.setFillPattern(FillPatternType.SOLID_FOREGROUND);
+        cell.setCellStyle(cellStyle);
+    }
+
+    private CellStyle getStyleByName(String styleName) {
+        return stylesMap.getOrDefault(styleName, null);
+    }
+
+    public static List<String[]> createIntermediateRepresentation(List<TaskAbstract> tasks) {
+        if (tasks instanceof TaskStore.Rows) {
+            return createIntermediateRepresentation((TaskStore.Rows) tasks);
+        }
+        Integer earliestStartDay = null;
+        Integer latestEndDay = null;
+
+        for (TaskAbstract task : tasks) {
+            Integer startDay = task.getStartDay();
+            Integer endDay = task.getEndDay();
+            if (startDay != null && (earliestStartDay == null || startDay < earliestStartDay)) {
+                earliestStartDay = startDay;
+            }
+            if (endDay != null && (latestEndDay == null || endDay > latestEndDay)) {
+                latestEndDay = endDay;
+            }
+        }
+
+        if (earliestStartDay == null) earliestStartDay = 0;
+        if (latestEndDay == null) latestEndDay = 0;
+
+        List<String[]> intermediateData = new ArrayList<>();
+        intermediateData.add(createHeaderRow(earliestStartDay, latestEndDay));
+
+        List<Integer> dayList = new ArrayList<>();
+        for (int day = earliestStartDay; day <= latestEndDay; day++) {
+            dayList.add(day);
+        }
+
+        for (TaskAbstract task : tasks) {
+            List<String> row = new ArrayList<>();
+            row.add(task.isTopLevel() ? "top" : "");
+            row.add(String.valueOf(task.getId()));
+            row.add(task.getName());
+            row.add(String.valueOf(task.getCost()));
+            row.add(String.valueOf(task.getEffort()));
+
+            for (int i = 0; i < dayList.size(); i++) {
+                row.add("");
+            }
+
+            Integer taskStartDay = task.getStartDay();
+            Integer taskEndDay = task.getEndDay();
+
+            if (taskStartDay != null && taskEndDay != null) {
+                for (int i = 0; i < dayList.size(); i++) {
+                    int currentDay = dayList.get(i);
+                    if (currentDay >= taskStartDay && currentDay <= taskEndDay) {
+                        row.set(5 + i, "x");
+                    }
+                }
+            }
+
+            intermediateData.add(row.toArray(new String[0]));
+        }
+
+        return intermediateData;
+    }
+
+    private static List<String[]> createIntermediateRepresentation(TaskStore.Rows rows) {
+        return createIntermediateRepresentation(rows, null, null, null);
+    }
+
+    /*
+     * Same rows as the list version, read straight from the store columns. With a
+     * schedule over the same store rows, its columns follow Effort and the day
+     * columns move right; unscheduled tasks leave them blank.
+     *
+     * With calendars and the hierarchy of the store rows, day columns are headed by
+     * dates, days on which no row's calendar works get no column, and a task is only
+     * marked on its own working days. Schedule days are shown as dates too; all
+     * calendars share the project start date, so any of them gives the same labels.
+     */
+    private static List<String[]> createIntermediateRepresentation(TaskStore.Rows rows, CriticalPath schedule,
+                                                                   ProjectCalendars calendars,
+                                                                   HierarchyIndex hierarchy) {
+        TaskStore store = rows.getStore();
+        int count = rows.size();
+        boolean hasStart = false;
+        boolean hasEnd = false;
+        int earliestStartDay = 0;
+        int latestEndDay = 0;
+        for (int i = 0; i < count; i++) {
+            int row = rows.storeRow(i);
+            if (store.hasStartDay(row) && (!hasStart || store.getStartDay(row) < earliestStartDay)) {
+                earliestStartDay = store.getStartDay(row);
+                hasStart = true;
+            }
+            if (store.hasEndDay(row) && (!hasEnd || store.getEndDay(row) > latestEndDay)) {
+                latestEndDay = store.getEndDay(row);
+                hasEnd = true;
+            }
+        }
+
+        int days = Math.max(0, latestEndDay - earliestStartDay + 1);
+        // Column of each day of the span after the data columns, or -1 for a day left out.
+        int[] dayColumns = new int[days];
+        String[] dayLabels = new String[days];
+        WorkCalendar[] rowCalendars = null;
+        WorkCalendar labelCalendar = null;
+        if (calendars != null) {
+            int from = earliestStartDay;
+            int to = latestEndDay;
+            if (schedule != null) {
+                from = Math.min(from, schedule.getProjectStart());
+                to = Math.max(to, schedule.getProjectFinish());
+            }
+            rowCalendars = calendars.covering(from, to).calendarsByRow(hierarchy);
+            labelCalendar = count > 0 ? rowCalendars[rows.storeRow(0)] : null;
+            // Rows share calendar instances; each one is looked at once per day.
+            Collection<WorkCalendar> used = new LinkedHashSet<>(Arrays.asList(rowCalendars));
+            int column = 0;
+            for (int d = 0; d < days; d++) {
+                int day = earliestStartDay + d;
+                dayColumns[d] = -1;
+                for (WorkCalendar calendar : used) {
+                    if (calendar.isWorkingDay(day)) {
+                        dayColumns[d] = column;
+                        dayLabels[column++] = calendar.getLabel(day);
+                        break;
+                    }
+                }
+            }
+            dayLabels = Arrays.copyOf(dayLabels, column);
+            days = column;
+        } else {
+            for (int d = 0; d < days; d++) {
+                dayColumns[d] = d;
+                dayLabels[d] = String.valueOf(earliestStartDay + d);
+            }
+        }
+
+        List<String[]> intermediateData = new ArrayList<>(count + 1);
+        intermediateData.add(createHeaderRow(dayLabels, schedule != null));
+
+        int firstDay = schedule != null ? DATA_COLUMNS + SCHEDULE_HEADERS.length : DATA_COLUMNS;
+        for (int i = 0; i < count; i++) {
+            int row = rows.storeRow(i);
+            String[] data = new String[firstDay + days];
+            data[0] = store.isTopLevel(row) ? "top" : "";
+            data[1] = String.valueOf(store.getId(row));
+            data[2] = store.getName(row);
+            data[3] = String.valueOf(store.getCost(row));
+            data[4] = String.valueOf(store.getEffort(row));
+            Arrays.fill(data, DATA_COLUMNS, data.length, "");
+            if (schedule != null && schedule.isScheduled(row)) {
+                data[5] = dayText(labelCalendar, schedule.getEarlyStart(row));
+                data[6] = dayText(labelCalendar, schedule.getEarlyFinish(row));
+                data[7] = dayText(labelCalendar, schedule.getLateStart(row));
+                data[8] = dayText(labelCalendar, schedule.getLateFinish(row));
+                data[9] = String.valueOf(schedule.getSlack(row));
+                data[10] = schedule.isCritical(row) ? "yes" : "";
+            }
+            if (store.hasStartDay(row) && store.hasEndDay(row)) {
+                int from = Math.max(store.getStartDay(row), earliestStartDay);
+                int to = Math.min(store.getEndDay(row), latestEndDay);
+                WorkCalendar calendar = rowCalendars != null ? rowCalendars[row] : null;
+                for (int day = from; day <= to; day++) {
+                    int column = dayColumns[day - earliestStartDay];
+                    if (column >= 0 && (calendar == null || calendar.isWorkingDay(day))) {
+                        data[firstDay + column] = "x";
+                    }
+                }
+            }
+            intermediateData.add(data);
+        }
+        return intermediateData;
+    }
+
+    private static String[] createHeaderRow(int earliestStartDay, int latestEndDay) {
+        String[] dayLabels = new String[Math.max(0, latestEndDay - earliestStartDay + 1)];
+        for (int d = 0; d < dayLabels.length; d++) {
+            dayLabels[d] = String.valueOf(earliestStartDay + d);
+        }
+        return createHeaderRow(dayLabels, false);
+    }
+
+    // Schedule days are still plain numbers when there is no calendar to label them.
+    private static String dayText(WorkCalendar calendar, int day) {
+        return calendar != null && calendar.covers(day) ? calendar.getLabel(day) : String.valueOf(day);
+    }
+
+    private static String[] createHeaderRow(String[] dayLabels, boolean withSchedule) {
+        List<String> headerRow = new ArrayList<>();
+        headerRow.add("Level");
+        headerRow.add("ID");
+        headerRow.add("Description");
+        headerRow.add("Cost");
+        headerRow.add("Effort");
+        if (withSchedule) {
+            headerRow.addAll(Arrays.asList(SCHEDULE_HEADERS));
+        }
+        headerRow.addAll(Arrays.asList(dayLabels));
+        return headerRow.toArray(new String[0]);
+    }
+
+    @Override
+    public void createDefaultStyles() {
+        addFontedStyle("Normal", IndexedColors.BLACK.getIndex(), (short)11, "Calibri",
+                false, false, false, IndexedColors.WHITE.getIndex(), "NO_FILL", "LEFT", false);
+
+        addFontedStyle("DefaultHeaderStyle", IndexedColors.WHITE.getIndex(), (short)12, "Arial",
+                true, false, false, IndexedColors.GREY_80_PERCENT.getIndex(), "SOLID_FOREGROUND", "CENTER", true);
+
+        addFontedStyle("TopTask_bar_style", IndexedColors.BLACK.getIndex(), (short)11, "Calibri",
+                true, false, false, IndexedColors.BLUE.getIndex(), "SOLID_FOREGROUND", "CENTER", false);
+
+        addFontedStyle("TopTask_data_style", IndexedColors.BLUE.getIndex(), (short)11, "Calibri",
+                true, false, false, IndexedColors.WHITE.getIndex(), "NO_FILL", "LEFT", false);
+
+        addFontedStyle("NonTopTask_bar_style", IndexedColors.BLACK.getIndex(), (short)11, "Calibri",
+                false, false, false, IndexedColors.GREY_50_PERCENT.getIndex(), "SOLID_FOREGROUND", "CENTER", false);
+
+        addFontedStyle("NonTopTask_data_style", IndexedColors.BLACK.getIndex(), (short)11, "Calibri",
+                false, false, false, IndexedColors.WHITE.getIndex(), "NO_FILL", "LEFT", false);
+    }
+
+    // Drops the workbook and its styles; a later prepareTargetWorkbook starts a new one.
+    @Override
+    public void close() {
+        if (targetWorkbook != null) {
+            try {
+                targetWorkbook.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        targetWorkbook = null;
+        sharedStrings = null;
+        stylesMap = new HashMap<>();
+    }
+}
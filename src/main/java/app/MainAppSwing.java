@@ -3,10 +3,19 @@ package app;
 import dom.gantt.TaskAbstract;
 import dom.gantt.TaskConcrete;
 import service.IMainController;
+import util.DurationDistribution;
 import util.FileTypes;
+import util.HistogramBucket;
+import util.LoadResult;
+import util.ProjectDiff;
 import util.ProjectInfo;
+import util.QueryResult;
+import util.ScheduleRisk;
+import util.SortKey;
 
 import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import javax.swing.filechooser.FileNameExtensionFilter;
 import javax.swing.table.DefaultTableModel;
 import javax.swing.table.TableRowSorter;
@@ -31,6 +40,8 @@ public class MainAppSwing extends JFrame {
     private StyleSettings nonTopBarStyleSettings = new StyleSettings();
     private StyleSettings nonTopDataStyleSettings = new StyleSettings();
     private StyleSettings normalStyleSettings = new StyleSettings();
+    // Fixed so that simulating the same project twice gives the same dates.
+    private long simulationSeed = 42L;
 
     public MainAppSwing() {
         appController = new ApplicationController();
@@ -49,8 +60,10 @@ public class MainAppSwing extends JFrame {
         JMenu menuFile = new JMenu("File");
         JMenuItem menuItemLoad = new JMenuItem("Load");
         JMenuItem menuItemSave = new JMenuItem("Save");
+        JMenuItem menuItemCompare = new JMenuItem("Compare With Baseline");
         menuFile.add(menuItemLoad);
         menuFile.add(menuItemSave);
+        menuFile.add(menuItemCompare);
         menuBar.add(menuFile);
 
         JMenu menuSettings = new JMenu("Settings");
@@ -95,7 +108,7 @@ public class MainAppSwing extends JFrame {
 
         
         JPanel controlsPanel = new JPanel();
-        controlsPanel.setLayout(new FlowLayout(FlowLayout.LEFT));
+        controlsPanel.setLayout(new GridLayout(0, 1));
 
         JButton btnGetAllTasks = new JButton("Show All Tasks");
         JButton btnGetTopLevelTasks = new JButton("Show Top-Level Tasks");
@@ -104,16 +117,38 @@ public class MainAppSwing extends JFrame {
         JTextField txtFirstId = new JTextField(5);
         JLabel lblLastId = new JLabel("Last ID:");
         JTextField txtLastId = new JTextField(5);
+        JButton btnGetTasksInWindow = new JButton("Show Tasks Active In Window");
+        JLabel lblFirstDay = new JLabel("First Day:");
+        JTextField txtFirstDay = new JTextField(5);
+        JLabel lblLastDay = new JLabel("Last Day:");
+        JTextField txtLastDay = new JTextField(5);
+        JComboBox<SortKey> sortKeyCombo = new JComboBox<>(SortKey.values());
+        JButton btnSortedTasks = new JButton("Show Sorted Tasks");
+        JTextField txtQuery = new JTextField(20);
+        JButton btnRunQuery = new JButton("Run Query");
+        JLabel lblFindName = new JLabel("Find Name:");
+        JTextField txtFindName = new JTextField(12);
+        JLabel lblMoveId = new JLabel("Move ID:");
+        JTextField txtMoveId = new JTextField(5);
+        JLabel lblMoveStart = new JLabel("To Days:");
+        JTextField txtMoveStart = new JTextField(4);
+        JTextField txtMoveEnd = new JTextField(4);
+        JButton btnMoveTask = new JButton("Move Task");
+        JLabel lblLoadBucket = new JLabel("Load By:");
+        JComboBox<HistogramBucket> loadBucketCombo = new JComboBox<>(HistogramBucket.values());
+        JComboBox<DurationDistribution> distributionCombo = new JComboBox<>(DurationDistribution.values());
+        distributionCombo.setSelectedItem(DurationDistribution.TRIANGULAR);
+        JButton btnSimulate = new JButton("Simulate Finish");
         JButton btnExport = new JButton("Export to Excel");
 
-        controlsPanel.add(btnGetAllTasks);
-        controlsPanel.add(btnGetTopLevelTasks);
-        controlsPanel.add(lblFirstId);
-        controlsPanel.add(txtFirstId);
-        controlsPanel.add(lblLastId);
-        controlsPanel.add(txtLastId);
-        controlsPanel.add(btnGetTasksInRange);
-        controlsPanel.add(btnExport);
+        // One row per group of tools, so each row fits the frame width and Export stays on the first.
+        controlsPanel.add(toolRow(btnGetAllTasks, btnGetTopLevelTasks, lblLoadBucket, loadBucketCombo, btnExport));
+        controlsPanel.add(toolRow(lblFirstId, txtFirstId, lblLastId, txtLastId, btnGetTasksInRange,
+                sortKeyCombo, btnSortedTasks));
+        controlsPanel.add(toolRow(lblFirstDay, txtFirstDay, lblLastDay, txtLastDay, btnGetTasksInWindow));
+        controlsPanel.add(toolRow(txtQuery, btnRunQuery, lblFindName, txtFindName));
+        controlsPanel.add(toolRow(lblMoveId, txtMoveId, lblMoveStart, txtMoveStart, txtMoveEnd, btnMoveTask,
+                distributionCombo, btnSimulate));
 
         add(controlsPanel, BorderLayout.SOUTH);
 
@@ -128,8 +163,8 @@ public class MainAppSwing extends JFrame {
                     JOptionPane.showMessageDialog(MainAppSwing.this, "Unsupported file type.", "Error", JOptionPane.ERROR_MESSAGE);
                     return;
                 }
-                List<String> loadedTasks = appController.load(selectedFile.getAbsolutePath(), fileType);
-                if (loadedTasks != null) {
+                LoadResult loadResult = appController.loadLazy(selectedFile.getAbsolutePath(), fileType);
+                if (loadResult != null) {
                     updateTable(appController.getAllTasks());
                 } else {
                     JOptionPane.showMessageDialog(MainAppSwing.this, "Failed to load file.", "Error", JOptionPane.ERROR_MESSAGE);
@@ -151,6 +186,94 @@ public class MainAppSwing extends JFrame {
             }
         });
 
+        btnGetTasksInWindow.addActionListener(e -> {
+            try {
+                int firstDay = Integer.parseInt(txtFirstDay.getText());
+                int lastDay = Integer.parseInt(txtLastDay.getText());
+                updateTable(appController.getTasksActiveInWindow(firstDay, lastDay));
+            } catch (NumberFormatException ex) {
+                JOptionPane.showMessageDialog(MainAppSwing.this, "Please enter valid integer values for days.", "Error", JOptionPane.ERROR_MESSAGE);
+            }
+        });
+
+        btnRunQuery.addActionListener(e -> {
+            QueryResult queryResult = appController.query(txtQuery.getText());
+            if (queryResult != null) {
+                updateTable(queryResult.getTasks());
+                txtQuery.setToolTipText(queryResult.getPlan());
+            } else {
+                JOptionPane.showMessageDialog(MainAppSwing.this, "Invalid query or no tasks loaded.", "Error", JOptionPane.ERROR_MESSAGE);
+            }
+        });
+
+        txtFindName.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                findByName(txtFindName.getText());
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                findByName(txtFindName.getText());
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                findByName(txtFindName.getText());
+            }
+        });
+
+        btnMoveTask.addActionListener(e -> {
+            try {
+                int id = Integer.parseInt(txtMoveId.getText().trim());
+                int startDay = Integer.parseInt(txtMoveStart.getText().trim());
+                int endDay = Integer.parseInt(txtMoveEnd.getText().trim());
+                List<TaskAbstract> moved = appController.moveTask(id, startDay, endDay);
+                if (moved != null) {
+                    refreshRows(moved);
+                } else {
+                    JOptionPane.showMessageDialog(MainAppSwing.this, "No task with that ID is loaded.", "Error", JOptionPane.ERROR_MESSAGE);
+                }
+            } catch (NumberFormatException ex) {
+                JOptionPane.showMessageDialog(MainAppSwing.this, "Please enter valid integer values for the ID and days.", "Error", JOptionPane.ERROR_MESSAGE);
+            }
+        });
+
+        // Durations between 80% and 150% of the plan; P50/P80/P95 of the project finish.
+        btnSimulate.addActionListener(e -> {
+            DurationDistribution distribution = (DurationDistribution) distributionCombo.getSelectedItem();
+            btnSimulate.setEnabled(false);
+            // The runs take seconds on large projects, so they stay off the event thread.
+            new SwingWorker<ScheduleRisk, Void>() {
+                @Override
+                protected ScheduleRisk doInBackground() {
+                    return appController.simulateSchedule(distribution, 0.8, 1.5, 1000, simulationSeed);
+                }
+
+                @Override
+                protected void done() {
+                    btnSimulate.setEnabled(true);
+                    ScheduleRisk risk;
+                    try {
+                        risk = get();
+                    } catch (Exception ex) {
+                        ex.printStackTrace();
+                        JOptionPane.showMessageDialog(MainAppSwing.this, "Simulation failed.", "Error", JOptionPane.ERROR_MESSAGE);
+                        return;
+                    }
+                    if (risk != null) {
+                        JOptionPane.showMessageDialog(MainAppSwing.this, "Project finish over " + risk.getIterations() + " runs: P50 day "
+                                + risk.getProjectFinishPercentile(50) + ", P80 day " + risk.getProjectFinishPercentile(80)
+                                + ", P95 day " + risk.getProjectFinishPercentile(95), "Schedule Risk", JOptionPane.INFORMATION_MESSAGE);
+                    } else {
+                        JOptionPane.showMessageDialog(MainAppSwing.this, "No tasks loaded.", "Error", JOptionPane.ERROR_MESSAGE);
+                    }
+                }
+            }.execute();
+        });
+
+        btnSortedTasks.addActionListener(e -> updateTable(appController.getTasksSortedBy((SortKey) sortKeyCombo.getSelectedItem())));
+
         menuItemSave.addActionListener(e -> {
             List<TaskAbstract> tasks = appController.getAllTasks();
             if (tasks == null || tasks.isEmpty()) {
@@ -187,6 +310,47 @@ public class MainAppSwing extends JFrame {
             fileChooser.setSelectedFile(null);
         });
 
+        menuItemCompare.addActionListener(e -> {
+            if (appController.getAllTasks() == null) {
+                JOptionPane.showMessageDialog(MainAppSwing.this, "Load the current project first.", "Information", JOptionPane.INFORMATION_MESSAGE);
+                return;
+            }
+            if (fileChooser.showOpenDialog(MainAppSwing.this) != JFileChooser.APPROVE_OPTION) {
+                return;
+            }
+            File baselineFile = fileChooser.getSelectedFile();
+            FileTypes fileType = getFileType(baselineFile);
+            if (fileType == null) {
+                JOptionPane.showMessageDialog(MainAppSwing.this, "Unsupported file type.", "Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            ProjectDiff diff = appController.compareWithBaseline(baselineFile.getAbsolutePath(), fileType);
+            if (diff == null) {
+                JOptionPane.showMessageDialog(MainAppSwing.this, "Failed to load the baseline.", "Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            FileNameExtensionFilter excelFilter = new FileNameExtensionFilter("Excel Files", "xlsx");
+            fileChooser.setFileFilter(excelFilter);
+            if (originalFileName != null) {
+                fileChooser.setSelectedFile(new File(getBaseName(originalFileName) + "_Variance.xlsx"));
+            }
+            if (fileChooser.showSaveDialog(MainAppSwing.this) == JFileChooser.APPROVE_OPTION) {
+                File saveFile = fileChooser.getSelectedFile();
+                if (!saveFile.getName().toLowerCase().endsWith(".xlsx")) {
+                    saveFile = new File(saveFile.getAbsolutePath() + ".xlsx");
+                }
+                if (appController.writeVarianceWorkbook(diff, saveFile.getAbsolutePath())) {
+                    JOptionPane.showMessageDialog(MainAppSwing.this, diff.getAddedCount() + " added, " + diff.getRemovedCount()
+                            + " removed, " + diff.getChangedCount() + " changed. Variance saved at " + saveFile.getAbsolutePath(),
+                            "Success", JOptionPane.INFORMATION_MESSAGE);
+                } else {
+                    JOptionPane.showMessageDialog(MainAppSwing.this, "Failed to save the variance workbook.", "Error", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+            fileChooser.setFileFilter(null);
+            fileChooser.setSelectedFile(null);
+        });
+
         btnExport.addActionListener(e -> {
             List<TaskAbstract> tasks = getCurrentTasksFromTable();
             if (tasks == null || tasks.isEmpty()) {
@@ -209,7 +373,9 @@ public class MainAppSwing extends JFrame {
                 if (projectInfo != null) {
                     createStyles(); 
                     boolean success = appController.createNewSheet("Tasks", tasks, "HeaderStyle", "TopBarStyle",
-                            "TopDataStyle", "NonTopBarStyle", "NonTopDataStyle", "NormalStyle");
+                            "TopDataStyle", "NonTopBarStyle", "NonTopDataStyle", "NormalStyle")
+                            && appController.createHistogramSheet("Tasks_Load", tasks,
+                            (HistogramBucket) loadBucketCombo.getSelectedItem(), "HeaderStyle", "NormalStyle");
                     if (success) {
                         JOptionPane.showMessageDialog(MainAppSwing.this, "Tasks exported successfully at " + saveFile.getAbsolutePath(), "Success", JOptionPane.INFORMATION_MESSAGE);
                     } else {
@@ -226,6 +392,10 @@ public class MainAppSwing extends JFrame {
         menuItemStyles.addActionListener(e -> openStyleSettingsDialog());
     }
 
+    private void findByName(String fragment) {
+        updateTable(fragment.isEmpty() ? appController.getAllTasks() : appController.findTasksByName(fragment));
+    }
+
     private void updateTable(List<TaskAbstract> tasks) {
         tableModel.setRowCount(0);
         if (tasks != null) {
@@ -244,6 +414,21 @@ public class MainAppSwing extends JFrame {
         }
     }
 
+    // Rewrites only the shown rows of the given tasks; the rest of the table is left alone.
+    private void refreshRows(List<TaskAbstract> tasks) {
+        Map<Integer, TaskAbstract> byId = new HashMap<>();
+        for (TaskAbstract task : tasks) {
+            byId.put(task.getId(), task);
+        }
+        for (int i = 0; i < tableModel.getRowCount(); i++) {
+            TaskAbstract task = byId.get((Integer) tableModel.getValueAt(i, 0));
+            if (task != null) {
+                tableModel.setValueAt(task.getStartDay(), i, 3);
+                tableModel.setValueAt(task.getEndDay(), i, 4);
+            }
+        }
+    }
+
     private List<TaskAbstract> getCurrentTasksFromTable() {
         List<TaskAbstract> tasks = new ArrayList<>();
         int rowCount = tableModel.getRowCount();
@@ -317,6 +502,14 @@ public class MainAppSwing extends JFrame {
         dialog.setVisible(true);
     }
 
+    private static JPanel toolRow(JComponent... components) {
+        JPanel row = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        for (JComponent component : components) {
+            row.add(component);
+        }
+        return row;
+    }
+
     private JPanel createStyleSettingsPanel(StyleSettings styleSettings) {
         JPanel panel = new JPanel(new GridLayout(9, 2));
 
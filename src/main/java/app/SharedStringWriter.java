@@ -0,0 +1,85 @@
+package app;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.poi.ss.SpreadsheetVersion;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.model.SharedStringsTable;
+import org.apache.poi.xssf.usermodel.XSSFCell;
+import org.apache.poi.xssf.usermodel.XSSFRichTextString;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTCell;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.STCellType;
+
+import util.NameDictionary;
+
+/*
+ * Writes string cells of an XSSF workbook through shared-string indexes that are
+ * resolved once per distinct value. XSSFCell#setCellValue(String) looks every value
+ * up in the shared strings table by its XML text; here a repeated value costs a hash
+ * probe, and a task name known by its dictionary code costs an array read. Other
+ * workbook types fall back to setCellValue.
+ */
+class SharedStringWriter {
+
+    private final SharedStringsTable table;
+    private final Map<String, Integer> indexes = new HashMap<>();
+    private NameDictionary dictionary;
+    private int[] codeIndexes = new int[0];
+
+    SharedStringWriter(Workbook workbook) {
+        this.table = workbook instanceof XSSFWorkbook ? ((XSSFWorkbook) workbook).getSharedStringSource() : null;
+    }
+
+    void setCellValue(Cell cell, String value) {
+        if (table == null || value == null || value.length() > SpreadsheetVersion.EXCEL2007.getMaxTextLength()) {
+            cell.setCellValue(value);
+            return;
+        }
+        Integer index = indexes.get(value);
+        if (index == null) {
+            index = table.addSharedStringItem(new XSSFRichTextString(value));
+            indexes.put(value, index);
+        }
+        setIndex(cell, index);
+    }
+
+    void setName(Cell cell, NameDictionary names, int code) {
+        if (table == null) {
+            cell.setCellValue(names.name(code));
+            return;
+        }
+        if (names != dictionary) {
+            dictionary = names;
+            codeIndexes = new int[0];
+        }
+        if (code >= codeIndexes.length) {
+            int oldLength = codeIndexes.length;
+            codeIndexes = Arrays.copyOf(codeIndexes, Math.max(code + 1, names.size()));
+            Arrays.fill(codeIndexes, oldLength, codeIndexes.length, -1);
+        }
+        if (codeIndexes[code] < 0) {
+            String name = names.name(code);
+            if (name == null || name.length() > SpreadsheetVersion.EXCEL2007.getMaxTextLength()) {
+                cell.setCellValue(name);
+                return;
+            }
+            Integer index = indexes.get(name);
+            if (index == null) {
+                index = table.addSharedStringItem(new XSSFRichTextString(name));
+                indexes.put(name, index);
+            }
+            codeIndexes[code] = index;
+        }
+        setIndex(cell, codeIndexes[code]);
+    }
+
+    private static void setIndex(Cell cell, int index) {
+        CTCell ctCell = ((XSSFCell) cell).getCTCell();
+        ctCell.setT(STCellType.S);
+        ctCell.setV(Integer.toString(index));
+    }
+}
@@ -0,0 +1,123 @@
+package app;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.apache.poi.ss.SpreadsheetVersion;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+import util.ProjectDiff;
+import util.TaskStore;
+
+/*
+ * Writes a ProjectDiff as a workbook with a variance sheet, one row per added,
+ * removed or changed task, and a summary sheet. The variance rows go through a
+ * streaming workbook that keeps only a small window of rows in memory and flushes
+ * the rest to a temporary file, so a diff of a million tasks is written in one pass
+ * without building the sheet first.
+ */
+public final class VarianceSheetWriter {
+
+    private static final int ROW_WINDOW = 256;
+    private static final int ROWS_PER_SHEET = SpreadsheetVersion.EXCEL2007.getMaxRows() - 1;
+    private static final String[] HEADERS = {
+            "ID", "Name", "Change",
+            "Baseline Start", "Current Start", "Start Slip",
+            "Baseline End", "Current End", "End Slip",
+            "Baseline Cost", "Current Cost", "Cost Delta",
+            "Baseline Effort", "Current Effort", "Effort Delta"
+    };
+
+    private VarianceSheetWriter() {
+    }
+
+    public static boolean write(ProjectDiff diff, String targetPath) {
+        SXSSFWorkbook workbook = new SXSSFWorkbook(ROW_WINDOW);
+        try {
+            CellStyle headerStyle = workbook.createCellStyle();
+            Font bold = workbook.createFont();
+            bold.setBold(true);
+            headerStyle.setFont(bold);
+
+            // A sheet holds at most ROWS_PER_SHEET differences; the rest continue on "Variance 2" and so on.
+            Sheet sheet = null;
+            int rowNum = 0;
+            TaskStore baseline = diff.getBaseline();
+            TaskStore current = diff.getCurrent();
+            for (int entry = 0; entry < diff.size(); entry++) {
+                if (sheet == null || rowNum > ROWS_PER_SHEET) {
+                    int sheetCount = entry / ROWS_PER_SHEET + 1;
+                    sheet = workbook.createSheet(sheetCount == 1 ? "Variance" : "Variance " + sheetCount);
+                    writeHeader(sheet.createRow(0), HEADERS, headerStyle);
+                    rowNum = 1;
+                }
+                Row row = sheet.createRow(rowNum++);
+                int b = diff.getBaselineRow(entry);
+                int c = diff.getCurrentRow(entry);
+                row.createCell(0).setCellValue(diff.getId(entry));
+                row.createCell(1).setCellValue(diff.getName(entry));
+                row.createCell(2).setCellValue(diff.getKind(entry).name());
+                if (b >= 0 && baseline.hasStartDay(b)) row.createCell(3).setCellValue(baseline.getStartDay(b));
+                if (c >= 0 && current.hasStartDay(c)) row.createCell(4).setCellValue(current.getStartDay(c));
+                if (diff.hasStartSlip(entry)) row.createCell(5).setCellValue(diff.getStartSlip(entry));
+                if (b >= 0 && baseline.hasEndDay(b)) row.createCell(6).setCellValue(baseline.getEndDay(b));
+                if (c >= 0 && current.hasEndDay(c)) row.createCell(7).setCellValue(current.getEndDay(c));
+                if (diff.hasEndSlip(entry)) row.createCell(8).setCellValue(diff.getEndSlip(entry));
+                if (b >= 0) row.createCell(9).setCellValue(baseline.getCost(b));
+                if (c >= 0) row.createCell(10).setCellValue(current.getCost(c));
+                row.createCell(11).setCellValue(diff.getCostDelta(entry));
+                if (b >= 0) row.createCell(12).setCellValue(baseline.getEffort(b));
+                if (c >= 0) row.createCell(13).setCellValue(current.getEffort(c));
+                row.createCell(14).setCellValue(diff.getEffortDelta(entry));
+            }
+
+            if (sheet == null) {
+                writeHeader(workbook.createSheet("Variance").createRow(0), HEADERS, headerStyle);
+            }
+
+            Sheet summary = workbook.createSheet("Summary");
+            writeHeader(summary.createRow(0), new String[]{"Measure", "Value"}, headerStyle);
+            writeSummaryRow(summary, 1, "Added", diff.getAddedCount());
+            writeSummaryRow(summary, 2, "Removed", diff.getRemovedCount());
+            writeSummaryRow(summary, 3, "Changed", diff.getChangedCount());
+            writeSummaryRow(summary, 4, "Unchanged", diff.getUnchangedCount());
+            writeSummaryRow(summary, 5, "Cost Delta", diff.getCostDelta());
+            writeSummaryRow(summary, 6, "Effort Delta", diff.getEffortDelta());
+
+            try (FileOutputStream fos = new FileOutputStream(targetPath)) {
+                workbook.write(fos);
+            }
+            return true;
+
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        } finally {
+            workbook.dispose();
+            try {
+                workbook.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static void writeHeader(Row row, String[] headers, CellStyle style) {
+        for (int i = 0; i < headers.length; i++) {
+            Cell cell = row.createCell(i);
+            cell.setCellValue(headers[i]);
+            cell.setCellStyle(style);
+        }
+    }
+
+    private static void writeSummaryRow(Sheet sheet, int rowNum, String measure, double value) {
+        Row row = sheet.createRow(rowNum);
+        row.createCell(0).setCellValue(measure);
+        row.createCell(1).setCellValue(value);
+    }
+}
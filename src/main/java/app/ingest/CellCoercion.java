@@ -0,0 +1,47 @@
+package app.ingest;
+
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Date;
+
+import org.apache.poi.ss.usermodel.CellType;
+
+public final class CellCoercion {
+
+    // Immutable, so one formatter serves every cell and thread.
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+
+    private CellCoercion() {
+    }
+
+    public static double toNumeric(CellType type, double numericValue, String stringValue) {
+        if (type == CellType.NUMERIC) {
+            return numericValue;
+        } else if (type == CellType.STRING) {
+            try {
+                return Double.parseDouble(stringValue.trim());
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+        } else {
+            return 0;
+        }
+    }
+
+    // dateValue is only non-null for numeric cells carrying a date format
+    public static String toText(CellType type, double numericValue, String stringValue, boolean booleanValue, Date dateValue) {
+        if (type == CellType.STRING) {
+            return stringValue.trim();
+        } else if (type == CellType.NUMERIC) {
+            if (dateValue != null) {
+                return DATE_FORMAT.format(dateValue.toInstant().atZone(ZoneId.systemDefault()));
+            } else {
+                return String.valueOf((int) numericValue);
+            }
+        } else if (type == CellType.BOOLEAN) {
+            return String.valueOf(booleanValue);
+        } else {
+            return "";
+        }
+    }
+}
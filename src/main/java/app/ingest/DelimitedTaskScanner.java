@@ -0,0 +1,447 @@
+package app.ingest;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+import dom.gantt.Dependency;
+import dom.gantt.TaskAbstract;
+import dom.gantt.TaskConcrete;
+import util.FileTypes;
+import util.TaskStore;
+
+/*
+ * Byte-level CSV/TSV task scanner over memory-mapped windows of the source file.
+ * Delimiters are found and numbers parsed in place; only task names become Strings.
+ * Row rules match the former readLine/split loader: the first record is the header,
+ * records with fewer than 7 fields or unparsable numbers are skipped, fields are
+ * trimmed, and \n, \r and \r\n all end a record. Fields may be RFC-4180 quoted.
+ * An optional 8th field lists predecessor links (see Dependency); links that do not
+ * parse are dropped with a message and the task is kept, as in the Excel loaders.
+ */
+public class DelimitedTaskScanner {
+
+    private static final int FIELDS = 7;
+    private static final int PREDECESSORS = 7;
+    private static final int TRACKED_FIELDS = PREDECESSORS + 1;
+    private static final int DEFAULT_WINDOW = 256 << 20;
+    private static final int STREAM_BUFFER = 1 << 20;
+    private static final int MAX_FAST_DIGITS = 15;
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private final byte delimiter;
+    private final Consumer<TaskAbstract> sink;
+    private final TaskStore store;
+    private final int window;
+
+    private final int[] fieldStart = new int[TRACKED_FIELDS];
+    private final int[] fieldEnd = new int[TRACKED_FIELDS];
+    private final boolean[] fieldQuoted = new boolean[TRACKED_FIELDS];
+    private final boolean[] fieldRaw = new boolean[TRACKED_FIELDS];
+    private int fieldCount;
+    private int tailStart;
+
+    private ByteBuffer buf;
+    private ByteBuffer bulk;
+    private byte[] scratch = new byte[256];
+    private final ByteBuffer[] unescaped = new ByteBuffer[TRACKED_FIELDS];
+    private final byte[][] unescapedBytes = new byte[TRACKED_FIELDS][];
+    private boolean skipNextRecord;
+
+    public DelimitedTaskScanner(FileTypes filetype, Consumer<TaskAbstract> sink) {
+        this(filetype, sink, null, DEFAULT_WINDOW);
+    }
+
+    // Appends rows straight into the store columns without creating task objects.
+    public DelimitedTaskScanner(FileTypes filetype, TaskStore store) {
+        this(filetype, null, store, DEFAULT_WINDOW);
+    }
+
+    DelimitedTaskScanner(FileTypes filetype, Consumer<TaskAbstract> sink, int window) {
+        this(filetype, sink, null, window);
+    }
+
+    private DelimitedTaskScanner(FileTypes filetype, Consumer<TaskAbstract> sink, TaskStore store, int window) {
+        this.delimiter = (byte) (filetype == FileTypes.TSV ? '\t' : ',');
+        this.sink = sink;
+        this.store = store;
+        this.window = window;
+    }
+
+    public void scanFile(String sourcePath) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(sourcePath), StandardOpenOption.READ)) {
+            scanRange(channel, 0, channel.size(), true);
+        }
+    }
+
+    /*
+     * Scans a sequential source through a heap buffer. The unconsumed tail of each
+     * read is compacted to the front, and the buffer doubles when a single record
+     * does not fit.
+     */
+    public void scanChannel(ReadableByteChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(STREAM_BUFFER);
+        skipNextRecord = true;
+        boolean eof = false;
+        while (!eof) {
+            if (!buffer.hasRemaining()) {
+                ByteBuffer grown = ByteBuffer.allocate(buffer.capacity() * 2);
+                buffer.flip();
+                grown.put(buffer);
+                buffer = grown;
+            }
+            eof = channel.read(buffer) < 0;
+            int limit = buffer.position();
+            int consumed = scanBuffer(buffer, 0, limit, limit, eof);
+            buffer.position(consumed);
+            buffer.limit(limit);
+            buffer.compact();
+        }
+    }
+
+    /*
+     * Scans every record that starts inside [start, end) and returns the offset at
+     * which the first record starting at or after end begins. A record that starts
+     * before end is always read to its terminator, even past end.
+     */
+    public long scanRange(FileChannel channel, long start, long end, boolean skipHeader) throws IOException {
+        long size = channel.size();
+        long position = start;
+        int mapSize = window;
+        skipNextRecord = skipHeader;
+        while (position < end && position < size) {
+            long length = Math.min((long) mapSize, size - position);
+            boolean eof = position + length == size;
+            ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+            int stopAt = (int) Math.min(end - position, length);
+            int consumed = scanBuffer(mapped, 0, (int) length, stopAt, eof);
+            if (consumed == 0 && !eof) {
+                if (mapSize == Integer.MAX_VALUE) {
+                    throw new IOException("Record at offset " + position + " exceeds the maximum mapping size");
+                }
+                mapSize = (int) Math.min((long) mapSize * 2, Integer.MAX_VALUE);
+                continue;
+            }
+            position += consumed;
+        }
+        return Math.min(position, size);
+    }
+
+    /*
+     * Parses complete records in buffer[from, limit) whose start is before stopAt.
+     * Returns the offset after the last record consumed. When eof is false a record
+     * that reaches limit is left unconsumed so the caller can refill.
+     */
+    int scanBuffer(ByteBuffer buffer, int from, int limit, int stopAt, boolean eof) {
+        this.buf = buffer;
+        this.bulk = buffer.hasArray() ? null : buffer.duplicate();
+        int position = from;
+        while (position < limit && position < stopAt) {
+            int next = scanRecord(position, limit, eof);
+            if (next < 0) {
+                break;
+            }
+            if (skipNextRecord) {
+                skipNextRecord = false;
+            } else {
+                emitRecord();
+            }
+            position = next;
+        }
+        this.buf = null;
+        this.bulk = null;
+        return position - from;
+    }
+
+    // Returns the start of the following record, or -1 if the record is incomplete.
+    private int scanRecord(int start, int limit, boolean eof) {
+        fieldCount = 0;
+        int i = start;
+        while (true) {
+            int field = fieldCount;
+            boolean track = field < TRACKED_FIELDS;
+            if (i < limit && buf.get(i) == '"') {
+                int contentStart = i + 1;
+                i = contentStart;
+                boolean escaped = false;
+                while (true) {
+                    if (i >= limit) {
+                        if (!eof) return -1;
+                        break;
+                    }
+                    if (buf.get(i) == '"') {
+                        if (i + 1 < limit && buf.get(i + 1) == '"') {
+                            escaped = true;
+                            i += 2;
+                            continue;
+                        }
+                        if (i + 1 >= limit && !eof) return -1;
+                        break;
+                    }
+                    i++;
+                }
+                int contentEnd = Math.min(i, limit);
+                i = Math.min(i + 1, limit);
+                tailStart = i;
+                while (i < limit && !isFieldEnd(buf.get(i))) {
+                    i++;
+                }
+                if (i >= limit && !eof) return -1;
+                if (track) {
+                    fieldStart[field] = contentStart;
+                    fieldEnd[field] = contentEnd;
+                    fieldQuoted[field] = true;
+                    fieldRaw[field] = escaped || i > tailStart;
+                    if (fieldRaw[field]) {
+                        unescapeField(field, i);
+                    }
+                }
+            } else {
+                int begin = i;
+                while (i < limit && !isFieldEnd(buf.get(i))) {
+                    i++;
+                }
+                if (i >= limit && !eof) return -1;
+                if (track) {
+                    fieldStart[field] = begin;
+                    fieldEnd[field] = i;
+                    fieldQuoted[field] = false;
+                    fieldRaw[field] = false;
+                }
+            }
+            fieldCount++;
+
+            if (i >= limit) {
+                return limit;
+            }
+            byte b = buf.get(i);
+            if (b == delimiter) {
+                i++;
+                continue;
+            }
+            if (b == '\r') {
+                if (i + 1 < limit) {
+                    return buf.get(i + 1) == '\n' ? i + 2 : i + 1;
+                }
+                return eof ? limit : -1;
+            }
+            return i + 1;
+        }
+    }
+
+    private boolean isFieldEnd(byte b) {
+        return b == delimiter || b == '\n' || b == '\r';
+    }
+
+    // Rare path: "" escapes or text after the closing quote are copied into a private buffer.
+    private void unescapeField(int field, int end) {
+        int capacity = fieldEnd[field] - fieldStart[field] + (end - tailStart);
+        byte[] target = unescapedBytes[field];
+        if (target == null || target.length < capacity) {
+            target = new byte[Math.max(capacity, 64)];
+            unescapedBytes[field] = target;
+            unescaped[field] = ByteBuffer.wrap(target);
+        }
+        int length = 0;
+        for (int i = fieldStart[field]; i < fieldEnd[field]; i++) {
+            byte b = buf.get(i);
+            target[length++] = b;
+            if (b == '"') {
+                i++;
+            }
+        }
+        for (int i = tailStart; i < end; i++) {
+            target[length++] = buf.get(i);
+        }
+        fieldStart[field] = 0;
+        fieldEnd[field] = length;
+    }
+
+    private ByteBuffer source(int field) {
+        return fieldRaw[field] ? unescaped[field] : buf;
+    }
+
+    private void emitRecord() {
+        if (fieldCount < FIELDS) {
+            return;
+        }
+        try {
+            int id = isBlank(0) ? 0 : parseInt(0);
+            int containerId = isBlank(2) ? 0 : parseInt(2);
+            boolean hasStartDay = false;
+            boolean hasEndDay = false;
+            int startDay = 0;
+            int endDay = 0;
+            double cost = 0.0;
+            double effort = 0.0;
+
+            if (containerId != 0) {
+                hasStartDay = !isBlank(3);
+                startDay = hasStartDay ? parseInt(3) : 0;
+                hasEndDay = !isBlank(4);
+                endDay = hasEndDay ? parseInt(4) : 0;
+                cost = isBlank(5) ? 0.0 : parseDouble(5);
+                effort = isBlank(6) ? 0.0 : parseDouble(6);
+            }
+
+            if (store != null) {
+                store.addCoded(id, internName(1), containerId, hasStartDay, startDay, hasEndDay, endDay, cost, effort);
+                for (Dependency link : links(id)) {
+                    store.addPredecessor(link.getPredecessorId(), link.getType(), link.getLag());
+                }
+            } else {
+                sink.accept(new TaskConcrete(id, decode(1), containerId, hasStartDay ? startDay : null,
+                        hasEndDay ? endDay : null, cost, effort, links(id)));
+            }
+        } catch (NumberFormatException e) {
+
+        }
+    }
+
+    // Links that do not parse are dropped with a message; the task itself is kept.
+    private List<Dependency> links(int id) {
+        if (fieldCount <= PREDECESSORS || isBlank(PREDECESSORS)) {
+            return Collections.emptyList();
+        }
+        try {
+            return Dependency.parseList(decode(PREDECESSORS));
+        } catch (NumberFormatException e) {
+            System.err.println("Ignoring predecessors of task " + id + ": " + e.getMessage());
+            return Collections.emptyList();
+        }
+    }
+
+    private int trimmedStart(int field) {
+        ByteBuffer src = source(field);
+        int s = fieldStart[field];
+        int e = fieldEnd[field];
+        while (s < e && (src.get(s) & 0xFF) <= ' ') {
+            s++;
+        }
+        return s;
+    }
+
+    private int trimmedEnd(int field, int trimmedStart) {
+        ByteBuffer src = source(field);
+        int e = fieldEnd[field];
+        while (e > trimmedStart && (src.get(e - 1) & 0xFF) <= ' ') {
+            e--;
+        }
+        return e;
+    }
+
+    private boolean isBlank(int field) {
+        int s = trimmedStart(field);
+        return trimmedEnd(field, s) == s;
+    }
+
+    private String decode(int field) {
+        ByteBuffer src = source(field);
+        int s = trimmedStart(field);
+        int e = trimmedEnd(field, s);
+        int length = e - s;
+        if (src.hasArray()) {
+            return new String(src.array(), src.arrayOffset() + s, length, StandardCharsets.UTF_8);
+        }
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        bulk.clear();
+        bulk.position(s);
+        bulk.get(scratch, 0, length);
+        return new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+
+    // Repeated names are matched on their bytes, so only the first occurrence is decoded.
+    private int internName(int field) {
+        int s = trimmedStart(field);
+        int e = trimmedEnd(field, s);
+        return store.getDictionary().internUtf8(source(field), s, e - s);
+    }
+
+    // Same results as Integer.parseInt on the trimmed field; non-ASCII input takes the slow path.
+    private int parseInt(int field) {
+        ByteBuffer src = source(field);
+        int s = trimmedStart(field);
+        int e = trimmedEnd(field, s);
+        int i = s;
+        boolean negative = false;
+        byte first = src.get(i);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            i++;
+            if (i == e) {
+                throw new NumberFormatException();
+            }
+        }
+        long value = 0;
+        for (; i < e; i++) {
+            int digit = src.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                if (src.get(i) < 0) {
+                    return Integer.parseInt(decode(field));
+                }
+                throw new NumberFormatException();
+            }
+            value = value * 10 + digit;
+            if (value > 1L + Integer.MAX_VALUE) {
+                throw new NumberFormatException();
+            }
+        }
+        value = negative ? -value : value;
+        if (value > Integer.MAX_VALUE || value < Integer.MIN_VALUE) {
+            throw new NumberFormatException();
+        }
+        return (int) value;
+    }
+
+    /*
+     * Plain decimals with at most 15 digits are exact as mantissa / 10^k. Anything
+     * else (exponents, NaN, hex, suffixes, long mantissas) defers to Double.parseDouble.
+     */
+    private double parseDouble(int field) {
+        ByteBuffer src = source(field);
+        int s = trimmedStart(field);
+        int e = trimmedEnd(field, s);
+        int i = s;
+        boolean negative = false;
+        byte first = src.get(i);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = 0;
+        boolean seenPoint = false;
+        for (; i < e; i++) {
+            byte b = src.get(i);
+            if (b >= '0' && b <= '9') {
+                mantissa = mantissa * 10 + (b - '0');
+                digits++;
+                if (seenPoint) {
+                    fractionDigits++;
+                }
+            } else if (b == '.' && !seenPoint) {
+                seenPoint = true;
+            } else {
+                break;
+            }
+        }
+        if (i != e || digits == 0 || digits > MAX_FAST_DIGITS) {
+            return Double.parseDouble(decode(field));
+        }
+        double value = mantissa / POWERS_OF_TEN[fractionDigits];
+        return negative ? -value : value;
+    }
+}
@@ -0,0 +1,63 @@
+package app.ingest;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.function.IntFunction;
+
+import org.apache.poi.poifs.filesystem.FileMagic;
+
+public final class ExcelEventReaders {
+
+    private ExcelEventReaders() {
+    }
+
+    // Dispatches on the file content like WorkbookFactory does, not on the extension.
+    public static void readFirstSheet(String sourcePath, SourceRowHandler handler) throws IOException {
+        FileMagic magic = FileMagic.valueOf(new File(sourcePath));
+        if (magic == FileMagic.OOXML) {
+            new XlsxStreamingReader(sourcePath).readFirstSheet(handler);
+        } else if (magic == FileMagic.OLE2) {
+            new XlsEventReader(sourcePath).readFirstSheet(handler);
+        } else {
+            throw new IOException("Unsupported spreadsheet format " + magic + ": " + sourcePath);
+        }
+    }
+
+    public static List<String> sheetNames(String sourcePath) throws IOException {
+        FileMagic magic = FileMagic.valueOf(new File(sourcePath));
+        if (magic == FileMagic.OOXML) {
+            return new XlsxStreamingReader(sourcePath).sheetNames();
+        } else if (magic == FileMagic.OLE2) {
+            return new XlsEventReader(sourcePath).sheetNames();
+        } else {
+            throw new IOException("Unsupported spreadsheet format " + magic + ": " + sourcePath);
+        }
+    }
+
+    // Legacy .xls sheets share one sequential record stream, so parallelism only applies to .xlsx.
+    public static void readSheets(String sourcePath, List<Integer> sheetIndexes, int parallelism,
+                                  IntFunction<SourceRowHandler> handlers) throws IOException {
+        FileMagic magic = FileMagic.valueOf(new File(sourcePath));
+        if (magic == FileMagic.OOXML) {
+            new XlsxStreamingReader(sourcePath).readSheets(sheetIndexes, parallelism, handlers);
+        } else if (magic == FileMagic.OLE2) {
+            new XlsEventReader(sourcePath).readSheets(sheetIndexes, handlers);
+        } else {
+            throw new IOException("Unsupported spreadsheet format " + magic + ": " + sourcePath);
+        }
+    }
+
+    public static void readFirstSheet(InputStream source, SourceRowHandler handler) throws IOException {
+        InputStream in = FileMagic.prepareToCheckMagic(source);
+        FileMagic magic = FileMagic.valueOf(in);
+        if (magic == FileMagic.OOXML) {
+            new XlsxStreamingReader(in).readFirstSheet(handler);
+        } else if (magic == FileMagic.OLE2) {
+            new XlsEventReader(in).readFirstSheet(handler);
+        } else {
+            throw new IOException("Unsupported spreadsheet format " + magic + " in stream");
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package app.ingest;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import util.FileTypes;
+import util.NameDictionary;
+import util.TaskStore;
+
+/*
+ * Splits a CSV/TSV file into line-aligned byte ranges, scans each on a fork-join pool
+ * straight into a TaskStore of its own and k-way merges the id-sorted chunk stores.
+ * All chunk stores intern their names into one dictionary, so the merge copies name
+ * codes without looking names up again. The output equals a sequential scan followed
+ * by a stable sort on id: chunk order breaks ties between equal ids, and a chunk whose
+ * start turns out to be inside a quoted field is re-scanned from the true record
+ * boundary reported by its predecessor.
+ */
+public class ParallelDelimitedLoader {
+
+    private static final long MIN_CHUNK_BYTES = 1 << 20;
+    private static final int CHUNKS_PER_THREAD = 4;
+    private final FileTypes filetype;
+    private final int parallelism;
+    private final long minChunkBytes;
+
+    public ParallelDelimitedLoader(FileTypes filetype, int parallelism) {
+        this(filetype, parallelism, MIN_CHUNK_BYTES);
+    }
+
+    ParallelDelimitedLoader(FileTypes filetype, int parallelism, long minChunkBytes) {
+        this.filetype = filetype;
+        this.parallelism = Math.max(1, parallelism);
+        this.minChunkBytes = Math.max(1, minChunkBytes);
+    }
+
+    public TaskStore load(String sourcePath) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(sourcePath), StandardOpenOption.READ)) {
+            long size = channel.size();
+            long[] bounds = chunkBounds(channel, size);
+            int chunkCount = bounds.length - 1;
+            NameDictionary dictionary = new NameDictionary();
+
+            List<ChunkTask> tasks = new ArrayList<>();
+            for (int i = 0; i < chunkCount; i++) {
+                tasks.add(new ChunkTask(channel, dictionary, bounds[i], bounds[i + 1], i == 0));
+            }
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            List<Chunk> chunks = new ArrayList<>();
+            try {
+                for (ChunkTask task : tasks) {
+                    pool.execute(task);
+                }
+                for (ChunkTask task : tasks) {
+                    chunks.add(task.join());
+                }
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            } finally {
+                pool.shutdown();
+            }
+
+            for (int i = 1; i < chunkCount; i++) {
+                Chunk previous = chunks.get(i - 1);
+                Chunk current = chunks.get(i);
+                if (previous.next != current.start) {
+                    chunks.set(i, scanChunk(channel, dictionary, previous.next, Math.max(previous.next, current.end), false));
+                }
+            }
+            return merge(chunks, dictionary);
+        }
+    }
+
+    private long[] chunkBounds(FileChannel channel, long size) throws IOException {
+        int chunkCount = (int) Math.max(1, Math.min((long) parallelism * CHUNKS_PER_THREAD, size / minChunkBytes));
+        if (parallelism == 1) {
+            chunkCount = 1;
+        }
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(0L);
+        for (int i = 1; i < chunkCount; i++) {
+            long aligned = nextLineStart(channel, size * i / chunkCount, size);
+            if (aligned > bounds.get(bounds.size() - 1) && aligned < size) {
+                bounds.add(aligned);
+            }
+        }
+        bounds.add(size);
+        long[] result = new long[bounds.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = bounds.get(i);
+        }
+        return result;
+    }
+
+    private static long nextLineStart(FileChannel channel, long from, long size) throws IOException {
+        ByteBuffer block = ByteBuffer.allocate(64 * 1024);
+        long position = from;
+        while (position < size) {
+            block.clear();
+            int read = channel.read(block, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                byte b = block.get(i);
+                if (b == '\n') {
+                    return position + i + 1;
+                }
+                if (b == '\r') {
+                    long after = position + i + 1;
+                    if (i + 1 < read) {
+                        return block.get(i + 1) == '\n' ? after + 1 : after;
+                    }
+                    ByteBuffer one = ByteBuffer.allocate(1);
+                    return channel.read(one, after) == 1 && one.get(0) == '\n' ? after + 1 : after;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    private Chunk scanChunk(FileChannel channel, NameDictionary dictionary, long start, long end, boolean skipHeader)
+            throws IOException {
+        TaskStore tasks = new TaskStore(16, dictionary);
+        long next = new DelimitedTaskScanner(filetype, tasks).scanRange(channel, start, end, skipHeader);
+        tasks.sortById();
+        return new Chunk(tasks, start, end, next);
+    }
+
+    private static TaskStore merge(List<Chunk> chunks, NameDictionary dictionary) {
+        if (chunks.size() == 1) {
+            return chunks.get(0).tasks;
+        }
+        int total = 0;
+        for (Chunk chunk : chunks) {
+            total += chunk.tasks.size();
+        }
+        TaskStore merged = new TaskStore(total, dictionary);
+
+        int[] cursors = new int[chunks.size()];
+        PriorityQueue<Integer> heads = new PriorityQueue<>(chunks.size(), (a, b) -> {
+            int byId = Integer.compare(chunks.get(a).tasks.getId(cursors[a]), chunks.get(b).tasks.getId(cursors[b]));
+            return byId != 0 ? byId : Integer.compare(a, b);
+        });
+        for (int i = 0; i < chunks.size(); i++) {
+            if (chunks.get(i).tasks.size() > 0) {
+                heads.add(i);
+            }
+        }
+        while (!heads.isEmpty()) {
+            int i = heads.poll();
+            TaskStore tasks = chunks.get(i).tasks;
+            merged.addRow(tasks, cursors[i]++);
+            if (cursors[i] < tasks.size()) {
+                heads.add(i);
+            }
+        }
+        return merged;
+    }
+
+    private static final class Chunk {
+        final TaskStore tasks;
+        final long start;
+        final long end;
+        final long next;
+
+        Chunk(TaskStore tasks, long start, long end, long next) {
+            this.tasks = tasks;
+            this.start = start;
+            this.end = end;
+            this.next = next;
+        }
+    }
+
+    private final class ChunkTask extends RecursiveTask<Chunk> {
+        private final FileChannel channel;
+        private final NameDictionary dictionary;
+        private final long start;
+        private final long end;
+        private final boolean skipHeader;
+
+        ChunkTask(FileChannel channel, NameDictionary dictionary, long start, long end, boolean skipHeader) {
+            this.channel = channel;
+            this.dictionary = dictionary;
+            this.start = start;
+            this.end = end;
+            this.skipHeader = skipHeader;
+        }
+
+        @Override
+        protected Chunk compute() {
+            try {
+                return scanChunk(channel, dictionary, start, end, skipHeader);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
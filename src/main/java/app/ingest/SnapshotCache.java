@@ -0,0 +1,428 @@
+package app.ingest;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import dom.gantt.DependencyType;
+import util.FileTypes;
+import util.NameDictionary;
+import util.TaskStore;
+
+/*
+ * Persistent cache of parsed, id-sorted task stores. Each source gets one entry file
+ * holding a compact columnar image of its tasks, keyed by absolute path and file type
+ * and validated against the source size, mtime and CRC32 of its content. Entries are
+ * read whole on lookup and evicted least-recently-used once the directory exceeds
+ * maxBytes.
+ */
+public class SnapshotCache {
+
+    private static final int MAGIC = 0x47534E50;
+    private static final int FORMAT_VERSION = 3;
+    private static final DependencyType[] DEPENDENCY_TYPES = DependencyType.values();
+    private static final String SUFFIX = ".snap";
+    private static final int HASH_WINDOW = 1 << 20;
+    private static final byte HAS_START = 1;
+    private static final byte HAS_END = 2;
+
+    private final Path directory;
+    private final long maxBytes;
+
+    public SnapshotCache(String directory, long maxBytes) {
+        this.directory = Paths.get(directory);
+        this.maxBytes = maxBytes;
+    }
+
+    /*
+     * The cached tasks when the entry still matches the source. Matching size and
+     * mtime are trusted; the content is only hashed when the mtime moved. On a miss the
+     * fingerprint's content hash is taken here, before the caller parses the source, so
+     * store() files the tasks under the content they were parsed from.
+     */
+    public TaskStore lookup(String sourcePath, FileTypes filetype, Fingerprint fingerprint) throws IOException {
+        Path source = Paths.get(sourcePath).toAbsolutePath().normalize();
+        TaskStore tasks = readEntry(source, filetype, fingerprint);
+        if (tasks == null) {
+            fingerprint.hash();
+        }
+        return tasks;
+    }
+
+    // Size and mtime of the source as it is now; its content hash is taken once, when first needed.
+    public static Fingerprint fingerprint(String sourcePath) throws IOException {
+        Path source = Paths.get(sourcePath).toAbsolutePath().normalize();
+        return new Fingerprint(source, Files.size(source), Files.getLastModifiedTime(source).toMillis());
+    }
+
+    private TaskStore readEntry(Path source, FileTypes filetype, Fingerprint fingerprint) {
+        Path entry = entryFor(source, filetype);
+        if (!Files.isRegularFile(entry)) {
+            return null;
+        }
+        try {
+            ByteBuffer image = readImage(entry);
+            if (!isCurrent(image, source, filetype, fingerprint, entry)) {
+                invalidate(entry);
+                return null;
+            }
+            TaskStore tasks = readTasks(image);
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+            return tasks;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Ignoring unreadable snapshot " + entry + ": " + e.getMessage());
+            invalidate(entry);
+            return null;
+        }
+    }
+
+    /*
+     * The entry is read into the heap rather than mapped: a mapping lives until it is
+     * garbage collected, and on some platforms a mapped file cannot be replaced or
+     * deleted, which store() and eviction do.
+     */
+    private static ByteBuffer readImage(Path entry) throws IOException {
+        try (FileChannel channel = FileChannel.open(entry, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE - 8) {
+                throw new IOException("Snapshot is too large: " + size + " bytes");
+            }
+            ByteBuffer image = ByteBuffer.allocate((int) size);
+            while (image.hasRemaining()) {
+                if (channel.read(image) < 0) {
+                    throw new IOException("Snapshot ended early");
+                }
+            }
+            image.flip();
+            return image;
+        }
+    }
+
+    // Reads the header; a touched but unchanged source keeps the entry, which records the new mtime.
+    private static boolean isCurrent(ByteBuffer image, Path source, FileTypes filetype, Fingerprint fingerprint, Path entry)
+            throws IOException {
+        if (image.getInt() != MAGIC || image.getInt() != FORMAT_VERSION) {
+            return false;
+        }
+        String cachedPath = readString(image);
+        int cachedType = image.getInt();
+        long cachedSize = image.getLong();
+        int mtimeOffset = image.position();
+        long cachedMtime = image.getLong();
+        long cachedHash = image.getLong();
+        if (!source.toString().equals(cachedPath) || cachedType != filetype.ordinal() || cachedSize != fingerprint.size) {
+            return false;
+        }
+        if (fingerprint.mtime != cachedMtime) {
+            if (fingerprint.hash() != cachedHash) {
+                return false;
+            }
+            try (FileChannel writer = FileChannel.open(entry, StandardOpenOption.WRITE)) {
+                ByteBuffer update = ByteBuffer.allocate(Long.BYTES);
+                update.putLong(0, fingerprint.mtime);
+                writer.write(update, mtimeOffset);
+            }
+        }
+        return true;
+    }
+
+    // Skips the entry when the source no longer has the fingerprint's size and mtime.
+    public boolean store(String sourcePath, FileTypes filetype, Fingerprint fingerprint, TaskStore tasks) {
+        Path source = Paths.get(sourcePath).toAbsolutePath().normalize();
+        Path entry = entryFor(source, filetype);
+        Path temp = null;
+        try {
+            if (Files.size(source) != fingerprint.size
+                    || Files.getLastModifiedTime(source).toMillis() != fingerprint.mtime) {
+                System.err.println("Not caching " + source + ": it changed while it was being read.");
+                return false;
+            }
+            Files.createDirectories(directory);
+
+            temp = Files.createTempFile(directory, "snapshot", ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                writeString(out, source.toString());
+                out.writeInt(filetype.ordinal());
+                out.writeLong(fingerprint.size);
+                out.writeLong(fingerprint.mtime);
+                out.writeLong(fingerprint.hash());
+                writeTasks(out, tasks);
+            }
+            try {
+                Files.move(temp, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                Files.move(temp, entry, StandardCopyOption.REPLACE_EXISTING);
+            }
+            evict();
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            if (temp != null) {
+                invalidate(temp);
+            }
+            return false;
+        }
+    }
+
+    public void clear() {
+        for (Path entry : listEntries()) {
+            invalidate(entry);
+        }
+    }
+
+    private Path entryFor(Path source, FileTypes filetype) {
+        long key = 1125899906842597L;
+        String name = source.toString();
+        for (int i = 0; i < name.length(); i++) {
+            key = 31 * key + name.charAt(i);
+        }
+        key = 31 * key + filetype.ordinal();
+        return directory.resolve(String.format("%016x", key) + SUFFIX);
+    }
+
+    // Read through a buffer rather than mapped, so the source stays free to be saved over.
+    private static long contentHash(Path source) throws IOException {
+        CRC32 crc = new CRC32();
+        ByteBuffer window = ByteBuffer.allocateDirect(HASH_WINDOW);
+        try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+            while (channel.read(window) >= 0) {
+                window.flip();
+                crc.update(window);
+                window.clear();
+            }
+        }
+        return crc.getValue();
+    }
+
+    private static void writeTasks(DataOutputStream out, TaskStore tasks) throws IOException {
+        int count = tasks.size();
+        out.writeInt(count);
+        for (int row = 0; row < count; row++) {
+            out.writeInt(tasks.getId(row));
+        }
+        for (int row = 0; row < count; row++) {
+            out.writeInt(tasks.getContainerId(row));
+        }
+        for (int row = 0; row < count; row++) {
+            out.writeInt(tasks.hasStartDay(row) ? tasks.getStartDay(row) : 0);
+        }
+        for (int row = 0; row < count; row++) {
+            out.writeInt(tasks.hasEndDay(row) ? tasks.getEndDay(row) : 0);
+        }
+        for (int row = 0; row < count; row++) {
+            out.writeDouble(tasks.getCost(row));
+        }
+        for (int row = 0; row < count; row++) {
+            out.writeDouble(tasks.getEffort(row));
+        }
+        for (int row = 0; row < count; row++) {
+            out.writeByte((tasks.hasStartDay(row) ? HAS_START : 0) | (tasks.hasEndDay(row) ? HAS_END : 0));
+        }
+        NameDictionary dictionary = tasks.getDictionary();
+        out.writeInt(dictionary.size());
+        for (int code = 0; code < dictionary.size(); code++) {
+            writeString(out, dictionary.name(code));
+        }
+        for (int row = 0; row < count; row++) {
+            out.writeInt(tasks.getNameCode(row));
+        }
+
+        out.writeInt(tasks.getLinkCount());
+        for (int row = 0; row < count; row++) {
+            out.writeInt(tasks.getPredecessorCount(row));
+        }
+        for (int row = 0; row < count; row++) {
+            for (int i = 0; i < tasks.getPredecessorCount(row); i++) {
+                out.writeInt(tasks.getPredecessorId(row, i));
+            }
+        }
+        for (int row = 0; row < count; row++) {
+            for (int i = 0; i < tasks.getPredecessorCount(row); i++) {
+                out.writeInt(tasks.getLag(row, i));
+            }
+        }
+        for (int row = 0; row < count; row++) {
+            for (int i = 0; i < tasks.getPredecessorCount(row); i++) {
+                out.writeByte(tasks.getDependencyType(row, i).ordinal());
+            }
+        }
+    }
+
+    private static TaskStore readTasks(ByteBuffer image) {
+        int count = image.getInt();
+        int[] ids = readInts(image, count);
+        int[] containerIds = readInts(image, count);
+        int[] startDays = readInts(image, count);
+        int[] endDays = readInts(image, count);
+        double[] costs = readDoubles(image, count);
+        double[] efforts = readDoubles(image, count);
+        byte[] flags = new byte[count];
+        image.get(flags);
+
+        // Dictionary codes are dense and in first-seen order, so interning in order reproduces them.
+        NameDictionary dictionary = new NameDictionary();
+        int distinctNames = image.getInt();
+        for (int code = 0; code < distinctNames; code++) {
+            dictionary.intern(readString(image));
+        }
+        int[] nameCodes = readInts(image, count);
+
+        int links = image.getInt();
+        int[] linkCounts = readInts(image, count);
+        int[] linkIds = readInts(image, links);
+        int[] linkLags = readInts(image, links);
+        byte[] linkTypes = new byte[links];
+        image.get(linkTypes);
+
+        TaskStore tasks = new TaskStore(count, dictionary);
+        int link = 0;
+        for (int i = 0; i < count; i++) {
+            tasks.addCoded(ids[i], nameCodes[i], containerIds[i], (flags[i] & HAS_START) != 0, startDays[i],
+                    (flags[i] & HAS_END) != 0, endDays[i], costs[i], efforts[i]);
+            for (int end = link + linkCounts[i]; link < end; link++) {
+                tasks.addPredecessor(linkIds[link], DEPENDENCY_TYPES[linkTypes[link]], linkLags[link]);
+            }
+        }
+        return tasks;
+    }
+
+    private static int[] readInts(ByteBuffer image, int count) {
+        int[] values = new int[count];
+        image.asIntBuffer().get(values);
+        image.position(image.position() + count * Integer.BYTES);
+        return values;
+    }
+
+    private static double[] readDoubles(ByteBuffer image, int count) {
+        double[] values = new double[count];
+        image.asDoubleBuffer().get(values);
+        image.position(image.position() + count * Double.BYTES);
+        return values;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer image) {
+        int length = image.getInt();
+        if (length < 0) {
+            return null;
+        }
+        String value;
+        if (image.hasArray()) {
+            value = new String(image.array(), image.arrayOffset() + image.position(), length, StandardCharsets.UTF_8);
+            image.position(image.position() + length);
+        } else {
+            byte[] bytes = new byte[length];
+            image.get(bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return value;
+    }
+
+    private void evict() throws IOException {
+        List<Path> entries = listEntries();
+        long total = 0;
+        for (Path entry : entries) {
+            total += sizeOf(entry);
+        }
+        if (total <= maxBytes) {
+            return;
+        }
+        entries.sort(Comparator.comparingLong(SnapshotCache::lastUsed));
+        for (Path entry : entries) {
+            if (total <= maxBytes) {
+                break;
+            }
+            total -= sizeOf(entry);
+            invalidate(entry);
+        }
+    }
+
+    private List<Path> listEntries() {
+        List<Path> entries = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return entries;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path entry : stream) {
+                entries.add(entry);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return entries;
+    }
+
+    private static long sizeOf(Path entry) {
+        try {
+            return Files.size(entry);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static long lastUsed(Path entry) {
+        try {
+            return Files.getLastModifiedTime(entry).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static void invalidate(Path entry) {
+        try {
+            Files.deleteIfExists(entry);
+        } catch (NoSuchFileException e) {
+
+        } catch (IOException e) {
+            System.err.println("Could not delete snapshot " + entry + ": " + e.getMessage());
+        }
+    }
+
+    public static final class Fingerprint {
+        private final Path source;
+        private final long size;
+        private final long mtime;
+        private boolean hashed;
+        private long hash;
+
+        private Fingerprint(Path source, long size, long mtime) {
+            this.source = source;
+            this.size = size;
+            this.mtime = mtime;
+        }
+
+        private long hash() throws IOException {
+            if (!hashed) {
+                hash = contentHash(source);
+                hashed = true;
+            }
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package app.ingest;
+
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Date;
+
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.util.LocaleUtil;
+
+/*
+ * One reusable row of raw cell values filled by the event-model readers.
+ * Values are exposed through the same coercion rules as the in-memory loader.
+ */
+public final class SourceRow {
+
+    private int rowNum;
+    private int width;
+    private boolean date1904;
+    private CellType[] types = new CellType[8];
+    private double[] numbers = new double[8];
+    private String[] strings = new String[8];
+    private boolean[] booleans = new boolean[8];
+    private boolean[] dateFormatted = new boolean[8];
+    private DateTimeFormatter describeFormat;
+    private FormulaText formulaText;
+
+    // Renders the formula of a column of the current row; only describe() asks for it.
+    interface FormulaText {
+        String render(int col);
+    }
+
+    public int getRowNum() {
+        return rowNum;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public boolean hasCell(int col) {
+        return col < width && types[col] != null;
+    }
+
+    public CellType getCellType(int col) {
+        return hasCell(col) ? types[col] : null;
+    }
+
+    public double getNumeric(int col) {
+        if (!hasCell(col)) return 0;
+        return CellCoercion.toNumeric(types[col], numbers[col], strings[col]);
+    }
+
+    public String getString(int col) {
+        if (!hasCell(col)) return "";
+        Date date = null;
+        if (types[col] == CellType.NUMERIC && dateFormatted[col] && DateUtil.isValidExcelDate(numbers[col])) {
+            date = DateUtil.getJavaDate(numbers[col], date1904);
+        }
+        return CellCoercion.toText(types[col], numbers[col], strings[col], booleans[col], date);
+    }
+
+    // Same text as Cell#toString on the usermodel cell: formulas without '=', errors as #DIV/0! and the like.
+    public String describe(int col) {
+        if (!hasCell(col)) return "";
+        switch (types[col]) {
+            case NUMERIC:
+                if (dateFormatted[col] && DateUtil.isValidExcelDate(numbers[col])) {
+                    // Built once per reader instead of once per date cell.
+                    if (describeFormat == null) {
+                        describeFormat = DateTimeFormatter.ofPattern("dd-MMM-yyyy", LocaleUtil.getUserLocale())
+                                .withZone(LocaleUtil.getUserTimeZone().toZoneId());
+                    }
+                    return describeFormat.format(DateUtil.getJavaDate(numbers[col], date1904).toInstant());
+                }
+                return String.valueOf(numbers[col]);
+            case BOOLEAN:
+                return booleans[col] ? "TRUE" : "FALSE";
+            case FORMULA:
+                if (strings[col] == null && formulaText != null) {
+                    strings[col] = formulaText.render(col);
+                }
+                return strings[col] != null ? strings[col] : "";
+            case STRING:
+            case ERROR:
+                return strings[col] != null ? strings[col] : "";
+            default:
+                return "";
+        }
+    }
+
+    void start(int rowNum, boolean date1904) {
+        for (int i = 0; i < width; i++) {
+            types[i] = null;
+            strings[i] = null;
+        }
+        this.width = 0;
+        this.formulaText = null;
+        this.rowNum = rowNum;
+        this.date1904 = date1904;
+    }
+
+    void setNumeric(int col, double value, boolean isDateFormatted) {
+        ensureColumn(col);
+        types[col] = CellType.NUMERIC;
+        numbers[col] = value;
+        dateFormatted[col] = isDateFormatted;
+    }
+
+    void setString(int col, String value) {
+        ensureColumn(col);
+        types[col] = CellType.STRING;
+        strings[col] = value;
+    }
+
+    void setBoolean(int col, boolean value) {
+        ensureColumn(col);
+        types[col] = CellType.BOOLEAN;
+        booleans[col] = value;
+    }
+
+    void setText(int col, CellType type, String text) {
+        ensureColumn(col);
+        types[col] = type;
+        strings[col] = text;
+    }
+
+    void setFormula(int col, FormulaText text) {
+        ensureColumn(col);
+        types[col] = CellType.FORMULA;
+        formulaText = text;
+    }
+
+    void setOther(int col, CellType type) {
+        ensureColumn(col);
+        types[col] = type;
+    }
+
+    private void ensureColumn(int col) {
+        if (col >= types.length) {
+            int capacity = Math.max(col + 1, types.length * 2);
+            types = Arrays.copyOf(types, capacity);
+            numbers = Arrays.copyOf(numbers, capacity);
+            strings = Arrays.copyOf(strings, capacity);
+            booleans = Arrays.copyOf(booleans, capacity);
+            dateFormatted = Arrays.copyOf(dateFormatted, capacity);
+        }
+        if (col >= width) {
+            width = col + 1;
+        }
+    }
+}
@@ -0,0 +1,6 @@
+package app.ingest;
+
+public interface SourceRowHandler {
+
+    void handleRow(SourceRow row);
+}
@@ -0,0 +1,90 @@
+package app.ingest;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import util.FileTypes;
+
+/*
+ * Unwraps compressed sources while streaming. Gzip is recognised by its magic bytes
+ * and zip bundles by their local file header; a zip whose first entry belongs to an
+ * OOXML package is an .xlsx file itself and is passed through untouched. From a
+ * bundle the first entry with the extension of the requested file type is used.
+ */
+public final class SourceStreams {
+
+    private static final int PEEK_LIMIT = 30 + 0xFFFF;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private SourceStreams() {
+    }
+
+    public static InputStream unwrap(InputStream source, FileTypes filetype) throws IOException {
+        InputStream in = source.markSupported() ? source : new BufferedInputStream(source, BUFFER_SIZE);
+        byte[] header = peek(in, 4);
+        if (header.length >= 2 && (header[0] & 0xFF) == 0x1F && (header[1] & 0xFF) == 0x8B) {
+            return unwrap(new GZIPInputStream(in, BUFFER_SIZE), filetype);
+        }
+        if (header.length == 4 && header[0] == 'P' && header[1] == 'K' && header[2] == 3 && header[3] == 4
+                && !isOoxmlPackage(in)) {
+            return unwrap(openBundleEntry(new ZipInputStream(in), filetype), filetype);
+        }
+        return in;
+    }
+
+    private static byte[] peek(InputStream in, int length) throws IOException {
+        in.mark(length);
+        byte[] bytes = new byte[length];
+        int read = 0;
+        try {
+            while (read < length) {
+                int n = in.read(bytes, read, length - read);
+                if (n < 0) {
+                    break;
+                }
+                read += n;
+            }
+        } finally {
+            in.reset();
+        }
+        if (read == length) {
+            return bytes;
+        }
+        byte[] shorter = new byte[read];
+        System.arraycopy(bytes, 0, shorter, 0, read);
+        return shorter;
+    }
+
+    private static boolean isOoxmlPackage(InputStream in) throws IOException {
+        byte[] fixed = peek(in, 30);
+        if (fixed.length < 30) {
+            return false;
+        }
+        int nameLength = (fixed[26] & 0xFF) | (fixed[27] & 0xFF) << 8;
+        byte[] local = peek(in, Math.min(30 + nameLength, PEEK_LIMIT));
+        if (local.length < 30 + nameLength) {
+            return false;
+        }
+        String name = new String(local, 30, nameLength, StandardCharsets.UTF_8);
+        return name.equals("[Content_Types].xml") || name.startsWith("_rels/") || name.startsWith("xl/")
+                || name.startsWith("docProps/");
+    }
+
+    private static InputStream openBundleEntry(ZipInputStream zip, FileTypes filetype) throws IOException {
+        String extension = "." + filetype.name().toLowerCase(Locale.ROOT);
+        ZipEntry entry;
+        while ((entry = zip.getNextEntry()) != null) {
+            String name = entry.getName().toLowerCase(Locale.ROOT);
+            if (!entry.isDirectory() && (name.endsWith(extension) || name.endsWith(extension + ".gz"))) {
+                return zip;
+            }
+        }
+        throw new IOException("Zip bundle holds no " + extension + " entry");
+    }
+}
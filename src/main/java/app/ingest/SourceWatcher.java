@@ -0,0 +1,92 @@
+package app.ingest;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import util.TaskDelta;
+
+/*
+ * Watches the directory of a source file and runs the reload once the file has
+ * been quiet for the debounce interval, so an editor writing in several steps
+ * triggers a single reload. Non-empty deltas are passed to the listener on the
+ * watcher thread.
+ */
+public class SourceWatcher implements Closeable {
+
+    private static final long DEBOUNCE_MS = 300;
+
+    private final Path source;
+    private final Supplier<TaskDelta> reload;
+    private final Consumer<TaskDelta> listener;
+    private final WatchService watchService;
+    private final Thread thread;
+
+    public SourceWatcher(String sourcePath, Supplier<TaskDelta> reload, Consumer<TaskDelta> listener) throws IOException {
+        this.source = Paths.get(sourcePath).toAbsolutePath().normalize();
+        this.reload = reload;
+        this.listener = listener;
+        this.watchService = FileSystems.getDefault().newWatchService();
+        source.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        this.thread = new Thread(this::run, "source-watcher-" + source.getFileName());
+        this.thread.setDaemon(true);
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    private void run() {
+        boolean pending = false;
+        try {
+            while (true) {
+                WatchKey key = pending ? watchService.poll(DEBOUNCE_MS, TimeUnit.MILLISECONDS) : watchService.take();
+                if (key == null) {
+                    pending = false;
+                    fireReload();
+                    continue;
+                }
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    Object context = event.context();
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW
+                            || (context instanceof Path && source.getFileName().equals(context))) {
+                        pending = true;
+                    }
+                }
+                if (!key.reset()) {
+                    return;
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+
+        }
+    }
+
+    private void fireReload() {
+        try {
+            TaskDelta delta = reload.get();
+            if (delta != null && !delta.isEmpty()) {
+                listener.accept(delta);
+            }
+        } catch (RuntimeException e) {
+            System.err.println("Reload of " + source + " failed: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        thread.interrupt();
+        watchService.close();
+    }
+}
@@ -0,0 +1,341 @@
+package app.ingest;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntFunction;
+
+import org.apache.poi.hssf.eventusermodel.AbortableHSSFListener;
+import org.apache.poi.hssf.eventusermodel.EventWorkbookBuilder.SheetRecordCollectingListener;
+import org.apache.poi.hssf.eventusermodel.FormatTrackingHSSFListener;
+import org.apache.poi.hssf.eventusermodel.HSSFEventFactory;
+import org.apache.poi.hssf.eventusermodel.HSSFListener;
+import org.apache.poi.hssf.eventusermodel.HSSFRequest;
+import org.apache.poi.hssf.eventusermodel.HSSFUserException;
+import org.apache.poi.hssf.model.HSSFFormulaParser;
+import org.apache.poi.hssf.record.BOFRecord;
+import org.apache.poi.hssf.record.BlankRecord;
+import org.apache.poi.hssf.record.BoolErrRecord;
+import org.apache.poi.hssf.record.BoundSheetRecord;
+import org.apache.poi.hssf.record.CellValueRecordInterface;
+import org.apache.poi.hssf.record.DateWindow1904Record;
+import org.apache.poi.hssf.record.EOFRecord;
+import org.apache.poi.hssf.record.FormulaRecord;
+import org.apache.poi.hssf.record.LabelRecord;
+import org.apache.poi.hssf.record.LabelSSTRecord;
+import org.apache.poi.hssf.record.MulBlankRecord;
+import org.apache.poi.hssf.record.NumberRecord;
+import org.apache.poi.hssf.record.Record;
+import org.apache.poi.hssf.record.RowRecord;
+import org.apache.poi.hssf.record.SSTRecord;
+import org.apache.poi.hssf.record.SharedFormulaRecord;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.poifs.filesystem.POIFSFileSystem;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.formula.ptg.ExpPtg;
+import org.apache.poi.ss.formula.ptg.Ptg;
+import org.apache.poi.ss.usermodel.FormulaError;
+
+/*
+ * Reads sheets of a legacy .xls file through the HSSF event API. Rows are
+ * emitted record by record in ascending row order without building an
+ * HSSFWorkbook; only the RowRecords of the current block are buffered. The
+ * sheet substreams follow each other in one BIFF stream, so several sheets
+ * are read in a single sequential pass.
+ */
+public class XlsEventReader {
+
+    private final String sourcePath;
+    private final InputStream sourceStream;
+
+    public XlsEventReader(String sourcePath) {
+        this.sourcePath = sourcePath;
+        this.sourceStream = null;
+    }
+
+    // The caller closes the stream.
+    public XlsEventReader(InputStream sourceStream) {
+        this.sourcePath = "<stream>";
+        this.sourceStream = sourceStream;
+    }
+
+    public void readFirstSheet(SourceRowHandler handler) throws IOException {
+        readSheets(Collections.singletonList(0), sheet -> handler);
+    }
+
+    public List<String> sheetNames() throws IOException {
+        List<String> names = new ArrayList<>();
+        try (POIFSFileSystem fs = openFileSystem()) {
+            HSSFRequest request = new HSSFRequest();
+            request.addListenerForAllRecords(new AbortableHSSFListener() {
+                @Override
+                public short abortableProcessRecord(Record record) {
+                    if (record instanceof BoundSheetRecord) {
+                        names.add(((BoundSheetRecord) record).getSheetname());
+                    } else if (record instanceof EOFRecord) {
+                        return 1;
+                    }
+                    return 0;
+                }
+            });
+            new HSSFEventFactory().abortableProcessWorkbookEvents(request, fs);
+        } catch (HSSFUserException e) {
+            throw new IOException("Failed to read the sheet list of " + sourcePath, e);
+        }
+        return names;
+    }
+
+    // Sheet indexes are 0-based in workbook order; handlers are called on the reading thread.
+    public void readSheets(List<Integer> sheetIndexes, IntFunction<SourceRowHandler> handlers) throws IOException {
+        try (POIFSFileSystem fs = openFileSystem()) {
+            process(new HashSet<>(sheetIndexes), handlers, fs);
+        }
+    }
+
+    private POIFSFileSystem openFileSystem() throws IOException {
+        return sourceStream != null ? new POIFSFileSystem(sourceStream) : new POIFSFileSystem(new File(sourcePath), true);
+    }
+
+    private void process(Set<Integer> sheetIndexes, IntFunction<SourceRowHandler> handlers, POIFSFileSystem fs) throws IOException {
+        SheetListener sheetListener = new SheetListener(sheetIndexes, handlers);
+        FormatTrackingHSSFListener formatListener = new FormatTrackingHSSFListener(sheetListener);
+        SheetRecordCollectingListener workbookListener = new SheetRecordCollectingListener(formatListener);
+        sheetListener.formats = formatListener;
+        sheetListener.workbookRecords = workbookListener;
+
+        HSSFRequest request = new HSSFRequest();
+        request.addListenerForAllRecords(workbookListener);
+        new HSSFEventFactory().processWorkbookEvents(request, fs);
+        sheetListener.finish();
+        if (sheetListener.sheetsLeft > 0) {
+            throw new IOException("Workbook " + sourcePath + " has no sheet among " + sheetIndexes);
+        }
+    }
+
+    private static final class SheetListener implements HSSFListener, SourceRow.FormulaText {
+
+        private final Set<Integer> sheetIndexes;
+        private final IntFunction<SourceRowHandler> handlers;
+        private final SourceRow row = new SourceRow();
+        private SourceRowHandler handler;
+        private int sheetsLeft;
+
+        private FormatTrackingHSSFListener formats;
+        private SheetRecordCollectingListener workbookRecords;
+        private HSSFWorkbook stubWorkbook;
+        private SSTRecord sst;
+        private boolean date1904;
+        private int depth;
+        private int substreams;
+        private boolean inSelectedSheet;
+        private boolean done;
+
+        private int currentRow = -1;
+        private int[] pendingRows = new int[32];
+        private int pendingCount;
+
+        // Formulas of the current row by column, and the shared formulas of the sheet by first cell.
+        private FormulaRecord[] rowFormulas = new FormulaRecord[16];
+        private final Map<Integer, SharedFormulaRecord> sharedFormulas = new HashMap<>();
+
+        SheetListener(Set<Integer> sheetIndexes, IntFunction<SourceRowHandler> handlers) {
+            this.sheetIndexes = sheetIndexes;
+            this.handlers = handlers;
+            this.sheetsLeft = sheetIndexes.size();
+            this.done = sheetsLeft == 0;
+        }
+
+        @Override
+        public void processRecord(Record record) {
+            if (done) {
+                return;
+            }
+            if (record instanceof BOFRecord) {
+                depth++;
+                if (depth == 1 && ((BOFRecord) record).getType() != BOFRecord.TYPE_WORKBOOK) {
+                    int sheetIndex = substreams++;
+                    inSelectedSheet = sheetIndexes.contains(sheetIndex);
+                    if (inSelectedSheet) {
+                        handler = handlers.apply(sheetIndex);
+                    }
+                }
+                return;
+            }
+            if (record instanceof EOFRecord) {
+                depth--;
+                if (depth == 0 && inSelectedSheet) {
+                    finishSheet();
+                }
+                return;
+            }
+            if (record instanceof SSTRecord) {
+                sst = (SSTRecord) record;
+                return;
+            }
+            if (record instanceof DateWindow1904Record) {
+                date1904 = ((DateWindow1904Record) record).getWindowing() == 1;
+                return;
+            }
+            if (!inSelectedSheet || depth != 1) {
+                return;
+            }
+
+            if (record instanceof RowRecord) {
+                addPendingRow(((RowRecord) record).getRowNumber());
+            } else if (record instanceof NumberRecord) {
+                NumberRecord number = (NumberRecord) record;
+                moveTo(number.getRow());
+                row.setNumeric(number.getColumn(), number.getValue(), isDateFormatted(number));
+            } else if (record instanceof LabelSSTRecord) {
+                LabelSSTRecord label = (LabelSSTRecord) record;
+                moveTo(label.getRow());
+                row.setString(label.getColumn(), sst.getString(label.getSSTIndex()).getString());
+            } else if (record instanceof LabelRecord) {
+                LabelRecord label = (LabelRecord) record;
+                moveTo(label.getRow());
+                row.setString(label.getColumn(), label.getValue());
+            } else if (record instanceof BoolErrRecord) {
+                BoolErrRecord boolErr = (BoolErrRecord) record;
+                moveTo(boolErr.getRow());
+                if (boolErr.isBoolean()) {
+                    row.setBoolean(boolErr.getColumn(), boolErr.getBooleanValue());
+                } else {
+                    row.setText(boolErr.getColumn(), CellType.ERROR, FormulaError.forInt(boolErr.getErrorValue()).getString());
+                }
+            } else if (record instanceof FormulaRecord) {
+                FormulaRecord formula = (FormulaRecord) record;
+                moveTo(formula.getRow());
+                int col = formula.getColumn();
+                if (col >= rowFormulas.length) {
+                    rowFormulas = Arrays.copyOf(rowFormulas, Math.max(col + 1, rowFormulas.length * 2));
+                }
+                rowFormulas[col] = formula;
+                row.setFormula(col, this);
+            } else if (record instanceof SharedFormulaRecord) {
+                // Follows the first formula of its range, so it is known before that row is handed out.
+                SharedFormulaRecord shared = (SharedFormulaRecord) record;
+                sharedFormulas.put(cellKey(shared.getFirstRow(), shared.getFirstColumn()), shared);
+            } else if (record instanceof BlankRecord) {
+                BlankRecord blank = (BlankRecord) record;
+                moveTo(blank.getRow());
+                row.setOther(blank.getColumn(), CellType.BLANK);
+            } else if (record instanceof MulBlankRecord) {
+                MulBlankRecord blanks = (MulBlankRecord) record;
+                moveTo(blanks.getRow());
+                for (int col = blanks.getFirstColumn(); col <= blanks.getLastColumn(); col++) {
+                    row.setOther(col, CellType.BLANK);
+                }
+            }
+        }
+
+        /*
+         * The formula text of a cell of the current row, as HSSFCell#getCellFormula
+         * gives it. A cell of a shared formula holds only a pointer to the range's
+         * first cell and takes its tokens from the shared formula. Array and table
+         * formulas, and anything else that cannot be rendered, show no text.
+         */
+        @Override
+        public String render(int col) {
+            FormulaRecord formula = rowFormulas[col];
+            try {
+                Ptg[] tokens = formula.getParsedExpression();
+                if (tokens.length > 0 && tokens[0] instanceof ExpPtg) {
+                    ExpPtg first = (ExpPtg) tokens[0];
+                    SharedFormulaRecord shared = sharedFormulas.get(cellKey(first.getRow(), first.getColumn()));
+                    if (shared == null) {
+                        return "";
+                    }
+                    tokens = shared.getFormulaTokens(formula);
+                }
+                if (stubWorkbook == null) {
+                    stubWorkbook = workbookRecords.getStubHSSFWorkbook();
+                }
+                return HSSFFormulaParser.toFormulaString(stubWorkbook, tokens);
+            } catch (RuntimeException e) {
+                return "";
+            }
+        }
+
+        private static int cellKey(int rowNum, int col) {
+            return rowNum << 8 | col;
+        }
+
+        private boolean isDateFormatted(CellValueRecordInterface record) {
+            return DateUtil.isADateFormat(formats.getFormatIndex(record), formats.getFormatString(record));
+        }
+
+        private void addPendingRow(int rowNum) {
+            if (pendingCount == pendingRows.length) {
+                pendingRows = Arrays.copyOf(pendingRows, pendingCount * 2);
+            }
+            pendingRows[pendingCount++] = rowNum;
+        }
+
+        // Rows declared by a RowRecord but holding no cells are still rows to the usermodel.
+        private void moveTo(int rowNum) {
+            if (rowNum == currentRow) {
+                return;
+            }
+            flushCurrent();
+            flushPendingBelow(rowNum);
+            removePending(rowNum);
+            currentRow = rowNum;
+            row.start(rowNum, date1904);
+        }
+
+        private void flushCurrent() {
+            if (currentRow >= 0) {
+                handler.handleRow(row);
+                currentRow = -1;
+            }
+        }
+
+        private void flushPendingBelow(int limit) {
+            Arrays.sort(pendingRows, 0, pendingCount);
+            int kept = 0;
+            for (int i = 0; i < pendingCount; i++) {
+                int pending = pendingRows[i];
+                if (pending < limit) {
+                    row.start(pending, date1904);
+                    handler.handleRow(row);
+                } else {
+                    pendingRows[kept++] = pending;
+                }
+            }
+            pendingCount = kept;
+        }
+
+        private void removePending(int rowNum) {
+            for (int i = 0; i < pendingCount; i++) {
+                if (pendingRows[i] == rowNum) {
+                    pendingRows[i] = pendingRows[--pendingCount];
+                    return;
+                }
+            }
+        }
+
+        private void finishSheet() {
+            flushCurrent();
+            flushPendingBelow(Integer.MAX_VALUE);
+            inSelectedSheet = false;
+            sharedFormulas.clear();
+            done = --sheetsLeft == 0;
+        }
+
+        // A truncated stream may end inside a selected sheet; emit what was read.
+        void finish() {
+            if (inSelectedSheet) {
+                finishSheet();
+            }
+        }
+    }
+}
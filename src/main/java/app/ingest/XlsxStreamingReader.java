@@ -0,0 +1,523 @@
+package app.ingest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.IntFunction;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+/*
+ * Reads sheets of an .xlsx file through the XSSF event model. Rows are handed to
+ * the caller one at a time, so memory stays flat regardless of sheet size.
+ * Several sheets can be read concurrently: the shared strings, date styles and
+ * sheet list are parsed once, and each worker opens its own package because an
+ * OPCPackage is not safe for concurrent use.
+ */
+public class XlsxStreamingReader {
+
+    private static final String RELATIONSHIPS_NS = "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+
+    private final String sourcePath;
+    private final InputStream sourceStream;
+
+    public XlsxStreamingReader(String sourcePath) {
+        this.sourcePath = sourcePath;
+        this.sourceStream = null;
+    }
+
+    // The package is read from the stream without touching the disk; the caller closes the stream.
+    public XlsxStreamingReader(InputStream sourceStream) {
+        this.sourcePath = "<stream>";
+        this.sourceStream = sourceStream;
+    }
+
+    public void readFirstSheet(SourceRowHandler handler) throws IOException {
+        readSheets(Collections.singletonList(0), 1, sheet -> handler);
+    }
+
+    public List<String> sheetNames() throws IOException {
+        OPCPackage pkg = openPackage();
+        try {
+            return readWorkbook(new XSSFReader(pkg)).names;
+        } catch (OpenXML4JException | SAXException e) {
+            throw new IOException("Failed to read the sheet list of " + sourcePath, e);
+        } finally {
+            pkg.revert();
+        }
+    }
+
+    /*
+     * Streams the given sheets (0-based, in workbook order) into the handler that
+     * handlers returns for each index. With parallelism above one, handlers for
+     * different sheets are called from different threads.
+     */
+    public void readSheets(List<Integer> sheetIndexes, int parallelism, IntFunction<SourceRowHandler> handlers) throws IOException {
+        OPCPackage pkg = openPackage();
+        List<OPCPackage> workerPackages = new ArrayList<>();
+        try {
+            XSSFReader reader = new XSSFReader(pkg);
+            ReadOnlySharedStringsTable strings = new ReadOnlySharedStringsTable(pkg);
+            boolean[] dateStyles = collectDateStyles(reader.getStylesTable());
+            WorkbookInfo workbook = readWorkbook(reader);
+            for (int index : sheetIndexes) {
+                if (index < 0 || index >= workbook.relationIds.size()) {
+                    throw new IOException("Workbook " + sourcePath + " has no sheet " + index);
+                }
+            }
+
+            if (parallelism <= 1 || sheetIndexes.size() <= 1 || sourceStream != null) {
+                for (int index : sheetIndexes) {
+                    readSheet(reader, workbook.relationIds.get(index), strings, dateStyles, workbook.date1904, handlers.apply(index));
+                }
+                return;
+            }
+
+            ConcurrentLinkedQueue<OPCPackage> idle = new ConcurrentLinkedQueue<>();
+            ForkJoinPool pool = new ForkJoinPool(Math.min(parallelism, sheetIndexes.size()));
+            List<ForkJoinTask<?>> tasks = new ArrayList<>();
+            try {
+                for (int index : sheetIndexes) {
+                    tasks.add(pool.submit(() -> {
+                        try {
+                            OPCPackage workerPackage = idle.poll();
+                            if (workerPackage == null) {
+                                workerPackage = openPackage();
+                                synchronized (workerPackages) {
+                                    workerPackages.add(workerPackage);
+                                }
+                            }
+                            try {
+                                readSheet(new XSSFReader(workerPackage), workbook.relationIds.get(index), strings, dateStyles,
+                                        workbook.date1904, handlers.apply(index));
+                            } finally {
+                                idle.add(workerPackage);
+                            }
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        } catch (OpenXML4JException | SAXException e) {
+                            throw new UncheckedIOException(new IOException("Failed to stream xlsx sheet from " + sourcePath, e));
+                        }
+                    }));
+                }
+                for (ForkJoinTask<?> task : tasks) {
+                    task.join();
+                }
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            } finally {
+                pool.shutdown();
+            }
+        } catch (OpenXML4JException | SAXException e) {
+            throw new IOException("Failed to stream xlsx sheet from " + sourcePath, e);
+        } finally {
+            for (OPCPackage workerPackage : workerPackages) {
+                workerPackage.revert();
+            }
+            pkg.revert();
+        }
+    }
+
+    private OPCPackage openPackage() throws IOException {
+        try {
+            return sourceStream != null ? OPCPackage.open(sourceStream) : OPCPackage.open(sourcePath, PackageAccess.READ);
+        } catch (OpenXML4JException e) {
+            throw new IOException("Not a readable xlsx package: " + sourcePath, e);
+        }
+    }
+
+    private static void readSheet(XSSFReader reader, String relationId, ReadOnlySharedStringsTable strings, boolean[] dateStyles,
+                                  boolean date1904, SourceRowHandler handler) throws IOException, OpenXML4JException, SAXException {
+        try (InputStream sheet = reader.getSheet(relationId)) {
+            parse(sheet, new SheetHandler(strings, dateStyles, date1904, handler));
+        }
+    }
+
+    private static boolean[] collectDateStyles(StylesTable styles) {
+        if (styles == null) {
+            return new boolean[0];
+        }
+        boolean[] dateStyles = new boolean[styles.getNumCellStyles()];
+        for (int i = 0; i < dateStyles.length; i++) {
+            XSSFCellStyle style = styles.getStyleAt(i);
+            dateStyles[i] = style != null && DateUtil.isADateFormat(style.getDataFormat(), style.getDataFormatString());
+        }
+        return dateStyles;
+    }
+
+    private static WorkbookInfo readWorkbook(XSSFReader reader) throws IOException, OpenXML4JException, SAXException {
+        WorkbookInfo workbook = new WorkbookInfo();
+        try (InputStream in = reader.getWorkbookData()) {
+            parse(in, new DefaultHandler() {
+                @Override
+                public void startElement(String uri, String localName, String qName, Attributes attributes) {
+                    if ("workbookPr".equals(localName)) {
+                        String value = attributes.getValue("date1904");
+                        workbook.date1904 = "1".equals(value) || "true".equals(value);
+                    } else if ("sheet".equals(localName)) {
+                        workbook.names.add(attributes.getValue("name"));
+                        workbook.relationIds.add(attributes.getValue(RELATIONSHIPS_NS, "id"));
+                    }
+                }
+            });
+        }
+        return workbook;
+    }
+
+    private static void parse(InputStream in, DefaultHandler contentHandler) throws IOException, SAXException {
+        try {
+            XMLReader xmlReader = XMLHelper.newXMLReader();
+            xmlReader.setContentHandler(contentHandler);
+            xmlReader.parse(new InputSource(in));
+        } catch (ParserConfigurationException e) {
+            throw new IOException("SAX parser is not available", e);
+        }
+    }
+
+    private static final class WorkbookInfo {
+        private final List<String> names = new ArrayList<>();
+        private final List<String> relationIds = new ArrayList<>();
+        private boolean date1904;
+    }
+
+    private static final class SheetHandler extends DefaultHandler implements SourceRow.FormulaText {
+
+        private final ReadOnlySharedStringsTable strings;
+        private final boolean[] dateStyles;
+        private final boolean date1904;
+        private final SourceRowHandler handler;
+        private final SourceRow row = new SourceRow();
+        private final StringBuilder text = new StringBuilder();
+        private final StringBuilder formula = new StringBuilder();
+        private final Map<String, SharedFormula> sharedFormulas = new HashMap<>();
+        // Per column of the current row: the cell's own formula text, or the shared formula it follows.
+        private String[] rowFormulas = new String[16];
+        private SharedFormula[] rowShared = new SharedFormula[16];
+
+        private int rowNum = -1;
+        private int col = -1;
+        private String cellType;
+        private int styleIndex;
+        private boolean hasFormula;
+        private boolean inFormula;
+        private String sharedIndex;
+        private boolean hasValue;
+        private boolean inValue;
+        private boolean inInlineString;
+        private boolean inPhonetic;
+        private boolean inText;
+
+        SheetHandler(ReadOnlySharedStringsTable strings, boolean[] dateStyles, boolean date1904, SourceRowHandler handler) {
+            this.strings = strings;
+            this.dateStyles = dateStyles;
+            this.date1904 = date1904;
+            this.handler = handler;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            switch (localName) {
+                case "row":
+                    String r = attributes.getValue("r");
+                    rowNum = r != null ? Integer.parseInt(r) - 1 : rowNum + 1;
+                    row.start(rowNum, date1904);
+                    col = -1;
+                    break;
+                case "c":
+                    String ref = attributes.getValue("r");
+                    col = ref != null ? columnIndex(ref) : col + 1;
+                    cellType = attributes.getValue("t");
+                    String s = attributes.getValue("s");
+                    styleIndex = s != null ? Integer.parseInt(s) : 0;
+                    hasFormula = false;
+                    hasValue = false;
+                    sharedIndex = null;
+                    text.setLength(0);
+                    formula.setLength(0);
+                    break;
+                case "f":
+                    hasFormula = true;
+                    inFormula = true;
+                    sharedIndex = "shared".equals(attributes.getValue("t")) ? attributes.getValue("si") : null;
+                    break;
+                case "v":
+                    inValue = true;
+                    hasValue = true;
+                    break;
+                case "is":
+                    inInlineString = true;
+                    hasValue = true;
+                    break;
+                case "rPh":
+                    inPhonetic = true;
+                    break;
+                case "t":
+                    inText = inInlineString && !inPhonetic;
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (inValue || inText) {
+                text.append(ch, start, length);
+            } else if (inFormula) {
+                formula.append(ch, start, length);
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            switch (localName) {
+                case "v":
+                    inValue = false;
+                    break;
+                case "f":
+                    inFormula = false;
+                    // The first cell of a shared formula carries its text; the others only its index.
+                    if (sharedIndex != null && formula.length() > 0) {
+                        sharedFormulas.put(sharedIndex, new SharedFormula(formula.toString(), rowNum, col));
+                    }
+                    break;
+                case "t":
+                    inText = false;
+                    break;
+                case "rPh":
+                    inPhonetic = false;
+                    break;
+                case "is":
+                    inInlineString = false;
+                    break;
+                case "c":
+                    storeCell();
+                    break;
+                case "row":
+                    handler.handleRow(row);
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private static int columnIndex(String ref) {
+            int index = 0;
+            for (int i = 0; i < ref.length(); i++) {
+                char c = ref.charAt(i);
+                if (c < 'A' || c > 'Z') {
+                    break;
+                }
+                index = index * 26 + (c - 'A' + 1);
+            }
+            return index - 1;
+        }
+
+        // Cell types follow XSSFCell#getCellType so coercion sees what the usermodel would.
+        private void storeCell() {
+            if (hasFormula) {
+                keepFormula();
+                return;
+            }
+            if (cellType == null || "n".equals(cellType)) {
+                if (!hasValue || text.length() == 0) {
+                    row.setOther(col, CellType.BLANK);
+                } else {
+                    boolean isDate = styleIndex < dateStyles.length && dateStyles[styleIndex];
+                    row.setNumeric(col, Double.parseDouble(text.toString()), isDate);
+                }
+            } else if ("s".equals(cellType)) {
+                int index = Integer.parseInt(text.toString().trim());
+                row.setString(col, strings.getItemAt(index).getString());
+            } else if ("b".equals(cellType)) {
+                row.setBoolean(col, "1".equals(text.toString().trim()));
+            } else if ("e".equals(cellType)) {
+                row.setText(col, CellType.ERROR, text.toString());
+            } else {
+                row.setString(col, text.toString());
+            }
+        }
+
+        private void keepFormula() {
+            if (col >= rowFormulas.length) {
+                int capacity = Math.max(col + 1, rowFormulas.length * 2);
+                rowFormulas = Arrays.copyOf(rowFormulas, capacity);
+                rowShared = Arrays.copyOf(rowShared, capacity);
+            }
+            boolean own = formula.length() > 0 || sharedIndex == null;
+            rowFormulas[col] = own ? formula.toString() : null;
+            rowShared[col] = own ? null : sharedFormulas.get(sharedIndex);
+            row.setFormula(col, this);
+        }
+
+        // As XSSFCell#getCellFormula: a cell sharing a formula gets the first cell's text moved by its offset.
+        @Override
+        public String render(int col) {
+            if (rowFormulas[col] != null) {
+                return rowFormulas[col];
+            }
+            return rowShared[col] != null ? rowShared[col].shiftedTo(rowNum, col) : "";
+        }
+    }
+
+    private static final class SharedFormula {
+        private final String text;
+        private final int row;
+        private final int col;
+
+        SharedFormula(String text, int row, int col) {
+            this.text = text;
+            this.row = row;
+            this.col = col;
+        }
+
+        /*
+         * The text with every relative cell, column and row reference moved by the
+         * offset from the first cell. Absolute parts ($A, $1), function names, quoted
+         * sheet names, string literals and structured references stay as they are.
+         */
+        String shiftedTo(int targetRow, int targetCol) {
+            int rows = targetRow - row;
+            int cols = targetCol - col;
+            StringBuilder shifted = new StringBuilder(text.length() + 8);
+            int i = 0;
+            while (i < text.length()) {
+                char c = text.charAt(i);
+                if (c == '"' || c == '\'' || c == '[') {
+                    int end = skipQuoted(text, i);
+                    shifted.append(text, i, end);
+                    i = end;
+                } else if (isNamePart(c)) {
+                    int end = i;
+                    while (end < text.length() && isNamePart(text.charAt(end))) {
+                        end++;
+                    }
+                    shifted.append(shiftToken(text.substring(i, end), i, end, rows, cols));
+                    i = end;
+                } else {
+                    shifted.append(c);
+                    i++;
+                }
+            }
+            return shifted.toString();
+        }
+
+        // A token that is not a reference, or precedes '(' or '!', comes back unchanged.
+        private String shiftToken(String token, int start, int end, int rows, int cols) {
+            char next = end < text.length() ? text.charAt(end) : ' ';
+            char previous = start > 0 ? text.charAt(start - 1) : ' ';
+            if (next == '(' || next == '!') {
+                return token;
+            }
+            boolean inRange = next == ':' || previous == ':';
+            int split = 0;
+            if (split < token.length() && token.charAt(split) == '$') {
+                split++;
+            }
+            int letters = split;
+            while (letters < token.length() && token.charAt(letters) >= 'A' && token.charAt(letters) <= 'Z') {
+                letters++;
+            }
+            int columnLength = letters - split;
+            if (columnLength > 3) {
+                return token;
+            }
+            if (letters == token.length()) {
+                // A column of a column range such as A:C.
+                return columnLength > 0 && inRange ? shiftColumn(token, cols) : token;
+            }
+            int digits = letters;
+            if (token.charAt(digits) == '$') {
+                digits++;
+            }
+            int rowStart = digits;
+            while (digits < token.length() && Character.isDigit(token.charAt(digits))) {
+                digits++;
+            }
+            if (digits != token.length() || rowStart == digits) {
+                return token;
+            }
+            if (columnLength == 0) {
+                // A row of a row range such as 1:3.
+                return letters == 0 && inRange ? shiftRow(token, rows) : token;
+            }
+            return shiftColumn(token.substring(0, letters), cols) + shiftRow(token.substring(letters), rows);
+        }
+
+        private static String shiftColumn(String column, int cols) {
+            if (column.startsWith("$") || cols == 0) {
+                return column;
+            }
+            int index = 0;
+            for (int i = 0; i < column.length(); i++) {
+                index = index * 26 + (column.charAt(i) - 'A' + 1);
+            }
+            index += cols;
+            StringBuilder name = new StringBuilder();
+            for (; index > 0; index = (index - 1) / 26) {
+                name.insert(0, (char) ('A' + (index - 1) % 26));
+            }
+            return name.toString();
+        }
+
+        private static String shiftRow(String rowNumber, int rows) {
+            if (rowNumber.startsWith("$") || rows == 0) {
+                return rowNumber;
+            }
+            return String.valueOf(Integer.parseInt(rowNumber) + rows);
+        }
+
+        private static boolean isNamePart(char c) {
+            return Character.isLetterOrDigit(c) || c == '$' || c == '_' || c == '.';
+        }
+
+        // The index after a "string", 'sheet name' or [structured reference] starting at start.
+        private static int skipQuoted(String text, int start) {
+            char close = text.charAt(start) == '[' ? ']' : text.charAt(start);
+            int depth = 0;
+            for (int i = start; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (close == ']') {
+                    if (c == '[') {
+                        depth++;
+                    } else if (c == ']' && --depth == 0) {
+                        return i + 1;
+                    }
+                } else if (i > start && c == close) {
+                    // A doubled quote is an escaped one.
+                    if (i + 1 < text.length() && text.charAt(i + 1) == close) {
+                        i++;
+                    } else {
+                        return i + 1;
+                    }
+                }
+            }
+            return text.length();
+        }
+    }
+}
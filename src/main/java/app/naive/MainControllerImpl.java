@@ -5,20 +5,38 @@ import java.io.FileInputStream;
 import java.io.InputStreamReader;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.HashMap;
+import java.util.Locale;
 import java.util.Map;
 
 import org.apache.poi.ss.usermodel.*;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 
 
+import app.ExportSession;
+import app.VarianceSheetWriter;
+import app.ingest.ExcelEventReaders;
+import app.ingest.SourceRow;
+import app.ingest.SourceStreams;
 import dom.gantt.TaskAbstract;
+import util.DurationDistribution;
 import util.FileTypes;
+import util.HistogramBucket;
+import util.LoadResult;
+import util.ProjectDiff;
 import util.ProjectInfo;
+import util.QueryResult;
+import util.ScheduleRisk;
+import util.SortKey;
+import util.TaskQuery;
+import util.TaskStore;
 
 public class MainControllerImpl implements service.IMainController {
 
@@ -26,6 +44,11 @@ public class MainControllerImpl implements service.IMainController {
     private Workbook targetWorkbook;
     private String targetPath;
     private Map<String, CellStyle> stylesMap = new HashMap<>();
+    private boolean streamingExcel = false;
+
+    public void setStreamingExcel(boolean streamingExcel) {
+        this.streamingExcel = streamingExcel;
+    }
 
     @Override
     public List<String> load(String sourcePath, FileTypes filetype) {
@@ -36,7 +59,7 @@ public class MainControllerImpl implements service.IMainController {
             switch (filetype) {
                 case XLS:
                 case XLSX:
-                    taskDescriptions = loadFromExcel(sourcePath);
+                    taskDescriptions = streamingExcel ? loadFromExcelStreaming(sourcePath) : loadFromExcel(sourcePath);
                     break;
                 case CSV:
                 case TSV:
@@ -58,10 +81,55 @@ public class MainControllerImpl implements service.IMainController {
         }
     }
 
+    @Override
+    public LoadResult loadLazy(String sourcePath, FileTypes filetype) {
+        List<String> taskDescriptions = load(sourcePath, filetype);
+        return taskDescriptions != null ? LoadResult.forDescriptions(taskDescriptions) : null;
+    }
+
+    @Override
+    public List<String> load(InputStream source, FileTypes filetype) {
+        List<String> taskDescriptions;
+        try {
+            InputStream in = SourceStreams.unwrap(source, filetype);
+            switch (filetype) {
+                case XLS:
+                case XLSX:
+                    taskDescriptions = streamingExcel ? loadFromExcelStreaming(in) : loadFromExcel(in);
+                    break;
+                case CSV:
+                case TSV:
+                    taskDescriptions = loadFromCSV(in, filetype);
+                    break;
+                default:
+                    System.err.println("Unsupported file type: " + filetype);
+                    return null;
+            }
+
+            projectInfo = new ProjectInfo();
+
+            return taskDescriptions;
+
+        } catch (Exception e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    @Override
+    public List<String> load(ReadableByteChannel source, FileTypes filetype) {
+        return load(Channels.newInputStream(source), filetype);
+    }
+
     private List<String> loadFromExcel(String sourcePath) throws IOException {
+        try (FileInputStream fis = new FileInputStream(sourcePath)) {
+            return loadFromExcel(fis);
+        }
+    }
+
+    private List<String> loadFromExcel(InputStream source) throws IOException {
         List<String> tasks = new ArrayList<>();
-        try (FileInputStream fis = new FileInputStream(sourcePath);
-             Workbook workbook = WorkbookFactory.create(fis)) {
+        try (Workbook workbook = WorkbookFactory.create(source)) {
 
             Sheet sheet = workbook.getSheetAt(0);
             for (Row row : sheet) {
@@ -75,20 +143,48 @@ public class MainControllerImpl implements service.IMainController {
         return tasks;
     }
 
+    private List<String> loadFromExcelStreaming(String sourcePath) throws IOException {
+        List<String> tasks = new ArrayList<>();
+        ExcelEventReaders.readFirstSheet(sourcePath, row -> tasks.add(describeRow(row)));
+        return tasks;
+    }
+
+    private List<String> loadFromExcelStreaming(InputStream source) throws IOException {
+        List<String> tasks = new ArrayList<>();
+        ExcelEventReaders.readFirstSheet(source, row -> tasks.add(describeRow(row)));
+        return tasks;
+    }
+
+    private static String describeRow(SourceRow row) {
+        StringBuilder taskBuilder = new StringBuilder();
+        for (int col = 0; col < row.getWidth(); col++) {
+            if (row.hasCell(col)) {
+                taskBuilder.append(row.describe(col)).append(" | ");
+            }
+        }
+        return taskBuilder.toString();
+    }
+
     private List<String> loadFromCSV(String sourcePath, FileTypes filetype) throws IOException {
+        try (FileInputStream fis = new FileInputStream(sourcePath)) {
+            return loadFromCSV(fis, filetype);
+        }
+    }
+
+    // The reader is not closed here: closing it would close the caller's stream.
+    private List<String> loadFromCSV(InputStream source, FileTypes filetype) throws IOException {
         List<String> tasks = new ArrayList<>();
         String delimiter = filetype == FileTypes.TSV ? "\t" : ",";
 
-        try (BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(sourcePath), "UTF-8"))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                String[] cells = line.split(delimiter);
-                StringBuilder taskBuilder = new StringBuilder();
-                for (String cell : cells) {
-                    taskBuilder.append(cell).append(" | ");
-                }
-                tasks.add(taskBuilder.toString());
+        BufferedReader br = new BufferedReader(new InputStreamReader(source, "UTF-8"));
+        String line;
+        while ((line = br.readLine()) != null) {
+            String[] cells = line.split(delimiter);
+            StringBuilder taskBuilder = new StringBuilder();
+            for (String cell : cells) {
+                taskBuilder.append(cell).append(" | ");
             }
+            tasks.add(taskBuilder.toString());
         }
         return tasks;
     }
@@ -146,6 +242,90 @@ public class MainControllerImpl implements service.IMainController {
         return projectInfo.getTasksInRange(firstIncluded, lastIncluded);
     }
 
+    @Override
+    public List<TaskAbstract> getTasksActiveInWindow(int firstDay, int lastDay) {
+        if (projectInfo == null) {
+            return null;
+        }
+        return projectInfo.getTasksActiveInWindow(firstDay, lastDay);
+    }
+
+    @Override
+    public List<TaskAbstract> getTasksSortedBy(SortKey key) {
+        if (projectInfo == null) {
+            return null;
+        }
+        return projectInfo.getTasksSortedBy(key, Locale.getDefault());
+    }
+
+    @Override
+    public QueryResult query(String expression) {
+        if (projectInfo == null) {
+            return null;
+        }
+        try {
+            return TaskQuery.parse(expression).execute(projectInfo, Runtime.getRuntime().availableProcessors());
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            return null;
+        }
+    }
+
+    @Override
+    public List<TaskAbstract> findTasksByName(String fragment) {
+        if (projectInfo == null) {
+            return null;
+        }
+        return projectInfo.findTasksByName(fragment);
+    }
+
+    // Moves only the task itself; successors keep their days.
+    @Override
+    public List<TaskAbstract> moveTask(int id, Integer startDay, Integer endDay) {
+        if (projectInfo == null) {
+            return null;
+        }
+        TaskStore store = projectInfo.getStore().copy();
+        int[] rows = store.rowsWithIdBetween(id, id);
+        if (rows.length == 0) {
+            System.err.println("No task with id " + id + ".");
+            return null;
+        }
+        for (int row : rows) {
+            store.setDays(row, startDay, endDay);
+        }
+        projectInfo = projectInfo.nextVersion(store);
+        return store.view(rows);
+    }
+
+    // Tasks are not parsed here, so there is nothing to join on.
+    @Override
+    public ProjectDiff compareWithBaseline(String baselinePath, FileTypes filetype) {
+        System.err.println("Baseline comparison is not supported by this controller.");
+        return null;
+    }
+
+    @Override
+    public boolean writeVarianceWorkbook(ProjectDiff diff, String targetPath) {
+        return VarianceSheetWriter.write(diff, targetPath);
+    }
+
+    // One thread, no other setup.
+    @Override
+    public ScheduleRisk simulateSchedule(DurationDistribution distribution, double lowFactor, double highFactor,
+                                         int iterations, long seed) {
+        if (projectInfo == null) {
+            return null;
+        }
+        try {
+            return ScheduleRisk.simulate(projectInfo.getSchedule(), projectInfo.getHierarchy(1), distribution,
+                    lowFactor, highFactor, iterations, seed, 1);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            return null;
+        }
+    }
+
     @Override
     public boolean rawWriteToExcelFile(List<TaskAbstract> tasks) {
         if (targetWorkbook == null) {
@@ -270,10 +450,80 @@ public class MainControllerImpl implements service.IMainController {
         }
     }
 
+    // Adds up every task for every day of the span.
+    @Override
+    public boolean createHistogramSheet(String sheetName, List<TaskAbstract> tasks, HistogramBucket bucket,
+                                        String headerStyleName, String normalStyleName) {
+        if (targetWorkbook == null) {
+            System.err.println("Target workbook is not prepared.");
+            return false;
+        }
+
+        try {
+            Integer firstDay = null;
+            Integer lastDay = null;
+            for (TaskAbstract task : tasks) {
+                if (task.getStartDay() != null && task.getEndDay() != null && task.getEndDay() >= task.getStartDay()) {
+                    firstDay = firstDay == null ? task.getStartDay() : Math.min(firstDay, task.getStartDay());
+                    lastDay = lastDay == null ? task.getEndDay() : Math.max(lastDay, task.getEndDay());
+                }
+            }
+
+            Sheet sheet = targetWorkbook.createSheet(sheetName);
+            Row headerRow = sheet.createRow(0);
+            CellStyle headerStyle = getStyleByName(headerStyleName);
+            String[] headers = {"From Day", "To Day", "Effort", "Cost"};
+            for (int i = 0; i < headers.length; i++) {
+                Cell cell = headerRow.createCell(i);
+                cell.setCellValue(headers[i]);
+                if (headerStyle != null) {
+                    cell.setCellStyle(headerStyle);
+                }
+            }
+
+            int rowNum = 1;
+            for (int from = firstDay != null ? firstDay : 0; firstDay != null && from <= lastDay; from += bucket.getDays()) {
+                int to = Math.min(lastDay, from + bucket.getDays() - 1);
+                double effort = 0;
+                double cost = 0;
+                for (int day = from; day <= to; day++) {
+                    for (TaskAbstract task : tasks) {
+                        Integer start = task.getStartDay();
+                        Integer end = task.getEndDay();
+                        if (start != null && end != null && day >= start && day <= end) {
+                            effort += task.getEffort() / (end - start + 1);
+                            cost += task.getCost() / (end - start + 1);
+                        }
+                    }
+                }
+                Row row = sheet.createRow(rowNum++);
+                row.createCell(0).setCellValue(from);
+                row.createCell(1).setCellValue(to);
+                row.createCell(2).setCellValue(effort);
+                row.createCell(3).setCellValue(cost);
+            }
+
+            try (FileOutputStream fos = new FileOutputStream(targetPath)) {
+                targetWorkbook.write(fos);
+            }
+
+            return true;
+
+        } catch (Exception e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
     @Override
     public void createDefaultStyles() {
     }
 
+    @Override
+    public service.IExportSession openExportSession() {
+        return new ExportSession(projectInfo);
+    }
+
 
     private CellStyle getStyleByName(String styleName) {
         return stylesMap.getOrDefault(styleName, targetWorkbook.createCellStyle());
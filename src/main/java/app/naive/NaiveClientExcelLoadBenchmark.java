@@ -0,0 +1,68 @@
+package app.naive;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.List;
+
+import app.ApplicationController;
+import util.FileTypes;
+
+public class NaiveClientExcelLoadBenchmark {
+
+
+	public static void main(String args[]) {
+		String sourcePath = args.length > 0 ? args[0] : "src/test/resources/input/EggsScrambled.xls";
+		FileTypes fileType = sourcePath.toLowerCase().endsWith(".xlsx") ? FileTypes.XLSX : FileTypes.XLS;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+
+		System.out.println("Source: " + sourcePath + " (" + fileType + "), rounds: " + rounds);
+		System.out.println("----------");
+		for (int i = 0; i < rounds; i++) {
+			measure("usermodel", sourcePath, fileType, false);
+			measure("event    ", sourcePath, fileType, true);
+		}
+		System.out.println("End of excel load benchmark");
+	}
+
+	private static void measure(String label, String sourcePath, FileTypes fileType, boolean streaming) {
+		ApplicationController appController = new ApplicationController();
+		appController.setStreamingExcel(streaming);
+
+		System.gc();
+		long heapBefore = resetPeakHeap();
+		long start = System.nanoTime();
+		List<String> loadedStr = appController.load(sourcePath, fileType);
+		long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+		long peakHeap = peakHeap();
+
+		if (loadedStr == null) {
+			System.err.println(label + ": failed to load " + sourcePath);
+			return;
+		}
+		System.out.println(label + ": " + loadedStr.size() + " tasks in " + elapsedMs + " ms, peak heap +"
+				+ (peakHeap - heapBefore) / (1024 * 1024) + " MB");
+	}
+
+	private static long resetPeakHeap() {
+		long used = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				pool.resetPeakUsage();
+				used += pool.getUsage().getUsed();
+			}
+		}
+		return used;
+	}
+
+	private static long peakHeap() {
+		long peak = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				peak += pool.getPeakUsage().getUsed();
+			}
+		}
+		return peak;
+	}
+
+}
@@ -0,0 +1,82 @@
+package dom.gantt;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*
+ * A predecessor link of a task, written the way planning tools show it: the
+ * predecessor id, an optional type (FS when left out) and an optional signed lag in
+ * days, e.g. "12", "12SS", "7FF+2" or "4FS-1d". A list separates links by ';' or ','.
+ */
+public class Dependency {
+    private static final Pattern LINK = Pattern.compile("\\s*(-?\\d+)\\s*(FS|SS|FF|SF)?\\s*(?:([+-])\\s*(\\d+)\\s*D?)?\\s*",
+            Pattern.CASE_INSENSITIVE);
+
+    private final int predecessorId;
+    private final DependencyType type;
+    private final int lag;
+
+    public Dependency(int predecessorId, DependencyType type, int lag) {
+        this.predecessorId = predecessorId;
+        this.type = type;
+        this.lag = lag;
+    }
+
+    public int getPredecessorId() { return predecessorId; }
+    public DependencyType getType() { return type; }
+    public int getLag() { return lag; }
+
+    // Blank text has no links; anything that is not a list of links throws NumberFormatException.
+    public static List<Dependency> parseList(String text) {
+        if (text == null || text.trim().isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Dependency> links = new ArrayList<>();
+        for (String token : text.split("[;,]")) {
+            if (token.trim().isEmpty()) {
+                continue;
+            }
+            Matcher matcher = LINK.matcher(token);
+            if (!matcher.matches()) {
+                throw new NumberFormatException("Not a predecessor link: '" + token.trim() + "'");
+            }
+            DependencyType type = matcher.group(2) != null
+                    ? DependencyType.valueOf(matcher.group(2).toUpperCase()) : DependencyType.FS;
+            int lag = matcher.group(4) != null ? Integer.parseInt(matcher.group(4)) : 0;
+            links.add(new Dependency(Integer.parseInt(matcher.group(1)), type, "-".equals(matcher.group(3)) ? -lag : lag));
+        }
+        return links;
+    }
+
+    public static String formatList(List<Dependency> links) {
+        StringBuilder text = new StringBuilder();
+        for (Dependency link : links) {
+            if (text.length() > 0) {
+                text.append(';');
+            }
+            text.append(link);
+        }
+        return text.toString();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof Dependency)) return false;
+        Dependency other = (Dependency) o;
+        return predecessorId == other.predecessorId && type == other.type && lag == other.lag;
+    }
+
+    @Override
+    public int hashCode() {
+        return (predecessorId * 31 + type.ordinal()) * 31 + lag;
+    }
+
+    @Override
+    public String toString() {
+        String text = predecessorId + type.name();
+        return lag > 0 ? text + "+" + lag : lag < 0 ? text + lag : text;
+    }
+}
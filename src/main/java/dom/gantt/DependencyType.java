@@ -0,0 +1,9 @@
+package dom.gantt;
+
+// How a predecessor constrains its successor; the lag in days is added to the predecessor side.
+public enum DependencyType {
+    FS, // successor starts after the predecessor finishes
+    SS, // successor starts after the predecessor starts
+    FF, // successor finishes after the predecessor finishes
+    SF  // successor finishes after the predecessor starts
+}
@@ -1,5 +1,6 @@
 package dom.gantt;
 
+import java.util.Collections;
 import java.util.List;
 
 public abstract class TaskAbstract {
@@ -11,9 +12,15 @@ public abstract class TaskAbstract {
     protected Integer endDay;
     protected double cost;
     protected double effort;
+    protected List<Dependency> dependencies;
 
 
     public TaskAbstract(int id, String name, int containerId, Integer startDay, Integer endDay, double cost, double effort) {
+        this(id, name, containerId, startDay, endDay, cost, effort, Collections.emptyList());
+    }
+
+    public TaskAbstract(int id, String name, int containerId, Integer startDay, Integer endDay, double cost, double effort,
+                        List<Dependency> dependencies) {
         this.id = id;
         this.name = name;
         this.containerId = containerId;
@@ -21,6 +28,7 @@ public abstract class TaskAbstract {
         this.endDay = endDay;
         this.cost = cost;
         this.effort = effort;
+        this.dependencies = Collections.unmodifiableList(dependencies);
     }
 
 
@@ -31,6 +39,7 @@ public abstract class TaskAbstract {
     public Integer getEndDay() { return endDay; }
     public double getCost() { return cost; }
     public double getEffort() { return effort; }
+    public List<Dependency> getDependencies() { return dependencies; }
     public boolean isTopLevel() { return containerId == 0; }
 
     public abstract List<String> toStringList();
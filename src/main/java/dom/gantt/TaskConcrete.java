@@ -9,6 +9,11 @@ public class TaskConcrete extends TaskAbstract {
         super(id, name, containerId, startDay, endDay, cost, effort);
     }
 
+    public TaskConcrete(int id, String name, int containerId, Integer startDay, Integer endDay, double cost, double effort,
+                        List<Dependency> dependencies) {
+        super(id, name, containerId, startDay, endDay, cost, effort, dependencies);
+    }
+
     @Override
     public String toString() {
         return "TaskConcrete{" +
@@ -19,6 +24,7 @@ public class TaskConcrete extends TaskAbstract {
                 ", endDay=" + getEndDay() +
                 ", cost=" + cost +
                 ", effort=" + effort +
+                (dependencies.isEmpty() ? "" : ", dependencies=" + Dependency.formatList(dependencies)) +
                 '}';
     }
 
@@ -32,6 +38,10 @@ public class TaskConcrete extends TaskAbstract {
         list.add(getEndDay() != null ? String.valueOf(getEndDay()) : "");
         list.add(String.valueOf(cost));
         list.add(String.valueOf(effort));
+        // The links column only appears for tasks that have links.
+        if (!dependencies.isEmpty()) {
+            list.add(Dependency.formatList(dependencies));
+        }
         return list;
     }
 }
@@ -0,0 +1,115 @@
+package service;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Export sessions over one loaded project, at most maxSessions of them open at a time.
+ * A caller that finds every session taken waits up to its timeout and is then turned
+ * away, so load is shed at the door instead of piling up behind the workers. Jobs run
+ * on a fixed set of worker threads; each admitted job holds its session until it
+ * ends, which also bounds the number of jobs waiting for a worker.
+ */
+public class ExportSessionPool implements AutoCloseable {
+
+    public interface ExportJob {
+        boolean export(IExportSession session) throws Exception;
+    }
+
+    private final IMainController controller;
+    private final int maxSessions;
+    private final Semaphore permits;
+    private final Set<IExportSession> active = ConcurrentHashMap.newKeySet();
+    private final ExecutorService workers;
+
+    public ExportSessionPool(IMainController controller, int maxSessions, int workerThreads) {
+        this.controller = controller;
+        this.maxSessions = Math.max(1, maxSessions);
+        this.permits = new Semaphore(this.maxSessions, true);
+        AtomicInteger threadCount = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(Math.max(1, workerThreads), job -> {
+            Thread thread = new Thread(job, "export-worker-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // A session over the project version current when it is handed out; null if none frees up in time.
+    public IExportSession acquire(long timeout, TimeUnit unit) {
+        try {
+            if (!permits.tryAcquire(timeout, unit)) {
+                System.err.println("All " + maxSessions + " export sessions are busy.");
+                return null;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        IExportSession session;
+        try {
+            session = controller.openExportSession();
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+        active.add(session);
+        return session;
+    }
+
+    // Closes the session and frees its place; releasing a session twice has no effect.
+    public void release(IExportSession session) {
+        if (session != null && active.remove(session)) {
+            session.close();
+            permits.release();
+        }
+    }
+
+    /*
+     * Admits the job once a session is free, waiting at most the timeout, and runs it
+     * on a worker. The future holds the job's result, or false if it threw; null means
+     * the job was not admitted.
+     */
+    public Future<Boolean> submit(ExportJob job, long timeout, TimeUnit unit) {
+        IExportSession session = acquire(timeout, unit);
+        if (session == null) {
+            return null;
+        }
+        try {
+            return workers.submit(() -> {
+                try {
+                    return job.export(session);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    return false;
+                } finally {
+                    release(session);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            release(session);
+            System.err.println("Export session pool is closed.");
+            return null;
+        }
+    }
+
+    public int getActiveSessions() {
+        return active.size();
+    }
+
+    public int getMaxSessions() {
+        return maxSessions;
+    }
+
+    // Jobs already admitted still run; new ones are turned away.
+    @Override
+    public void close() {
+        workers.shutdown();
+    }
+}
@@ -0,0 +1,29 @@
+package service;
+
+import dom.gantt.TaskAbstract;
+import util.FileTypes;
+import util.HistogramBucket;
+import util.ProjectInfo;
+
+import java.util.List;
+
+public interface IExportSession {
+
+    ProjectInfo prepareTargetWorkbook(FileTypes fileType, String targetPath);
+
+    boolean rawWriteToExcelFile(List<TaskAbstract> tasks);
+
+    String addFontedStyle(String styleName, short styleFontColor, short styleFontHeightInPoints, String styleFontName,
+                          boolean styleFontBold, boolean styleFontItalic, boolean styleFontStrikeout, short styleFillForegroundColor,
+                          String styleFillPatternString, String HorizontalAlignmentString, boolean styleWrapText);
+
+    boolean createNewSheet(String sheetName, List<TaskAbstract> tasks, String headerStyleName, String topBarStyleName,
+                           String topDataStyleName, String nonTopBarStyleName, String nonTopDataStyleName, String normalStyleName);
+
+    boolean createHistogramSheet(String sheetName, List<TaskAbstract> tasks, HistogramBucket bucket,
+                                 String headerStyleName, String normalStyleName);
+
+    void createDefaultStyles();
+
+    void close();
+}
@@ -1,15 +1,30 @@
 package service;
 
 import dom.gantt.TaskAbstract;
+import util.DurationDistribution;
 import util.FileTypes;
+import util.HistogramBucket;
+import util.LoadResult;
+import util.ProjectDiff;
 import util.ProjectInfo;
+import util.QueryResult;
+import util.ScheduleRisk;
+import util.SortKey;
 
+import java.io.InputStream;
+import java.nio.channels.ReadableByteChannel;
 import java.util.List;
 
 public interface IMainController {
 
     List<String> load(String sourcePath, FileTypes filetype);
 
+    LoadResult loadLazy(String sourcePath, FileTypes filetype);
+
+    List<String> load(InputStream source, FileTypes filetype);
+
+    List<String> load(ReadableByteChannel source, FileTypes filetype);
+
     ProjectInfo prepareTargetWorkbook(FileTypes fileType, String targetPath);
 
     List<TaskAbstract> getAllTasks();
@@ -18,6 +33,23 @@ public interface IMainController {
 
     List<TaskAbstract> getTasksInRange(int firstIncluded, int lastIncluded);
 
+    List<TaskAbstract> getTasksActiveInWindow(int firstDay, int lastDay);
+
+    List<TaskAbstract> getTasksSortedBy(SortKey key);
+
+    QueryResult query(String expression);
+
+    List<TaskAbstract> findTasksByName(String fragment);
+
+    List<TaskAbstract> moveTask(int id, Integer startDay, Integer endDay);
+
+    ProjectDiff compareWithBaseline(String baselinePath, FileTypes filetype);
+
+    boolean writeVarianceWorkbook(ProjectDiff diff, String targetPath);
+
+    ScheduleRisk simulateSchedule(DurationDistribution distribution, double lowFactor, double highFactor,
+                                  int iterations, long seed);
+
     boolean rawWriteToExcelFile(List<TaskAbstract> tasks);
 
     String addFontedStyle(String styleName, short styleFontColor, short styleFontHeightInPoints, String styleFontName,
@@ -27,5 +59,10 @@ public interface IMainController {
     boolean createNewSheet(String sheetName, List<TaskAbstract> tasks, String headerStyleName, String topBarStyleName,
                            String topDataStyleName, String nonTopBarStyleName, String nonTopDataStyleName, String normalStyleName);
 
+    boolean createHistogramSheet(String sheetName, List<TaskAbstract> tasks, HistogramBucket bucket,
+                                 String headerStyleName, String normalStyleName);
+
     void createDefaultStyles();
+
+    IExportSession openExportSession();
 }
@@ -7,4 +7,13 @@ public class MainControllerFactory {
     public IMainController createMainController() {
         return new ApplicationController();
     }
+
+    // Sessions share the controller's loaded project; load it once and export from the pool.
+    public ExportSessionPool createExportSessionPool(IMainController controller, int maxSessions) {
+        return createExportSessionPool(controller, maxSessions, Runtime.getRuntime().availableProcessors());
+    }
+
+    public ExportSessionPool createExportSessionPool(IMainController controller, int maxSessions, int workerThreads) {
+        return new ExportSessionPool(controller, maxSessions, workerThreads);
+    }
 }
@@ -0,0 +1,620 @@
+package util;
+
+import dom.gantt.DependencyType;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/*
+ * Critical path schedule over the predecessor links of a TaskStore. Links are
+ * resolved to rows once and turned into a CSR successor list (the successors of row
+ * r are succRows[succStart[r]] .. succRows[succStart[r + 1] - 1]); Kahn's algorithm
+ * over those arrays gives the topological order, the forward pass walks it to fix
+ * early starts and the backward pass walks it in reverse for late starts. Both passes
+ * touch every row and link once, so the cost is linear in rows plus links.
+ *
+ * Days follow the sheet: a task with start and end day s..e lasts e - s + 1 days,
+ * and a task without both days lasts zero days. A task never starts before its own
+ * start day, or before the earliest start day in the store when it has none;
+ * predecessors can only push it later. Lags are in days and may be negative.
+ *
+ * Late dates are kept as the distance from each task's late finish to the end of the
+ * project. That distance only depends on durations and links further down, so a
+ * change that moves the end of the project leaves it alone.
+ *
+ * Links to ids that match no row are ignored and counted. Rows on a link cycle, and
+ * every row after one, cannot be ordered; they are left unscheduled.
+ */
+public class CriticalPath {
+    private static final DependencyType[] TYPES = DependencyType.values();
+
+    private final TaskStore store;
+    private final int modCount;
+
+    // The link graph, shared by every schedule updated from the one that built it.
+    private final int[] linkStart;
+    private final int[] linkRows;
+    private final int[] succStart;
+    private final int[] succRows;
+    private final byte[] succTypes;
+    private final int[] succLags;
+    private final int[] order;
+    private final int[] rank;
+    private final boolean[] scheduled;
+    private final int[] blockedRows;
+    private final int unresolvedLinks;
+
+    private final int[] durations;
+    private final int[] earlyStart;
+    private final int[] tail;
+    private final int projectStart;
+    private final int projectEnd;
+    private int[] changedRows;
+
+    private CriticalPath(TaskStore store) {
+        this.store = store;
+        this.modCount = store.getModCount();
+        int size = store.size();
+        int[] idOrder = store.isSortedById() ? null : store.orderById(null);
+
+        durations = new int[size];
+        for (int row = 0; row < size; row++) {
+            durations[row] = duration(store, row);
+        }
+        projectStart = earliestStart(store);
+        earlyStart = new int[size];
+        for (int row = 0; row < size; row++) {
+            earlyStart[row] = store.hasStartDay(row) ? store.getStartDay(row) : projectStart;
+        }
+
+        // Resolve every link once; -1 marks an id with no row.
+        linkStart = new int[size + 1];
+        linkRows = new int[store.getLinkCount()];
+        succStart = new int[size + 1];
+        int[] inDegree = new int[size];
+        int links = 0;
+        int unresolved = 0;
+        for (int row = 0; row < size; row++) {
+            linkStart[row] = links;
+            for (int i = 0; i < store.getPredecessorCount(row); i++) {
+                int predecessor = findFirst(store, idOrder, store.getPredecessorId(row, i));
+                linkRows[links++] = predecessor;
+                if (predecessor < 0) {
+                    unresolved++;
+                } else {
+                    succStart[predecessor + 1]++;
+                    inDegree[row]++;
+                }
+            }
+        }
+        linkStart[size] = links;
+        unresolvedLinks = unresolved;
+        for (int row = 0; row < size; row++) {
+            succStart[row + 1] += succStart[row];
+        }
+        succRows = new int[links - unresolved];
+        succTypes = new byte[succRows.length];
+        succLags = new int[succRows.length];
+        int[] next = Arrays.copyOf(succStart, size);
+        for (int row = 0; row < size; row++) {
+            for (int i = 0; i < store.getPredecessorCount(row); i++) {
+                int predecessor = linkRows[linkStart[row] + i];
+                if (predecessor >= 0) {
+                    int edge = next[predecessor]++;
+                    succRows[edge] = row;
+                    succTypes[edge] = (byte) store.getDependencyType(row, i).ordinal();
+                    succLags[edge] = store.getLag(row, i);
+                }
+            }
+        }
+
+        // Forward pass in Kahn order: a row is taken once all its predecessors are final.
+        order = new int[size];
+        int ordered = 0;
+        for (int row = 0; row < size; row++) {
+            if (inDegree[row] == 0) {
+                order[ordered++] = row;
+            }
+        }
+        for (int head = 0; head < ordered; head++) {
+            int row = order[head];
+            for (int edge = succStart[row]; edge < succStart[row + 1]; edge++) {
+                int successor = succRows[edge];
+                int bound = startBound(succTypes[edge], earlyStart[row], durations[row], succLags[edge],
+                        durations[successor]);
+                if (bound > earlyStart[successor]) {
+                    earlyStart[successor] = bound;
+                }
+                if (--inDegree[successor] == 0) {
+                    order[ordered++] = successor;
+                }
+            }
+        }
+
+        scheduled = new boolean[size];
+        rank = new int[size];
+        Arrays.fill(rank, -1);
+        int end = projectStart;
+        for (int i = 0; i < ordered; i++) {
+            int row = order[i];
+            scheduled[row] = true;
+            rank[row] = i;
+            end = Math.max(end, earlyStart[row] + durations[row]);
+        }
+        projectEnd = end;
+        blockedRows = new int[size - ordered];
+        int blocked = 0;
+        for (int row = 0; row < size; row++) {
+            if (!scheduled[row]) {
+                blockedRows[blocked++] = row;
+            }
+        }
+
+        // Backward pass in reverse order: every successor's late dates are final first.
+        tail = new int[size];
+        for (int i = ordered - 1; i >= 0; i--) {
+            int row = order[i];
+            tail[row] = tailOf(row);
+        }
+    }
+
+    /*
+     * The previous schedule carried over to a store that differs from the previous
+     * store only in the days of the given rows. Those rows are marked dirty and taken
+     * from a priority queue in topological rank, so every row of their downstream cone
+     * is recomputed once, after all of its predecessors, and the walk stops wherever a
+     * row's dates come out unchanged. A changed duration also moves late dates, which
+     * are carried upstream the same way in reverse rank.
+     */
+    private CriticalPath(CriticalPath previous, TaskStore next, int[] rows) {
+        this.store = next;
+        this.modCount = next.getModCount();
+        linkStart = previous.linkStart;
+        linkRows = previous.linkRows;
+        succStart = previous.succStart;
+        succRows = previous.succRows;
+        succTypes = previous.succTypes;
+        succLags = previous.succLags;
+        order = previous.order;
+        rank = previous.rank;
+        scheduled = previous.scheduled;
+        blockedRows = previous.blockedRows;
+        unresolvedLinks = previous.unresolvedLinks;
+        projectStart = previous.projectStart;
+        durations = previous.durations.clone();
+        earlyStart = previous.earlyStart.clone();
+        tail = previous.tail.clone();
+
+        BitSet changed = new BitSet(durations.length);
+        BitSet resized = new BitSet(durations.length);
+        for (int row : rows) {
+            int duration = duration(next, row);
+            if (duration != durations[row]) {
+                durations[row] = duration;
+                resized.set(row);
+                changed.set(row);
+            }
+        }
+
+        // Early dates flow down from the edited rows.
+        RankQueue queue = new RankQueue(durations.length);
+        for (int row : rows) {
+            if (scheduled[row]) {
+                queue.push(rank[row], false);
+            }
+        }
+        int end = previous.projectEnd;
+        boolean endMayDrop = false;
+        while (!queue.isEmpty()) {
+            int row = order[queue.pop()];
+            int start = next.hasStartDay(row) ? next.getStartDay(row) : projectStart;
+            for (int link = linkStart[row]; link < linkStart[row + 1]; link++) {
+                int predecessor = linkRows[link];
+                if (predecessor < 0) {
+                    continue;
+                }
+                int i = link - linkStart[row];
+                start = Math.max(start, startBound(next.getDependencyType(row, i).ordinal(),
+                        earlyStart[predecessor], durations[predecessor], next.getLag(row, i), durations[row]));
+            }
+            if (start == earlyStart[row] && !resized.get(row)) {
+                continue;
+            }
+            int finish = start + durations[row];
+            if (previous.earlyStart[row] + previous.durations[row] == previous.projectEnd && finish < previous.projectEnd) {
+                endMayDrop = true;
+            }
+            end = Math.max(end, finish);
+            earlyStart[row] = start;
+            changed.set(row);
+            for (int edge = succStart[row]; edge < succStart[row + 1]; edge++) {
+                int successor = succRows[edge];
+                if (scheduled[successor]) {
+                    queue.push(rank[successor], false);
+                }
+            }
+        }
+        if (endMayDrop) {
+            end = projectStart;
+            for (int row = 0; row < durations.length; row++) {
+                if (scheduled[row]) {
+                    end = Math.max(end, earlyStart[row] + durations[row]);
+                }
+            }
+        }
+        projectEnd = end;
+
+        // Late dates flow up from the rows whose duration changed.
+        queue.clear();
+        for (int row = resized.nextSetBit(0); row >= 0; row = resized.nextSetBit(row + 1)) {
+            if (scheduled[row]) {
+                queue.push(rank[row], true);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int row = order[queue.pop()];
+            int rowTail = tailOf(row);
+            if (rowTail == tail[row] && !resized.get(row)) {
+                continue;
+            }
+            tail[row] = rowTail;
+            changed.set(row);
+            for (int link = linkStart[row]; link < linkStart[row + 1]; link++) {
+                int predecessor = linkRows[link];
+                if (predecessor >= 0 && scheduled[predecessor]) {
+                    queue.push(rank[predecessor], true);
+                }
+            }
+        }
+
+        changedRows = changed.stream().toArray();
+    }
+
+    public static CriticalPath compute(TaskStore store) {
+        CriticalPath path = new CriticalPath(store);
+        path.changedRows = allRows(store.size());
+        return path;
+    }
+
+    /*
+     * The schedule for a store that holds the same tasks and links, in the same rows,
+     * as this schedule's store, except for the days of the given rows. Only the rows
+     * downstream of those, and upstream of any whose duration changed, are visited.
+     * When that does not hold, or the edit moves the earliest start day of the project,
+     * the schedule is computed again from scratch.
+     */
+    public CriticalPath update(TaskStore next, int[] rows) {
+        if (!isCurrent() || next.size() != durations.length || next.getLinkCount() != linkRows.length
+                || !sameTasksAndLinks(next, rows) || earliestStartAfter(next, rows) != projectStart) {
+            return recompute(next);
+        }
+        return new CriticalPath(this, next, rows);
+    }
+
+    public TaskStore getStore() {
+        return store;
+    }
+
+    // False once the store has been changed or reordered since the schedule was computed.
+    public boolean isCurrent() {
+        return store.getModCount() == modCount;
+    }
+
+    /*
+     * Rows whose early dates, duration or late dates differ from the schedule this one
+     * was updated from, in row order; every row for a schedule computed from scratch.
+     * When the project finish moves, late dates and slack of all rows shift with it
+     * without being listed here.
+     */
+    public int[] getChangedRows() {
+        return changedRows.clone();
+    }
+
+    // False for rows on a link cycle or after one; their other values are not meaningful.
+    public boolean isScheduled(int row) {
+        return scheduled[row];
+    }
+
+    public int getDuration(int row) {
+        return durations[row];
+    }
+
+    public int getEarlyStart(int row) {
+        return earlyStart[row];
+    }
+
+    // Last day of the task at its early start; zero-day tasks finish on their start day.
+    public int getEarlyFinish(int row) {
+        return earlyStart[row] + Math.max(durations[row], 1) - 1;
+    }
+
+    public int getLateStart(int row) {
+        return projectEnd - tail[row] - durations[row];
+    }
+
+    public int getLateFinish(int row) {
+        return getLateStart(row) + Math.max(durations[row], 1) - 1;
+    }
+
+    // Days the task can slip without moving the end of the project.
+    public int getSlack(int row) {
+        return getLateStart(row) - earlyStart[row];
+    }
+
+    public boolean isCritical(int row) {
+        return scheduled[row] && getSlack(row) == 0;
+    }
+
+    // The critical tasks ordered by early start, ties in row order.
+    public int[] criticalRows() {
+        int count = 0;
+        for (int row = 0; row < scheduled.length; row++) {
+            if (isCritical(row)) {
+                count++;
+            }
+        }
+        long[] keys = new long[count];
+        count = 0;
+        for (int row = 0; row < scheduled.length; row++) {
+            if (isCritical(row)) {
+                keys[count++] = (long) earlyStart[row] << 32 | row;
+            }
+        }
+        Arrays.sort(keys);
+        int[] rows = new int[count];
+        for (int i = 0; i < count; i++) {
+            rows[i] = (int) keys[i];
+        }
+        return rows;
+    }
+
+    // Rows left unscheduled because they are on a link cycle or after one.
+    public int[] getBlockedRows() {
+        return blockedRows.clone();
+    }
+
+    public int getUnresolvedLinkCount() {
+        return unresolvedLinks;
+    }
+
+    public int getProjectStart() {
+        return projectStart;
+    }
+
+    // Last day of the project; equals the start when nothing lasts a day.
+    public int getProjectFinish() {
+        return Math.max(projectStart, projectEnd - 1);
+    }
+
+    /*
+     * The forward pass again with other durations, for simulations that schedule the
+     * same links many times. Early starts go into starts, which must be as long as the
+     * store; unscheduled rows only get their own start. Nothing is allocated and the
+     * schedule itself is not touched, so threads can call this with their own buffers.
+     * Returns the end of the project, the day after its last finish.
+     */
+    public int forwardPass(int[] durations, int[] starts) {
+        for (int row = 0; row < starts.length; row++) {
+            starts[row] = store.hasStartDay(row) ? store.getStartDay(row) : projectStart;
+        }
+        int end = projectStart;
+        int ordered = order.length - blockedRows.length;
+        for (int i = 0; i < ordered; i++) {
+            int row = order[i];
+            int start = starts[row];
+            int duration = durations[row];
+            end = Math.max(end, start + duration);
+            for (int edge = succStart[row]; edge < succStart[row + 1]; edge++) {
+                int successor = succRows[edge];
+                if (!scheduled[successor]) {
+                    continue;
+                }
+                starts[successor] = Math.max(starts[successor],
+                        startBound(succTypes[edge], start, duration, succLags[edge], durations[successor]));
+            }
+        }
+        return end;
+    }
+
+    // Distance from the row's late finish to the project end, from its successors' distances.
+    private int tailOf(int row) {
+        int rowTail = 0;
+        for (int edge = succStart[row]; edge < succStart[row + 1]; edge++) {
+            int successor = succRows[edge];
+            if (!scheduled[successor]) {
+                continue;
+            }
+            int lag = succLags[edge];
+            int bound;
+            switch (TYPES[succTypes[edge]]) {
+                case SS:
+                    bound = tail[successor] + durations[successor] + lag - durations[row];
+                    break;
+                case FF:
+                    bound = tail[successor] + lag;
+                    break;
+                case SF:
+                    bound = tail[successor] + lag - durations[row];
+                    break;
+                default:
+                    bound = tail[successor] + durations[successor] + lag;
+            }
+            rowTail = Math.max(rowTail, bound);
+        }
+        return rowTail;
+    }
+
+    // Earliest start a link from a predecessor at predecessorStart allows its successor.
+    private static int startBound(int type, int predecessorStart, int predecessorDuration, int lag, int duration) {
+        switch (TYPES[type]) {
+            case SS:
+                return predecessorStart + lag;
+            case FF:
+                return predecessorStart + predecessorDuration + lag - duration;
+            case SF:
+                return predecessorStart + lag - duration;
+            default:
+                return predecessorStart + predecessorDuration + lag;
+        }
+    }
+
+    private static int duration(TaskStore store, int row) {
+        if (store.hasStartDay(row) && store.hasEndDay(row)) {
+            return Math.max(0, store.getEndDay(row) - store.getStartDay(row) + 1);
+        }
+        return 0;
+    }
+
+    private static int earliestStart(TaskStore store) {
+        int earliest = Integer.MAX_VALUE;
+        for (int row = 0; row < store.size(); row++) {
+            if (store.hasStartDay(row)) {
+                earliest = Math.min(earliest, store.getStartDay(row));
+            }
+        }
+        return earliest == Integer.MAX_VALUE ? 0 : earliest;
+    }
+
+    // Rescans the store only when an edited row may have held the earliest start day.
+    private int earliestStartAfter(TaskStore next, int[] rows) {
+        int earliest = projectStart;
+        for (int row : rows) {
+            if (!store.hasStartDay(row) || store.getStartDay(row) == projectStart) {
+                return earliestStart(next);
+            }
+            if (next.hasStartDay(row)) {
+                earliest = Math.min(earliest, next.getStartDay(row));
+            }
+        }
+        return earliest;
+    }
+
+    private boolean sameTasksAndLinks(TaskStore next, int[] rows) {
+        for (int row : rows) {
+            if (row < 0 || row >= durations.length || next.getId(row) != store.getId(row)
+                    || next.getPredecessorCount(row) != store.getPredecessorCount(row)) {
+                return false;
+            }
+            for (int i = 0; i < store.getPredecessorCount(row); i++) {
+                if (next.getPredecessorId(row, i) != store.getPredecessorId(row, i)
+                        || next.getDependencyType(row, i) != store.getDependencyType(row, i)
+                        || next.getLag(row, i) != store.getLag(row, i)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    // A full computation, listing the rows whose meaningful values differ from this schedule's.
+    private CriticalPath recompute(TaskStore next) {
+        CriticalPath path = new CriticalPath(next);
+        if (next.size() != durations.length) {
+            path.changedRows = allRows(next.size());
+            return path;
+        }
+        BitSet changed = new BitSet(durations.length);
+        for (int row = 0; row < durations.length; row++) {
+            if (path.scheduled[row] != scheduled[row] || path.durations[row] != durations[row]
+                    || path.scheduled[row] && (path.earlyStart[row] != earlyStart[row] || path.tail[row] != tail[row])) {
+                changed.set(row);
+            }
+        }
+        path.changedRows = changed.stream().toArray();
+        return path;
+    }
+
+    private static int[] allRows(int size) {
+        int[] rows = new int[size];
+        for (int row = 0; row < size; row++) {
+            rows[row] = row;
+        }
+        return rows;
+    }
+
+    // First row with the id in id order, or -1; links to a duplicated id go to that row.
+    private static int findFirst(TaskStore store, int[] idOrder, int id) {
+        int low = 0;
+        int high = store.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            int midId = store.getId(idOrder != null ? idOrder[mid] : mid);
+            if (midId < id) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        if (low == store.size()) {
+            return -1;
+        }
+        int row = idOrder != null ? idOrder[low] : low;
+        return store.getId(row) == id ? row : -1;
+    }
+
+    /*
+     * Binary heap of topological ranks, smallest first or, when pushed with reverse,
+     * largest first. A rank already waiting in the heap is not pushed again.
+     */
+    private static final class RankQueue {
+        private final BitSet queued;
+        private int[] heap = new int[16];
+        private int size;
+
+        RankQueue(int capacity) {
+            queued = new BitSet(capacity);
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        void clear() {
+            queued.clear();
+            size = 0;
+        }
+
+        void push(int rank, boolean reverse) {
+            if (queued.get(rank)) {
+                return;
+            }
+            queued.set(rank);
+            if (size == heap.length) {
+                heap = Arrays.copyOf(heap, size * 2);
+            }
+            int key = reverse ? ~rank : rank;
+            int at = size++;
+            while (at > 0) {
+                int parent = (at - 1) >>> 1;
+                if (heap[parent] <= key) {
+                    break;
+                }
+                heap[at] = heap[parent];
+                at = parent;
+            }
+            heap[at] = key;
+        }
+
+        int pop() {
+            int top = heap[0];
+            int key = heap[--size];
+            int at = 0;
+            while (true) {
+                int child = 2 * at + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && heap[child + 1] < heap[child]) {
+                    child++;
+                }
+                if (key <= heap[child]) {
+                    break;
+                }
+                heap[at] = heap[child];
+                at = child;
+            }
+            heap[at] = key;
+            return top < 0 ? ~top : top;
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package util;
+
+public enum DiffKind {
+    ADDED,
+    REMOVED,
+    CHANGED
+}
@@ -0,0 +1,33 @@
+package util;
+
+// Shapes a sampled duration can take between a low and a high estimate around the planned one.
+public enum DurationDistribution {
+    FIXED {
+        @Override
+        public double sample(double low, double mode, double high, double u) {
+            return mode;
+        }
+    },
+    UNIFORM {
+        @Override
+        public double sample(double low, double mode, double high, double u) {
+            return low + u * (high - low);
+        }
+    },
+    TRIANGULAR {
+        @Override
+        public double sample(double low, double mode, double high, double u) {
+            double span = high - low;
+            if (span <= 0) {
+                return mode;
+            }
+            if (u * span < mode - low) {
+                return low + Math.sqrt(u * span * (mode - low));
+            }
+            return high - Math.sqrt((1 - u) * span * (high - mode));
+        }
+    };
+
+    // The value at uniform draw u in [0, 1) by inverting the distribution function.
+    public abstract double sample(double low, double mode, double high, double u);
+}
@@ -0,0 +1,364 @@
+package util;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/*
+ * Parent/child index over the rows of a TaskStore, built from containerId.
+ * Children are kept in CSR form: the children of row r are
+ * children[childStart[r]] .. children[childStart[r + 1] - 1], in row order.
+ *
+ * Every container gets a rolled-up span (earliest start, latest end) and the sum
+ * of cost and effort over its subtree, its own values included. Rows are visited
+ * breadth-first from the roots and rolled up level by level from the deepest one;
+ * the rows of one level head independent subtrees, so large levels are split over
+ * a fork-join pool. No step recurses along the tree, so depth is not limited by the
+ * call stack.
+ *
+ * A containerId that matches no row is an orphan and its row is treated as a root.
+ * Rows on a containerId cycle, and rows below them, cannot be rolled up and keep
+ * their own values.
+ */
+public class HierarchyIndex {
+    private static final int PARALLEL_LEVEL_SIZE = 8192;
+    private static final int NO_PARENT = -1;
+
+    private final TaskStore store;
+    private final int modCount;
+    private final int[] idOrder;
+    private final int[] parentRows;
+    private final int[] childStart;
+    private final int[] children;
+    private final int[] orphanRows;
+    private final int[] cycleRows;
+    private final int unreachableCount;
+
+    // Not bitmaps: rows of one level are written from several threads.
+    private final boolean[] hasRolledStart;
+    private final boolean[] hasRolledEnd;
+    private final int[] rolledStart;
+    private final int[] rolledEnd;
+    private final double[] rolledCost;
+    private final double[] rolledEffort;
+
+    private HierarchyIndex(TaskStore store, int parallelism) {
+        this.store = store;
+        this.modCount = store.getModCount();
+        int size = store.size();
+        parentRows = new int[size];
+        childStart = new int[size + 1];
+        children = new int[size];
+
+        idOrder = store.isSortedById() ? null : store.orderById(null);
+        orphanRows = resolveParents();
+
+        for (int row = 0; row < size; row++) {
+            if (parentRows[row] != NO_PARENT) {
+                childStart[parentRows[row] + 1]++;
+            }
+        }
+        for (int row = 0; row < size; row++) {
+            childStart[row + 1] += childStart[row];
+        }
+        int[] next = Arrays.copyOf(childStart, size);
+        for (int row = 0; row < size; row++) {
+            if (parentRows[row] != NO_PARENT) {
+                children[next[parentRows[row]]++] = row;
+            }
+        }
+
+        hasRolledStart = new boolean[size];
+        hasRolledEnd = new boolean[size];
+        rolledStart = new int[size];
+        rolledEnd = new int[size];
+        rolledCost = new double[size];
+        rolledEffort = new double[size];
+        for (int row = 0; row < size; row++) {
+            hasRolledStart[row] = store.hasStartDay(row);
+            hasRolledEnd[row] = store.hasEndDay(row);
+            rolledStart[row] = store.getStartDay(row);
+            rolledEnd[row] = store.getEndDay(row);
+            rolledCost[row] = store.getCost(row);
+            rolledEffort[row] = store.getEffort(row);
+        }
+
+        int[] order = new int[size];
+        int[] levelStart = new int[16];
+        int levels = 0;
+        int visited = 0;
+        for (int row = 0; row < size; row++) {
+            if (parentRows[row] == NO_PARENT) {
+                order[visited++] = row;
+            }
+        }
+        int levelFrom = 0;
+        while (levelFrom < visited) {
+            if (levels + 1 >= levelStart.length) {
+                levelStart = Arrays.copyOf(levelStart, levelStart.length * 2);
+            }
+            levelStart[levels++] = levelFrom;
+            int levelTo = visited;
+            for (int i = levelFrom; i < levelTo; i++) {
+                int row = order[i];
+                for (int c = childStart[row]; c < childStart[row + 1]; c++) {
+                    order[visited++] = children[c];
+                }
+            }
+            levelFrom = levelTo;
+        }
+        levelStart[levels] = visited;
+        unreachableCount = size - visited;
+        cycleRows = unreachableCount > 0 ? findCycles(order, visited) : new int[0];
+
+        rollUp(order, levelStart, levels, parallelism);
+    }
+
+    public static HierarchyIndex build(TaskStore store) {
+        return build(store, 1);
+    }
+
+    public static HierarchyIndex build(TaskStore store, int parallelism) {
+        return new HierarchyIndex(store, Math.max(1, parallelism));
+    }
+
+    public TaskStore getStore() {
+        return store;
+    }
+
+    // False once the store has been changed or reordered since the index was built.
+    public boolean isCurrent() {
+        return store.getModCount() == modCount;
+    }
+
+    // First row with the id in id order, or -1; this is the row children of that id hang under.
+    public int rowOfId(int id) {
+        return findFirst(id);
+    }
+
+    // -1 for top-level rows and orphans.
+    public int getParentRow(int row) {
+        return parentRows[row];
+    }
+
+    public int getChildCount(int row) {
+        return childStart[row + 1] - childStart[row];
+    }
+
+    public int getChildRow(int row, int index) {
+        return children[childStart[row] + index];
+    }
+
+    public int[] childRows(int row) {
+        return Arrays.copyOfRange(children, childStart[row], childStart[row + 1]);
+    }
+
+    public boolean isContainer(int row) {
+        return childStart[row + 1] > childStart[row];
+    }
+
+    // Rows whose containerId matches no row id.
+    public int[] getOrphanRows() {
+        return orphanRows.clone();
+    }
+
+    // Rows whose containerId chain leads back to themselves.
+    public int[] getCycleRows() {
+        return cycleRows.clone();
+    }
+
+    // Rows on a cycle or below one; these are not rolled up.
+    public int getUnreachableCount() {
+        return unreachableCount;
+    }
+
+    public boolean isConsistent() {
+        return orphanRows.length == 0 && unreachableCount == 0;
+    }
+
+    public boolean hasRolledStartDay(int row) {
+        return hasRolledStart[row];
+    }
+
+    public int getRolledStartDay(int row) {
+        return rolledStart[row];
+    }
+
+    public boolean hasRolledEndDay(int row) {
+        return hasRolledEnd[row];
+    }
+
+    public int getRolledEndDay(int row) {
+        return rolledEnd[row];
+    }
+
+    public double getRolledCost(int row) {
+        return rolledCost[row];
+    }
+
+    public double getRolledEffort(int row) {
+        return rolledEffort[row];
+    }
+
+    // A copy of the store in the same row order, with containers carrying their rolled-up values.
+    public TaskStore rolledUpStore() {
+        int size = store.size();
+        TaskStore rolled = new TaskStore(size, store.getDictionary());
+        for (int row = 0; row < size; row++) {
+            rolled.addCoded(store.getId(row), store.getNameCode(row), store.getContainerId(row),
+                    hasRolledStart[row], rolledStart[row], hasRolledEnd[row], rolledEnd[row],
+                    rolledCost[row], rolledEffort[row]);
+            rolled.addPredecessorsOf(store, row);
+        }
+        return rolled;
+    }
+
+    /*
+     * Looks every containerId up among the row ids, using the id order of the store.
+     * With duplicate ids the first row in that order is the parent.
+     */
+    private int[] resolveParents() {
+        int size = store.size();
+        int[] orphans = new int[16];
+        int orphanCount = 0;
+        for (int row = 0; row < size; row++) {
+            int containerId = store.getContainerId(row);
+            if (containerId == 0) {
+                parentRows[row] = NO_PARENT;
+                continue;
+            }
+            int parent = findFirst(containerId);
+            if (parent < 0) {
+                parentRows[row] = NO_PARENT;
+                if (orphanCount == orphans.length) {
+                    orphans = Arrays.copyOf(orphans, orphanCount * 2);
+                }
+                orphans[orphanCount++] = row;
+            } else {
+                parentRows[row] = parent;
+            }
+        }
+        return Arrays.copyOf(orphans, orphanCount);
+    }
+
+    private int findFirst(int id) {
+        int low = 0;
+        int high = store.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            int midId = store.getId(idOrder != null ? idOrder[mid] : mid);
+            if (midId < id) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        if (low == store.size()) {
+            return -1;
+        }
+        int row = idOrder != null ? idOrder[low] : low;
+        return store.getId(row) == id ? row : -1;
+    }
+
+    /*
+     * Rows not reached from a root all have a parent, so following parents from any
+     * of them ends on a cycle. Each walk marks its path with its starting row; meeting
+     * the current path again closes a new cycle, meeting an earlier path does not.
+     */
+    private int[] findCycles(int[] order, int visited) {
+        int size = store.size();
+        int[] walk = new int[size];
+        for (int i = 0; i < visited; i++) {
+            walk[order[i]] = -1;
+        }
+
+        int[] cycles = new int[16];
+        int cycleCount = 0;
+        for (int row = 0; row < size; row++) {
+            if (walk[row] != 0) {
+                continue;
+            }
+            int current = row;
+            while (walk[current] == 0) {
+                walk[current] = row + 1;
+                current = parentRows[current];
+            }
+            if (walk[current] == row + 1) {
+                int member = current;
+                do {
+                    if (cycleCount == cycles.length) {
+                        cycles = Arrays.copyOf(cycles, cycleCount * 2);
+                    }
+                    cycles[cycleCount++] = member;
+                    member = parentRows[member];
+                } while (member != current);
+            }
+        }
+        int[] result = Arrays.copyOf(cycles, cycleCount);
+        Arrays.sort(result);
+        return result;
+    }
+
+    private void rollUp(int[] order, int[] levelStart, int levels, int parallelism) {
+        ForkJoinPool pool = null;
+        try {
+            for (int level = levels - 1; level >= 0; level--) {
+                int from = levelStart[level];
+                int to = levelStart[level + 1];
+                if (parallelism > 1 && to - from >= PARALLEL_LEVEL_SIZE) {
+                    if (pool == null) {
+                        pool = new ForkJoinPool(parallelism);
+                    }
+                    pool.invoke(new LevelTask(order, from, to));
+                } else {
+                    rollUpRange(order, from, to);
+                }
+            }
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
+            }
+        }
+    }
+
+    private void rollUpRange(int[] order, int from, int to) {
+        for (int i = from; i < to; i++) {
+            int row = order[i];
+            for (int c = childStart[row]; c < childStart[row + 1]; c++) {
+                int child = children[c];
+                if (hasRolledStart[child] && (!hasRolledStart[row] || rolledStart[child] < rolledStart[row])) {
+                    rolledStart[row] = rolledStart[child];
+                    hasRolledStart[row] = true;
+                }
+                if (hasRolledEnd[child] && (!hasRolledEnd[row] || rolledEnd[child] > rolledEnd[row])) {
+                    rolledEnd[row] = rolledEnd[child];
+                    hasRolledEnd[row] = true;
+                }
+                rolledCost[row] += rolledCost[child];
+                rolledEffort[row] += rolledEffort[child];
+            }
+        }
+    }
+
+    private final class LevelTask extends RecursiveAction {
+        private final int[] order;
+        private final int from;
+        private final int to;
+
+        LevelTask(int[] order, int from, int to) {
+            this.order = order;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= PARALLEL_LEVEL_SIZE) {
+                rollUpRange(order, from, to);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new LevelTask(order, from, mid), new LevelTask(order, mid, to));
+        }
+    }
+}
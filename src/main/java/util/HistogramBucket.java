@@ -0,0 +1,18 @@
+package util;
+
+// Day numbers carry no calendar, so a month is a block of 30 days from the first day.
+public enum HistogramBucket {
+    DAY(1),
+    WEEK(7),
+    MONTH(30);
+
+    private final int days;
+
+    HistogramBucket(int days) {
+        this.days = days;
+    }
+
+    public int getDays() {
+        return days;
+    }
+}
@@ -0,0 +1,125 @@
+package util;
+
+import java.util.Arrays;
+
+/*
+ * Day-window index over the rows of a TaskStore. Rows with both a start and an end
+ * day are kept sorted by start day, with a max-end segment tree over that order.
+ * A window query binary-searches the last start inside the window and walks only
+ * the tree nodes whose latest end reaches the window, so it costs O(log n) plus
+ * O(log n) per returned row instead of a scan over the whole store.
+ */
+public class IntervalIndex {
+    private final TaskStore store;
+    private final int modCount;
+    private final int[] rows;
+    private final int[] starts;
+    private final int leaves;
+    private final int[] maxEnd;
+
+    private IntervalIndex(TaskStore store) {
+        this.store = store;
+        this.modCount = store.getModCount();
+        int size = store.size();
+        long[] keys = new long[size];
+        int count = 0;
+        for (int row = 0; row < size; row++) {
+            if (store.hasStartDay(row) && store.hasEndDay(row) && store.getStartDay(row) <= store.getEndDay(row)) {
+                keys[count++] = (long) store.getStartDay(row) << 32 | row;
+            }
+        }
+        Arrays.sort(keys, 0, count);
+
+        rows = new int[count];
+        starts = new int[count];
+        int width = 1;
+        while (width < count) {
+            width <<= 1;
+        }
+        leaves = width;
+        maxEnd = new int[2 * leaves];
+        Arrays.fill(maxEnd, Integer.MIN_VALUE);
+        for (int i = 0; i < count; i++) {
+            int row = (int) keys[i];
+            rows[i] = row;
+            starts[i] = store.getStartDay(row);
+            maxEnd[leaves + i] = store.getEndDay(row);
+        }
+        for (int node = leaves - 1; node > 0; node--) {
+            maxEnd[node] = Math.max(maxEnd[2 * node], maxEnd[2 * node + 1]);
+        }
+    }
+
+    public static IntervalIndex build(TaskStore store) {
+        return new IntervalIndex(store);
+    }
+
+    public TaskStore getStore() {
+        return store;
+    }
+
+    // False once the store has been changed or reordered since the index was built.
+    public boolean isCurrent() {
+        return store.getModCount() == modCount;
+    }
+
+    /*
+     * Rows active on at least one day of [firstDay, lastDay], both included, in store
+     * order. Rows missing a start or end day are never active.
+     */
+    public int[] activeRows(int firstDay, int lastDay) {
+        if (firstDay > lastDay || rows.length == 0) {
+            return new int[0];
+        }
+        int startsInWindow = upperBound(lastDay);
+        int[] found = new int[16];
+        int count = 0;
+        int[] pending = new int[64];
+        int top = 0;
+        pending[top++] = 1;
+        while (top > 0) {
+            int node = pending[--top];
+            if (maxEnd[node] < firstDay || firstLeaf(node) >= startsInWindow) {
+                continue;
+            }
+            if (node >= leaves) {
+                if (count == found.length) {
+                    found = Arrays.copyOf(found, count * 2);
+                }
+                found[count++] = rows[node - leaves];
+                continue;
+            }
+            if (top + 2 > pending.length) {
+                pending = Arrays.copyOf(pending, pending.length * 2);
+            }
+            pending[top++] = 2 * node + 1;
+            pending[top++] = 2 * node;
+        }
+        int[] result = Arrays.copyOf(found, count);
+        Arrays.sort(result);
+        return result;
+    }
+
+    public int[] activeRows(int day) {
+        return activeRows(day, day);
+    }
+
+    private int firstLeaf(int node) {
+        return (node << (Integer.numberOfLeadingZeros(node) - Integer.numberOfLeadingZeros(leaves))) - leaves;
+    }
+
+    // Number of indexed rows starting on or before day.
+    private int upperBound(int day) {
+        int low = 0;
+        int high = starts.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (starts[mid] <= day) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
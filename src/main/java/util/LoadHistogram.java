@@ -0,0 +1,218 @@
+package util;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/*
+ * Effort and cost per day over the project span. Each task's effort and cost are
+ * spread evenly over its days startDay..endDay with a difference array: the daily
+ * share is added at the start day and taken off the day after the end, and one
+ * prefix sum turns the differences into daily totals. That costs O(tasks + days)
+ * instead of touching every day of every task.
+ *
+ * With parallelism above one, slices of the rows fill partial difference arrays on
+ * a fork-join pool and the partials are added together at the end; slices are sized
+ * so there are only about as many as threads, which keeps merging at O(threads x days).
+ *
+ * Tasks without both days, or ending before they start, add nothing.
+ */
+public class LoadHistogram {
+    private static final int PARALLEL_BATCH = 65536;
+
+    private final int firstDay;
+    private final int lastDay;
+    private final int bucketDays;
+    private final double[] effort;
+    private final double[] cost;
+
+    private LoadHistogram(int firstDay, int lastDay, int bucketDays, double[] effort, double[] cost) {
+        this.firstDay = firstDay;
+        this.lastDay = lastDay;
+        this.bucketDays = bucketDays;
+        this.effort = effort;
+        this.cost = cost;
+    }
+
+    public static LoadHistogram compute(TaskStore store, int parallelism) {
+        return compute(store, null, parallelism);
+    }
+
+    // Daily totals over the given store rows, or over every row when rows is null.
+    public static LoadHistogram compute(TaskStore store, int[] rows, int parallelism) {
+        int count = rows != null ? rows.length : store.size();
+        boolean any = false;
+        int first = 0;
+        int last = 0;
+        for (int i = 0; i < count; i++) {
+            int row = rows != null ? rows[i] : i;
+            if (spans(store, row)) {
+                first = any ? Math.min(first, store.getStartDay(row)) : store.getStartDay(row);
+                last = any ? Math.max(last, store.getEndDay(row)) : store.getEndDay(row);
+                any = true;
+            }
+        }
+        if (!any) {
+            return new LoadHistogram(0, -1, 1, new double[0], new double[0]);
+        }
+
+        int days = last - first + 1;
+        Partial total;
+        int batch = Math.max(PARALLEL_BATCH, (count + parallelism - 1) / Math.max(1, parallelism));
+        if (parallelism > 1 && count > batch) {
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                total = pool.invoke(new SpreadTask(store, rows, 0, count, first, days, batch));
+            } finally {
+                pool.shutdown();
+            }
+        } else {
+            total = spread(store, rows, 0, count, first, days);
+        }
+        return new LoadHistogram(first, last, 1, prefixSums(total.effort, days), prefixSums(total.cost, days));
+    }
+
+    // Totals over consecutive blocks of the bucket's length, starting at the first day.
+    public LoadHistogram bucketed(HistogramBucket bucket) {
+        return bucketed(bucket.getDays());
+    }
+
+    public LoadHistogram bucketed(int days) {
+        if (bucketDays != 1) {
+            throw new IllegalStateException("Only a daily histogram can be bucketed");
+        }
+        if (days <= 1) {
+            return this;
+        }
+        int buckets = (effort.length + days - 1) / days;
+        double[] bucketEffort = new double[buckets];
+        double[] bucketCost = new double[buckets];
+        for (int day = 0; day < effort.length; day++) {
+            bucketEffort[day / days] += effort[day];
+            bucketCost[day / days] += cost[day];
+        }
+        return new LoadHistogram(firstDay, lastDay, days, bucketEffort, bucketCost);
+    }
+
+    public int getBucketCount() {
+        return effort.length;
+    }
+
+    public int getBucketDays() {
+        return bucketDays;
+    }
+
+    public int getFirstDay() {
+        return firstDay;
+    }
+
+    public int getLastDay() {
+        return lastDay;
+    }
+
+    public int getBucketStartDay(int bucket) {
+        return firstDay + bucket * bucketDays;
+    }
+
+    // The last bucket stops at the last day of the span.
+    public int getBucketEndDay(int bucket) {
+        return Math.min(lastDay, getBucketStartDay(bucket) + bucketDays - 1);
+    }
+
+    public double getEffort(int bucket) {
+        return effort[bucket];
+    }
+
+    public double getCost(int bucket) {
+        return cost[bucket];
+    }
+
+    private static boolean spans(TaskStore store, int row) {
+        return store.hasStartDay(row) && store.hasEndDay(row) && store.getEndDay(row) >= store.getStartDay(row);
+    }
+
+    private static Partial spread(TaskStore store, int[] rows, int from, int to, int first, int days) {
+        Partial partial = new Partial(days);
+        for (int i = from; i < to; i++) {
+            int row = rows != null ? rows[i] : i;
+            if (!spans(store, row)) {
+                continue;
+            }
+            int start = store.getStartDay(row) - first;
+            int end = store.getEndDay(row) - first + 1;
+            double length = end - start;
+            double dailyEffort = store.getEffort(row) / length;
+            double dailyCost = store.getCost(row) / length;
+            partial.effort[start] += dailyEffort;
+            partial.effort[end] -= dailyEffort;
+            partial.cost[start] += dailyCost;
+            partial.cost[end] -= dailyCost;
+        }
+        return partial;
+    }
+
+    // Compensated running sum, so long spans do not leave rounding residue on idle days.
+    private static double[] prefixSums(double[] differences, int days) {
+        double[] totals = new double[days];
+        double sum = 0;
+        double error = 0;
+        for (int day = 0; day < days; day++) {
+            double term = differences[day] - error;
+            double next = sum + term;
+            error = (next - sum) - term;
+            sum = next;
+            totals[day] = sum;
+        }
+        return totals;
+    }
+
+    // Difference arrays with one slot past the last day for ends on the last day.
+    private static final class Partial {
+        final double[] effort;
+        final double[] cost;
+
+        Partial(int days) {
+            effort = new double[days + 1];
+            cost = new double[days + 1];
+        }
+
+        Partial add(Partial other) {
+            for (int day = 0; day < effort.length; day++) {
+                effort[day] += other.effort[day];
+                cost[day] += other.cost[day];
+            }
+            return this;
+        }
+    }
+
+    private static final class SpreadTask extends RecursiveTask<Partial> {
+        private final TaskStore store;
+        private final int[] rows;
+        private final int from;
+        private final int to;
+        private final int first;
+        private final int days;
+        private final int batch;
+
+        SpreadTask(TaskStore store, int[] rows, int from, int to, int first, int days, int batch) {
+            this.store = store;
+            this.rows = rows;
+            this.from = from;
+            this.to = to;
+            this.first = first;
+            this.days = days;
+            this.batch = batch;
+        }
+
+        @Override
+        protected Partial compute() {
+            if (to - from <= batch) {
+                return spread(store, rows, from, to, first, days);
+            }
+            int mid = (from + to) >>> 1;
+            SpreadTask right = new SpreadTask(store, rows, mid, to, first, days, batch);
+            right.fork();
+            Partial left = new SpreadTask(store, rows, from, mid, first, days, batch).compute();
+            return left.add(right.join());
+        }
+    }
+}
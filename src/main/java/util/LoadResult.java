@@ -0,0 +1,130 @@
+package util;
+
+import dom.gantt.TaskAbstract;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Function;
+
+/*
+ * Outcome of a load: the task count, a few statistics gathered in one pass and the
+ * task descriptions, which are only formatted while someone iterates them.
+ */
+public class LoadResult {
+    private final int taskCount;
+    private final int topLevelCount;
+    private final Integer firstDay;
+    private final Integer lastDay;
+    private final double totalCost;
+    private final double totalEffort;
+    private final Iterable<String> descriptions;
+
+    private LoadResult(int taskCount, int topLevelCount, Integer firstDay, Integer lastDay, double totalCost,
+                       double totalEffort, Iterable<String> descriptions) {
+        this.taskCount = taskCount;
+        this.topLevelCount = topLevelCount;
+        this.firstDay = firstDay;
+        this.lastDay = lastDay;
+        this.totalCost = totalCost;
+        this.totalEffort = totalEffort;
+        this.descriptions = descriptions;
+    }
+
+    public static LoadResult forTasks(TaskStore tasks) {
+        int topLevelCount = 0;
+        Integer firstDay = null;
+        Integer lastDay = null;
+        double totalCost = 0;
+        double totalEffort = 0;
+        for (int row = 0; row < tasks.size(); row++) {
+            if (tasks.isTopLevel(row)) {
+                topLevelCount++;
+            }
+            if (tasks.hasStartDay(row) && (firstDay == null || tasks.getStartDay(row) < firstDay)) {
+                firstDay = tasks.getStartDay(row);
+            }
+            if (tasks.hasEndDay(row) && (lastDay == null || tasks.getEndDay(row) > lastDay)) {
+                lastDay = tasks.getEndDay(row);
+            }
+            totalCost += tasks.getCost(row);
+            totalEffort += tasks.getEffort(row);
+        }
+        return new LoadResult(tasks.size(), topLevelCount, firstDay, lastDay, totalCost, totalEffort,
+                new LazyDescriptions<>(tasks.asList(), TaskAbstract::toString));
+    }
+
+    // For loaders that produce descriptions directly and keep no tasks to summarize.
+    public static LoadResult forDescriptions(List<String> descriptions) {
+        return new LoadResult(descriptions.size(), 0, null, null, 0, 0, Collections.unmodifiableList(descriptions));
+    }
+
+    public int getTaskCount() {
+        return taskCount;
+    }
+
+    public int getTopLevelCount() {
+        return topLevelCount;
+    }
+
+    public Integer getFirstDay() {
+        return firstDay;
+    }
+
+    public Integer getLastDay() {
+        return lastDay;
+    }
+
+    public double getTotalCost() {
+        return totalCost;
+    }
+
+    public double getTotalEffort() {
+        return totalEffort;
+    }
+
+    public Iterable<String> getDescriptions() {
+        return descriptions;
+    }
+
+    public List<String> toDescriptionList() {
+        List<String> list = new ArrayList<>(taskCount);
+        for (String description : descriptions) {
+            list.add(description);
+        }
+        return list;
+    }
+
+    @Override
+    public String toString() {
+        return "LoadResult{tasks=" + taskCount + ", topLevel=" + topLevelCount + ", firstDay=" + firstDay
+                + ", lastDay=" + lastDay + ", totalCost=" + totalCost + ", totalEffort=" + totalEffort + "}";
+    }
+
+    private static final class LazyDescriptions<T> implements Iterable<String> {
+        private final List<T> items;
+        private final Function<T, String> formatter;
+
+        LazyDescriptions(List<T> items, Function<T, String> formatter) {
+            this.items = items;
+            this.formatter = formatter;
+        }
+
+        @Override
+        public Iterator<String> iterator() {
+            Iterator<T> source = items.iterator();
+            return new Iterator<String>() {
+                @Override
+                public boolean hasNext() {
+                    return source.hasNext();
+                }
+
+                @Override
+                public String next() {
+                    return formatter.apply(source.next());
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package util;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Objects;
+
+/*
+ * Interning pool for task names. Every distinct name is stored once and known by a
+ * dense int code in first-seen order. Scanners can look names up by their UTF-8
+ * bytes, so a repeated name costs a hash probe instead of a String decode.
+ *
+ * Interning is synchronized, so scanners on several threads can share one dictionary;
+ * a name already present costs one hash probe under the lock. Readers on other threads
+ * may look names up without it: a name is stored before the size that covers it is
+ * published, so any code below size() reads back its name.
+ */
+public class NameDictionary {
+    private static final int INITIAL_CAPACITY = 64;
+
+    private volatile String[] names = new String[INITIAL_CAPACITY];
+    private byte[][] encoded = new byte[INITIAL_CAPACITY][];
+    private volatile int size;
+
+    // Open addressing tables holding code + 1, 0 marks an empty slot.
+    private int[] stringSlots = new int[INITIAL_CAPACITY * 2];
+    private int[] byteSlots = new int[INITIAL_CAPACITY * 2];
+    private int byteEntries;
+
+    public synchronized int intern(String name) {
+        int hash = spread(Objects.hashCode(name));
+        int mask = stringSlots.length - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int entry = stringSlots[slot];
+            if (entry == 0) {
+                int code = append(name);
+                stringSlots[slot] = code + 1;
+                if (size * 2 > stringSlots.length) {
+                    stringSlots = rehashStrings(stringSlots.length * 2);
+                }
+                return code;
+            }
+            if (Objects.equals(names[entry - 1], name)) {
+                return entry - 1;
+            }
+        }
+    }
+
+    public synchronized int internUtf8(ByteBuffer source, int offset, int length) {
+        int hash = 1;
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + source.get(i);
+        }
+        hash = spread(hash);
+        int mask = byteSlots.length - 1;
+        int slot = hash & mask;
+        for (; byteSlots[slot] != 0; slot = (slot + 1) & mask) {
+            byte[] candidate = encoded[byteSlots[slot] - 1];
+            if (candidate.length == length && sameBytes(candidate, source, offset)) {
+                return byteSlots[slot] - 1;
+            }
+        }
+
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = source.get(offset + i);
+        }
+        int code = intern(new String(bytes, StandardCharsets.UTF_8));
+        if (encoded[code] == null) {
+            encoded[code] = bytes;
+            byteSlots[slot] = code + 1;
+            if (++byteEntries * 2 > byteSlots.length) {
+                byteSlots = rehashBytes(byteSlots.length * 2);
+            }
+        }
+        return code;
+    }
+
+    public String name(int code) {
+        return names[code];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Position of each code when the distinct names are sorted; null sorts first.
+    public int[] sortedRanks() {
+        int size = this.size;
+        String[] names = this.names;
+        Integer[] codes = new Integer[size];
+        for (int code = 0; code < size; code++) {
+            codes[code] = code;
+        }
+        Arrays.sort(codes, Comparator.comparing((Integer code) -> names[code], Comparator.nullsFirst(Comparator.naturalOrder())));
+        int[] ranks = new int[size];
+        for (int rank = 0; rank < size; rank++) {
+            ranks[codes[rank]] = rank;
+        }
+        return ranks;
+    }
+
+    private int append(String name) {
+        if (size == names.length) {
+            names = Arrays.copyOf(names, size * 2);
+            encoded = Arrays.copyOf(encoded, size * 2);
+        }
+        int code = size;
+        names[code] = name;
+        size = code + 1;
+        return code;
+    }
+
+    private boolean sameBytes(byte[] candidate, ByteBuffer source, int offset) {
+        for (int i = 0; i < candidate.length; i++) {
+            if (candidate[i] != source.get(offset + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int[] rehashStrings(int capacity) {
+        int[] slots = new int[capacity];
+        int mask = capacity - 1;
+        for (int code = 0; code < size; code++) {
+            int slot = spread(Objects.hashCode(names[code])) & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = code + 1;
+        }
+        return slots;
+    }
+
+    private int[] rehashBytes(int capacity) {
+        int[] slots = new int[capacity];
+        int mask = capacity - 1;
+        for (int code = 0; code < size; code++) {
+            byte[] bytes = encoded[code];
+            if (bytes == null) {
+                continue;
+            }
+            int slot = spread(Arrays.hashCode(bytes)) & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = code + 1;
+        }
+        return slots;
+    }
+
+    private static int spread(int hash) {
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,261 @@
+package util;
+
+import dom.gantt.TaskAbstract;
+
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/*
+ * Trigram index for case- and accent-insensitive substring search over task names.
+ * Names are folded once per distinct dictionary name: decomposed, stripped of
+ * combining marks and lower-cased, with the Greek final sigma folded to sigma, so
+ * "Έλεγχος" and "ελεγχος" match each other. Each trigram of a folded name points at
+ * the dictionary codes that contain it; a search takes the shortest posting list of
+ * its trigrams and checks those names, and fragments under three characters check
+ * every distinct name.
+ *
+ * The dictionary only grows, so update() indexes the names added since the last call
+ * and leaves the rest alone. Matching codes are turned into rows through a code to
+ * row table that is rebuilt, in one counting pass, when the store has changed.
+ *
+ * The trigram terms belong to the dictionary rather than the store: forStore() gives
+ * a later project version over the same dictionary its own row table while both
+ * versions keep sharing, and growing, the same terms.
+ */
+public class NameSearchIndex {
+    private static final int FOLD_BATCH = 4096;
+
+    private final TaskStore store;
+    private final Terms terms;
+
+    private int rowsModCount = -1;
+    private int[] codeStart;
+    private int[] codeRows;
+
+    private NameSearchIndex(TaskStore store, Terms terms) {
+        this.store = store;
+        this.terms = terms;
+    }
+
+    public static NameSearchIndex build(TaskStore store) {
+        NameSearchIndex index = new NameSearchIndex(store, new Terms(store.getDictionary()));
+        index.update();
+        return index;
+    }
+
+    // An index over another store that keeps the terms when both stores share a dictionary.
+    public NameSearchIndex forStore(TaskStore other) {
+        if (other.getDictionary() != terms.dictionary) {
+            return build(other);
+        }
+        return new NameSearchIndex(other, terms);
+    }
+
+    public TaskStore getStore() {
+        return store;
+    }
+
+    // Indexes names interned since the last update; returns how many were added.
+    public int update() {
+        return terms.update();
+    }
+
+    // Reload keeps the dictionary, so a delta only brings new names to index.
+    public int apply(TaskDelta delta) {
+        return delta.isEmpty() ? 0 : update();
+    }
+
+    // Tasks whose name contains the fragment, ignoring case and accents, in id order.
+    public synchronized List<TaskAbstract> search(String fragment) {
+        return store.view(matchingRows(fragment));
+    }
+
+    public synchronized int[] searchIds(String fragment) {
+        int[] rows = matchingRows(fragment);
+        int[] ids = new int[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            ids[i] = store.getId(rows[i]);
+        }
+        return ids;
+    }
+
+    public static String fold(String text) {
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        StringBuilder result = new StringBuilder(decomposed.length());
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            int type = Character.getType(c);
+            if (type == Character.NON_SPACING_MARK || type == Character.COMBINING_SPACING_MARK
+                    || type == Character.ENCLOSING_MARK) {
+                continue;
+            }
+            c = Character.toLowerCase(c);
+            result.append(c == 'ς' ? 'σ' : c);
+        }
+        return result.toString();
+    }
+
+    private int[] matchingRows(String fragment) {
+        boolean[] matches = terms.matchingCodes(fold(fragment));
+        if (matches == null) {
+            return new int[0];
+        }
+
+        refreshRows(matches.length);
+        int count = 0;
+        for (int code = 0; code < matches.length; code++) {
+            if (matches[code]) {
+                count += codeStart[code + 1] - codeStart[code];
+            }
+        }
+        int[] rows = new int[count];
+        int next = 0;
+        for (int code = 0; code < matches.length; code++) {
+            if (matches[code]) {
+                for (int i = codeStart[code]; i < codeStart[code + 1]; i++) {
+                    rows[next++] = codeRows[i];
+                }
+            }
+        }
+        Arrays.sort(rows);
+        return store.orderById(rows);
+    }
+
+    private void refreshRows(int codeCount) {
+        if (rowsModCount == store.getModCount() && codeStart.length == codeCount + 1) {
+            return;
+        }
+        int size = store.size();
+        codeStart = new int[codeCount + 1];
+        for (int row = 0; row < size; row++) {
+            codeStart[store.getNameCode(row) + 1]++;
+        }
+        for (int code = 0; code < codeCount; code++) {
+            codeStart[code + 1] += codeStart[code];
+        }
+        int[] next = Arrays.copyOf(codeStart, codeCount);
+        codeRows = new int[size];
+        for (int row = 0; row < size; row++) {
+            codeRows[next[store.getNameCode(row)]++] = row;
+        }
+        rowsModCount = store.getModCount();
+    }
+
+    private static long trigram(String text, int at) {
+        return (long) text.charAt(at) << 32 | (long) text.charAt(at + 1) << 16 | text.charAt(at + 2);
+    }
+
+    // Codes are appended in increasing order, so a list stays sorted and free of repeats.
+    private static final class Postings {
+        int[] codes = new int[4];
+        int size;
+
+        void add(int code) {
+            if (size > 0 && codes[size - 1] == code) {
+                return;
+            }
+            if (size == codes.length) {
+                codes = Arrays.copyOf(codes, size * 2);
+            }
+            codes[size++] = code;
+        }
+    }
+
+    // Folded names and their trigram postings, shared by every index over one dictionary.
+    private static final class Terms {
+        private final NameDictionary dictionary;
+        private final Map<Long, Postings> postings = new HashMap<>();
+        private String[] folded = new String[0];
+        private int indexedCount;
+
+        Terms(NameDictionary dictionary) {
+            this.dictionary = dictionary;
+        }
+
+        synchronized int update() {
+            int size = dictionary.size();
+            if (size == indexedCount) {
+                return 0;
+            }
+            int from = indexedCount;
+            folded = Arrays.copyOf(folded, size);
+            ForkJoinPool.commonPool().invoke(new FoldTask(dictionary, folded, from, size));
+            for (int code = from; code < size; code++) {
+                String name = folded[code];
+                if (name == null) {
+                    continue;
+                }
+                for (int i = 0; i + 3 <= name.length(); i++) {
+                    long key = trigram(name, i);
+                    Postings list = postings.get(key);
+                    if (list == null) {
+                        list = new Postings();
+                        postings.put(key, list);
+                    }
+                    list.add(code);
+                }
+            }
+            indexedCount = size;
+            return size - from;
+        }
+
+        // One flag per indexed code, or null when some trigram of the needle occurs nowhere.
+        synchronized boolean[] matchingCodes(String needle) {
+            update();
+            boolean[] matches = new boolean[indexedCount];
+            if (needle.length() < 3) {
+                for (int code = 0; code < indexedCount; code++) {
+                    matches[code] = folded[code] != null && folded[code].contains(needle);
+                }
+                return matches;
+            }
+            Postings shortest = null;
+            for (int i = 0; i + 3 <= needle.length(); i++) {
+                Postings list = postings.get(trigram(needle, i));
+                if (list == null) {
+                    return null;
+                }
+                if (shortest == null || list.size < shortest.size) {
+                    shortest = list;
+                }
+            }
+            for (int i = 0; i < shortest.size; i++) {
+                int code = shortest.codes[i];
+                matches[code] = folded[code].contains(needle);
+            }
+            return matches;
+        }
+    }
+
+    private static final class FoldTask extends RecursiveAction {
+        private final NameDictionary dictionary;
+        private final String[] folded;
+        private final int from;
+        private final int to;
+
+        FoldTask(NameDictionary dictionary, String[] folded, int from, int to) {
+            this.dictionary = dictionary;
+            this.folded = folded;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > FOLD_BATCH) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new FoldTask(dictionary, folded, from, mid), new FoldTask(dictionary, folded, mid, to));
+                return;
+            }
+            for (int code = from; code < to; code++) {
+                String name = dictionary.name(code);
+                folded[code] = name != null ? fold(name) : null;
+            }
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package util;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+ * The project calendar and the calendars of containers that work differently. A
+ * container's calendar applies to the container and its subtree, down to any
+ * container below it with a calendar of its own; every other task follows the
+ * project calendar. All calendars are expected to share the project start date.
+ */
+public class ProjectCalendars {
+    private final WorkCalendar projectCalendar;
+    private final Map<Integer, WorkCalendar> containerCalendars = new HashMap<>();
+
+    public ProjectCalendars(WorkCalendar projectCalendar) {
+        this.projectCalendar = projectCalendar;
+    }
+
+    public void setContainerCalendar(int containerId, WorkCalendar calendar) {
+        if (calendar == null) {
+            containerCalendars.remove(containerId);
+        } else {
+            containerCalendars.put(containerId, calendar);
+        }
+    }
+
+    public WorkCalendar getProjectCalendar() {
+        return projectCalendar;
+    }
+
+    // Null when the container follows the calendar of the containers above it.
+    public WorkCalendar getContainerCalendar(int containerId) {
+        return containerCalendars.get(containerId);
+    }
+
+    // The same assignments with every calendar spanning at least from..to.
+    public ProjectCalendars covering(int from, int to) {
+        ProjectCalendars wider = new ProjectCalendars(projectCalendar.covering(from, to));
+        for (Map.Entry<Integer, WorkCalendar> entry : containerCalendars.entrySet()) {
+            wider.containerCalendars.put(entry.getKey(), entry.getValue().covering(from, to));
+        }
+        return wider;
+    }
+
+    /*
+     * The calendar of every row of the hierarchy's store, handed down breadth-first
+     * from the roots so each row is looked up once. Rows on a containerId cycle are
+     * not reached from a root and follow the project calendar.
+     */
+    public WorkCalendar[] calendarsByRow(HierarchyIndex hierarchy) {
+        TaskStore store = hierarchy.getStore();
+        int size = store.size();
+        WorkCalendar[] calendars = new WorkCalendar[size];
+        int[] queue = new int[size];
+        int queued = 0;
+        for (int row = 0; row < size; row++) {
+            calendars[row] = projectCalendar;
+            if (hierarchy.getParentRow(row) < 0) {
+                queue[queued++] = row;
+            }
+        }
+        for (int head = 0; head < queued; head++) {
+            int row = queue[head];
+            WorkCalendar own = containerCalendars.get(store.getId(row));
+            if (own != null) {
+                calendars[row] = own;
+            } else if (hierarchy.getParentRow(row) >= 0) {
+                calendars[row] = calendars[hierarchy.getParentRow(row)];
+            }
+            for (int c = 0; c < hierarchy.getChildCount(row); c++) {
+                queue[queued++] = hierarchy.getChildRow(row, c);
+            }
+        }
+        return calendars;
+    }
+}
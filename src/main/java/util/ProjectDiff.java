@@ -0,0 +1,196 @@
+package util;
+
+import java.util.Arrays;
+
+/*
+ * Differences between a baseline and a current version of a project, joined on task
+ * id. Both stores are walked once in id order, the way a sort-merge join does; a
+ * store that is not id-sorted is sorted as a copy first. Ids found only in the
+ * current store are added, ids found only in the baseline are removed, and ids in
+ * both whose rows differ in any field are changed. Repeated ids are paired in the
+ * order they appear.
+ *
+ * Only the differences are kept, as parallel arrays of baseline and current rows
+ * with -1 on the side a task is missing from. Slippage is current minus baseline in
+ * days, and only exists when both sides have the day; cost and effort deltas count
+ * a missing side as zero.
+ */
+public class ProjectDiff {
+    private static final DiffKind[] KINDS = DiffKind.values();
+
+    private final TaskStore baseline;
+    private final TaskStore current;
+    private int size;
+    private byte[] kinds;
+    private int[] baselineRows;
+    private int[] currentRows;
+    private int addedCount;
+    private int removedCount;
+    private int changedCount;
+    private int unchangedCount;
+    private double costDelta;
+    private double effortDelta;
+
+    private ProjectDiff(TaskStore baseline, TaskStore current) {
+        this.baseline = baseline;
+        this.current = current;
+        int capacity = 16;
+        kinds = new byte[capacity];
+        baselineRows = new int[capacity];
+        currentRows = new int[capacity];
+    }
+
+    public static ProjectDiff compare(TaskStore baseline, TaskStore current) {
+        ProjectDiff diff = new ProjectDiff(sortedById(baseline), sortedById(current));
+        diff.merge();
+        return diff;
+    }
+
+    private static TaskStore sortedById(TaskStore store) {
+        if (store.isSortedById()) {
+            return store;
+        }
+        TaskStore sorted = store.copy();
+        sorted.sortById();
+        return sorted;
+    }
+
+    private void merge() {
+        int i = 0;
+        int j = 0;
+        while (i < baseline.size() || j < current.size()) {
+            if (j == current.size() || (i < baseline.size() && baseline.getId(i) < current.getId(j))) {
+                append(DiffKind.REMOVED, i++, -1);
+                removedCount++;
+            } else if (i == baseline.size() || current.getId(j) < baseline.getId(i)) {
+                append(DiffKind.ADDED, -1, j++);
+                addedCount++;
+            } else if (TaskDelta.sameRow(baseline, i++, current, j++)) {
+                unchangedCount++;
+            } else {
+                append(DiffKind.CHANGED, i - 1, j - 1);
+                changedCount++;
+            }
+        }
+        for (int entry = 0; entry < size; entry++) {
+            costDelta += getCostDelta(entry);
+            effortDelta += getEffortDelta(entry);
+        }
+    }
+
+    private void append(DiffKind kind, int baselineRow, int currentRow) {
+        if (size == kinds.length) {
+            int capacity = size * 2;
+            kinds = Arrays.copyOf(kinds, capacity);
+            baselineRows = Arrays.copyOf(baselineRows, capacity);
+            currentRows = Arrays.copyOf(currentRows, capacity);
+        }
+        kinds[size] = (byte) kind.ordinal();
+        baselineRows[size] = baselineRow;
+        currentRows[size] = currentRow;
+        size++;
+    }
+
+    public TaskStore getBaseline() {
+        return baseline;
+    }
+
+    public TaskStore getCurrent() {
+        return current;
+    }
+
+    // Number of differences, in id order; unchanged tasks are only counted.
+    public int size() {
+        return size;
+    }
+
+    public DiffKind getKind(int entry) {
+        return KINDS[kinds[entry]];
+    }
+
+    public int getId(int entry) {
+        return currentRows[entry] >= 0 ? current.getId(currentRows[entry]) : baseline.getId(baselineRows[entry]);
+    }
+
+    // The current name, or the baseline one for a removed task.
+    public String getName(int entry) {
+        return currentRows[entry] >= 0 ? current.getName(currentRows[entry]) : baseline.getName(baselineRows[entry]);
+    }
+
+    // -1 for an added task.
+    public int getBaselineRow(int entry) {
+        return baselineRows[entry];
+    }
+
+    // -1 for a removed task.
+    public int getCurrentRow(int entry) {
+        return currentRows[entry];
+    }
+
+    public boolean hasStartSlip(int entry) {
+        int b = baselineRows[entry];
+        int c = currentRows[entry];
+        return b >= 0 && c >= 0 && baseline.hasStartDay(b) && current.hasStartDay(c);
+    }
+
+    // Only meaningful when hasStartSlip(entry) is true; positive when the task starts later.
+    public int getStartSlip(int entry) {
+        return current.getStartDay(currentRows[entry]) - baseline.getStartDay(baselineRows[entry]);
+    }
+
+    public boolean hasEndSlip(int entry) {
+        int b = baselineRows[entry];
+        int c = currentRows[entry];
+        return b >= 0 && c >= 0 && baseline.hasEndDay(b) && current.hasEndDay(c);
+    }
+
+    // Only meaningful when hasEndSlip(entry) is true; positive when the task ends later.
+    public int getEndSlip(int entry) {
+        return current.getEndDay(currentRows[entry]) - baseline.getEndDay(baselineRows[entry]);
+    }
+
+    public double getCostDelta(int entry) {
+        return (currentRows[entry] >= 0 ? current.getCost(currentRows[entry]) : 0)
+                - (baselineRows[entry] >= 0 ? baseline.getCost(baselineRows[entry]) : 0);
+    }
+
+    public double getEffortDelta(int entry) {
+        return (currentRows[entry] >= 0 ? current.getEffort(currentRows[entry]) : 0)
+                - (baselineRows[entry] >= 0 ? baseline.getEffort(baselineRows[entry]) : 0);
+    }
+
+    public int getAddedCount() {
+        return addedCount;
+    }
+
+    public int getRemovedCount() {
+        return removedCount;
+    }
+
+    public int getChangedCount() {
+        return changedCount;
+    }
+
+    public int getUnchangedCount() {
+        return unchangedCount;
+    }
+
+    // Net change over all differences, current minus baseline.
+    public double getCostDelta() {
+        return costDelta;
+    }
+
+    public double getEffortDelta() {
+        return effortDelta;
+    }
+
+    @Override
+    public String toString() {
+        return "ProjectDiff{" +
+                "added=" + addedCount +
+                ", removed=" + removedCount +
+                ", changed=" + changedCount +
+                ", unchanged=" + unchangedCount +
+                '}';
+    }
+}
@@ -1,18 +1,33 @@
 package util;
 
 import dom.gantt.TaskAbstract;
-import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Locale;
 
+/*
+ * A loaded project. Once published to other threads a ProjectInfo is a snapshot: its
+ * store is fixed when it is built, a reload publishes nextVersion() instead, and the
+ * sort methods return a version over a sorted copy for the controller to publish.
+ * Indexes are built lazily by whichever reader needs them first; two readers may
+ * both build one, and either result is kept.
+ */
 public class ProjectInfo {
     private String targetPath;
     private FileTypes fileType;
-    private List<TaskAbstract> tasks;
+    private long version;
+    private final TaskStore store;
+    private volatile HierarchyIndex hierarchy;
+    private volatile IntervalIndex intervals;
+    private volatile SortOrders sortOrders;
+    private volatile NameSearchIndex nameSearch;
+    private volatile CriticalPath schedule;
 
     public ProjectInfo() {
-        this.tasks = new ArrayList<>();
+        this(new TaskStore());
+    }
+
+    public ProjectInfo(TaskStore store) {
+        this.store = store;
     }
 
     public void setTargetPath(String targetPath) {
@@ -31,31 +46,151 @@ public class ProjectInfo {
         return fileType;
     }
 
-    public void setTasks(List<TaskAbstract> tasks) {
-        this.tasks = tasks;
+    public long getVersion() {
+        return version;
+    }
+
+    /*
+     * The next version of this project over another store. Target path and file type
+     * are kept; the name search terms and collation keys carry over when the store
+     * shares this version's dictionary.
+     */
+    public ProjectInfo nextVersion(TaskStore nextStore) {
+        ProjectInfo next = new ProjectInfo(nextStore);
+        next.targetPath = targetPath;
+        next.fileType = fileType;
+        next.version = version + 1;
+        NameSearchIndex search = nameSearch;
+        if (search != null && search.getStore().getDictionary() == nextStore.getDictionary()) {
+            next.nameSearch = search.forStore(nextStore);
+        }
+        next.sortOrders = sortOrders;
+        return next;
+    }
+
+    // As above for a store that differs from this version's only in the days of the given rows.
+    public ProjectInfo nextVersion(TaskStore nextStore, int[] changedRows) {
+        ProjectInfo next = nextVersion(nextStore);
+        CriticalPath path = schedule;
+        if (path != null && path.getStore() == store && path.isCurrent()) {
+            next.schedule = path.update(nextStore, changedRows);
+        }
+        return next;
+    }
+
+    public TaskStore getStore() {
+        return store;
     }
 
+    // Read-only views; each element is built from the store columns when it is read.
     public List<TaskAbstract> getAllTasks() {
-        return tasks;
+        return store.asList();
     }
 
     public List<TaskAbstract> getTopLevelTasks() {
-        return tasks.stream()
-                .filter(TaskAbstract::isTopLevel)
-                .collect(Collectors.toList());
+        return store.topLevelTasks();
     }
 
     public List<TaskAbstract> getTasksInRange(int firstIncluded, int lastIncluded) {
-        return tasks.stream()
-                .filter(task -> task.getId() >= firstIncluded && task.getId() <= lastIncluded)
-                .collect(Collectors.toList());
+        return store.tasksWithIdBetween(firstIncluded, lastIncluded);
+    }
+
+    // Tasks active on at least one day of [firstDay, lastDay].
+    public List<TaskAbstract> getTasksActiveInWindow(int firstDay, int lastDay) {
+        IntervalIndex index = getIntervalIndex();
+        return index.getStore().view(index.activeRows(firstDay, lastDay));
+    }
+
+    // Built on first use and again after the store has changed.
+    public IntervalIndex getIntervalIndex() {
+        TaskStore current = store;
+        IntervalIndex index = intervals;
+        if (index == null || index.getStore() != current || !index.isCurrent()) {
+            index = IntervalIndex.build(current);
+            intervals = index;
+        }
+        return index;
+    }
+
+    // Orders are computed on first use per key and shared until the store changes.
+    public SortOrders getSortOrders(Locale locale) {
+        TaskStore current = store;
+        SortOrders orders = sortOrders;
+        if (orders == null || orders.getStore() != current || !orders.isCurrent()
+                || !orders.getLocale().equals(locale)) {
+            orders = SortOrders.build(current, locale, orders);
+            sortOrders = orders;
+        }
+        return orders;
+    }
+
+    public List<TaskAbstract> getTasksSortedBy(SortKey key, Locale locale) {
+        return getSortOrders(locale).view(key);
+    }
+
+    // Built on first use for the current store; later names are indexed as they appear.
+    public NameSearchIndex getNameSearchIndex() {
+        TaskStore current = store;
+        NameSearchIndex index = nameSearch;
+        if (index == null || index.getStore() != current) {
+            index = index != null ? index.forStore(current) : NameSearchIndex.build(current);
+            nameSearch = index;
+        }
+        return index;
+    }
+
+    public List<TaskAbstract> findTasksByName(String fragment) {
+        return getNameSearchIndex().search(fragment);
+    }
+
+    // Brings indexes that follow the store incrementally up to date after a reload.
+    public void applyDelta(TaskDelta delta) {
+        NameSearchIndex index = nameSearch;
+        if (index != null && index.getStore() == store) {
+            index.apply(delta);
+        }
+    }
+
+    // Built on first use and again after the store has changed.
+    public HierarchyIndex getHierarchy(int parallelism) {
+        TaskStore current = store;
+        HierarchyIndex index = hierarchy;
+        if (index == null || index.getStore() != current || !index.isCurrent()) {
+            index = HierarchyIndex.build(current, parallelism);
+            hierarchy = index;
+        }
+        return index;
+    }
+
+    // Computed on first use and again after the store has changed.
+    public CriticalPath getSchedule() {
+        TaskStore current = store;
+        CriticalPath path = schedule;
+        if (path == null || path.getStore() != current || !path.isCurrent()) {
+            path = CriticalPath.compute(current);
+            schedule = path;
+        }
+        return path;
+    }
+
+    public List<TaskAbstract> getCriticalTasks() {
+        CriticalPath path = getSchedule();
+        return path.getStore().view(path.criticalRows());
     }
 
-    public void sortTasksById() {
-        tasks.sort(Comparator.comparingInt(TaskAbstract::getId));
+    // The next version over an id-sorted copy, or this version when the rows are already in id order.
+    public ProjectInfo sortedById() {
+        if (store.isSortedById()) {
+            return this;
+        }
+        TaskStore sorted = store.copy();
+        sorted.sortById();
+        return nextVersion(sorted);
     }
 
-    public void sortTasksByName() {
-        tasks.sort(Comparator.comparing(TaskAbstract::getName));
+    public ProjectInfo sortedByName() {
+        TaskStore sorted = store.copy();
+        sorted.sortByName();
+        return nextVersion(sorted);
     }
 }
@@ -0,0 +1,50 @@
+package util;
+
+import dom.gantt.TaskAbstract;
+
+import java.util.List;
+
+/*
+ * Rows matched by a TaskQuery, as a view in store order, together with the plan the
+ * query ran with: which index produced the candidate rows, how many were examined
+ * and which conditions were checked on each of them.
+ */
+public class QueryResult {
+    private final List<TaskAbstract> tasks;
+    private final String plan;
+    private final int examinedRows;
+    private final long elapsedNanos;
+
+    QueryResult(List<TaskAbstract> tasks, String plan, int examinedRows, long elapsedNanos) {
+        this.tasks = tasks;
+        this.plan = plan;
+        this.examinedRows = examinedRows;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public List<TaskAbstract> getTasks() {
+        return tasks;
+    }
+
+    public String getPlan() {
+        return plan;
+    }
+
+    public int getExaminedRows() {
+        return examinedRows;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "QueryResult{" +
+                "matched=" + tasks.size() +
+                ", examined=" + examinedRows +
+                ", elapsedMs=" + elapsedNanos / 1_000_000.0 +
+                ", plan='" + plan + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,319 @@
+package util;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/*
+ * Monte Carlo finish dates. Every iteration samples each task's duration between
+ * lowFactor and highFactor times its planned duration, runs the forward pass of the
+ * critical path schedule with those durations and records the day each task
+ * finishes; a container finishes on the latest day of its subtree, itself included.
+ * Finish days are counted in a histogram per row, and percentiles are read off the
+ * histograms.
+ *
+ * Iterations run in blocks. Within a block each worker owns a SplittableRandom split
+ * from the seed, a duration buffer and every parallelism-th slot of a shared block of
+ * finish arrays, so running an iteration allocates nothing. After the block the rows
+ * are split over the workers again and each adds its rows' finishes to their
+ * histograms. A run is repeatable for the same seed and parallelism.
+ *
+ * Zero-day tasks stay zero days. Rows the schedule leaves unscheduled are not pushed
+ * by links and finish on their own start plus their sampled duration.
+ */
+public class ScheduleRisk {
+    private static final int BLOCK_CELLS = 1 << 22;
+    private static final int ROW_CHUNK = 1024;
+
+    private final CriticalPath schedule;
+    private final int iterations;
+    // One histogram per row, and the project finish after the last row.
+    private final int[][] counts;
+    private final int[] lowest;
+
+    private ScheduleRisk(CriticalPath schedule, int iterations) {
+        this.schedule = schedule;
+        this.iterations = iterations;
+        int size = schedule.getStore().size();
+        counts = new int[size + 1][];
+        lowest = new int[size + 1];
+    }
+
+    public static ScheduleRisk simulate(CriticalPath schedule, HierarchyIndex hierarchy, DurationDistribution distribution,
+                                        double lowFactor, double highFactor, int iterations, long seed, int parallelism) {
+        if (iterations <= 0) {
+            throw new IllegalArgumentException("At least one iteration is needed");
+        }
+        if (lowFactor < 0 || lowFactor > 1 || highFactor < 1) {
+            throw new IllegalArgumentException("Expected 0 <= lowFactor <= 1 <= highFactor");
+        }
+        if (!schedule.isCurrent()) {
+            throw new IllegalStateException("The schedule is out of date");
+        }
+        if (hierarchy != null && (hierarchy.getStore() != schedule.getStore() || !hierarchy.isCurrent())) {
+            throw new IllegalStateException("The hierarchy does not belong to the schedule");
+        }
+
+        ScheduleRisk risk = new ScheduleRisk(schedule, iterations);
+        int size = schedule.getStore().size();
+        int workerCount = Math.max(1, parallelism);
+        int slots = Math.min(iterations, Math.max(workerCount, BLOCK_CELLS / Math.max(1, size)));
+        int[][] block = new int[slots][size];
+        int[] projectFinishes = new int[slots];
+        int[][] rollUp = rollUpOrder(hierarchy, size);
+
+        SplittableRandom random = new SplittableRandom(seed);
+        Worker[] workers = new Worker[workerCount];
+        Accumulator[] accumulators = new Accumulator[workerCount];
+        for (int w = 0; w < workerCount; w++) {
+            workers[w] = new Worker(schedule, distribution, lowFactor, highFactor, random.split(), rollUp,
+                    block, projectFinishes, w, workerCount);
+            accumulators[w] = new Accumulator(risk, block, (int) ((long) size * w / workerCount),
+                    (int) ((long) size * (w + 1) / workerCount));
+        }
+
+        ForkJoinPool pool = workerCount > 1 ? new ForkJoinPool(workerCount) : null;
+        try {
+            for (int done = 0; done < iterations; done += slots) {
+                int filled = Math.min(slots, iterations - done);
+                for (int w = 0; w < workerCount; w++) {
+                    workers[w].reinitialize();
+                    workers[w].filled = filled;
+                    accumulators[w].reinitialize();
+                    accumulators[w].filled = filled;
+                }
+                runAll(pool, workers);
+                runAll(pool, accumulators);
+                for (int slot = 0; slot < filled; slot++) {
+                    risk.record(size, projectFinishes[slot], projectFinishes[slot]);
+                    risk.counts[size][projectFinishes[slot] - risk.lowest[size]]++;
+                }
+            }
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
+            }
+        }
+        return risk;
+    }
+
+    public CriticalPath getSchedule() {
+        return schedule;
+    }
+
+    public int getIterations() {
+        return iterations;
+    }
+
+    /*
+     * The day by which the row had finished in at least the given percent of the
+     * iterations; for a container, the day its whole subtree had finished.
+     */
+    public int getFinishPercentile(int row, double percent) {
+        return percentile(row, percent);
+    }
+
+    public int getProjectFinishPercentile(double percent) {
+        return percentile(counts.length - 1, percent);
+    }
+
+    // Share of the iterations in which the row finished on or before the day.
+    public double getFinishProbability(int row, int day) {
+        int[] histogram = counts[row];
+        int upTo = Math.min(day - lowest[row], histogram.length - 1);
+        long count = 0;
+        for (int i = 0; i <= upTo; i++) {
+            count += histogram[i];
+        }
+        return (double) count / iterations;
+    }
+
+    private int percentile(int row, double percent) {
+        if (percent < 0 || percent > 100) {
+            throw new IllegalArgumentException("Percent must be between 0 and 100");
+        }
+        long needed = Math.max(1, (long) Math.ceil(percent / 100 * iterations));
+        int[] histogram = counts[row];
+        long count = 0;
+        for (int i = 0; i < histogram.length; i++) {
+            count += histogram[i];
+            if (count >= needed) {
+                return lowest[row] + i;
+            }
+        }
+        return lowest[row] + histogram.length - 1;
+    }
+
+    // Widens the row's histogram to cover min..max; it at least doubles when it grows.
+    private void record(int row, int min, int max) {
+        int[] histogram = counts[row];
+        if (histogram == null) {
+            counts[row] = new int[Math.max(16, max - min + 1)];
+            lowest[row] = min;
+            return;
+        }
+        int low = lowest[row];
+        int high = low + histogram.length - 1;
+        if (min >= low && max <= high) {
+            return;
+        }
+        int newMin = Math.min(low, min);
+        int newMax = Math.max(high, max);
+        int length = Math.max(newMax - newMin + 1, histogram.length * 2);
+        // Spare room goes on the side that had to grow.
+        int newLow = min < low ? newMax - length + 1 : newMin;
+        int[] grown = new int[length];
+        System.arraycopy(histogram, 0, grown, low - newLow, histogram.length);
+        counts[row] = grown;
+        lowest[row] = newLow;
+    }
+
+    /*
+     * Rows with a parent, deepest first, next to their parent rows; walking them in
+     * that order carries every finish up to the top of its tree.
+     */
+    private static int[][] rollUpOrder(HierarchyIndex hierarchy, int size) {
+        if (hierarchy == null) {
+            return new int[][]{new int[0], new int[0]};
+        }
+        int[] order = new int[size];
+        int visited = 0;
+        for (int row = 0; row < size; row++) {
+            if (hierarchy.getParentRow(row) < 0) {
+                order[visited++] = row;
+            }
+        }
+        for (int head = 0; head < visited; head++) {
+            int row = order[head];
+            for (int c = 0; c < hierarchy.getChildCount(row); c++) {
+                order[visited++] = hierarchy.getChildRow(row, c);
+            }
+        }
+        int count = 0;
+        int[] rows = new int[visited];
+        int[] parents = new int[visited];
+        for (int i = visited - 1; i >= 0; i--) {
+            int row = order[i];
+            if (hierarchy.getParentRow(row) >= 0) {
+                rows[count] = row;
+                parents[count++] = hierarchy.getParentRow(row);
+            }
+        }
+        return new int[][]{Arrays.copyOf(rows, count), Arrays.copyOf(parents, count)};
+    }
+
+    private static void runAll(ForkJoinPool pool, ForkJoinTask<?>[] tasks) {
+        if (pool == null) {
+            tasks[0].invoke();
+            return;
+        }
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(tasks);
+            }
+        });
+    }
+
+    // Runs slots worker, worker + workers, ... of the current block.
+    private static final class Worker extends RecursiveAction {
+        private final CriticalPath schedule;
+        private final DurationDistribution distribution;
+        private final double lowFactor;
+        private final double highFactor;
+        private final SplittableRandom random;
+        private final int[] rollUpRows;
+        private final int[] rollUpParents;
+        private final int[][] block;
+        private final int[] projectFinishes;
+        private final int worker;
+        private final int workers;
+        private final int[] durations;
+        int filled;
+
+        Worker(CriticalPath schedule, DurationDistribution distribution, double lowFactor, double highFactor,
+               SplittableRandom random, int[][] rollUp, int[][] block, int[] projectFinishes, int worker, int workers) {
+            this.schedule = schedule;
+            this.distribution = distribution;
+            this.lowFactor = lowFactor;
+            this.highFactor = highFactor;
+            this.random = random;
+            this.rollUpRows = rollUp[0];
+            this.rollUpParents = rollUp[1];
+            this.block = block;
+            this.projectFinishes = projectFinishes;
+            this.worker = worker;
+            this.workers = workers;
+            this.durations = new int[schedule.getStore().size()];
+        }
+
+        @Override
+        protected void compute() {
+            for (int slot = worker; slot < filled; slot += workers) {
+                int[] finishes = block[slot];
+                for (int row = 0; row < durations.length; row++) {
+                    double planned = schedule.getDuration(row);
+                    durations[row] = planned == 0 ? 0 : (int) Math.round(distribution.sample(
+                            planned * lowFactor, planned, planned * highFactor, random.nextDouble()));
+                }
+                int end = schedule.forwardPass(durations, finishes);
+                for (int row = 0; row < finishes.length; row++) {
+                    finishes[row] += Math.max(durations[row], 1) - 1;
+                }
+                for (int i = 0; i < rollUpRows.length; i++) {
+                    int parent = rollUpParents[i];
+                    if (finishes[rollUpRows[i]] > finishes[parent]) {
+                        finishes[parent] = finishes[rollUpRows[i]];
+                    }
+                }
+                projectFinishes[slot] = Math.max(schedule.getProjectStart(), end - 1);
+            }
+        }
+    }
+
+    // Adds the current block to the histograms of rows from..to-1.
+    private static final class Accumulator extends RecursiveAction {
+        private final ScheduleRisk risk;
+        private final int[][] block;
+        private final int from;
+        private final int to;
+        int filled;
+
+        Accumulator(ScheduleRisk risk, int[][] block, int from, int to) {
+            this.risk = risk;
+            this.block = block;
+            this.from = from;
+            this.to = to;
+        }
+
+        // Rows go in chunks whose histograms stay in cache while every slot is added.
+        @Override
+        protected void compute() {
+            int[] minima = new int[ROW_CHUNK];
+            int[] maxima = new int[ROW_CHUNK];
+            for (int chunk = from; chunk < to; chunk += ROW_CHUNK) {
+                int end = Math.min(to, chunk + ROW_CHUNK);
+                Arrays.fill(minima, Integer.MAX_VALUE);
+                Arrays.fill(maxima, Integer.MIN_VALUE);
+                for (int slot = 0; slot < filled; slot++) {
+                    int[] finishes = block[slot];
+                    for (int row = chunk; row < end; row++) {
+                        minima[row - chunk] = Math.min(minima[row - chunk], finishes[row]);
+                        maxima[row - chunk] = Math.max(maxima[row - chunk], finishes[row]);
+                    }
+                }
+                for (int row = chunk; row < end; row++) {
+                    risk.record(row, minima[row - chunk], maxima[row - chunk]);
+                }
+                for (int slot = 0; slot < filled; slot++) {
+                    int[] finishes = block[slot];
+                    for (int row = chunk; row < end; row++) {
+                        risk.counts[row][finishes[row] - risk.lowest[row]]++;
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package util;
+
+public enum SortKey {
+    NAME,
+    START_DAY,
+    END_DAY,
+    COST,
+    EFFORT
+}
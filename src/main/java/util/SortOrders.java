@@ -0,0 +1,203 @@
+package util;
+
+import dom.gantt.TaskAbstract;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/*
+ * Secondary orderings of a TaskStore, kept as row permutations so any number of views
+ * and exports can share them without sorting or touching the store. Each order is
+ * computed on first use with a parallel sort; prepare() computes several at once.
+ *
+ * Every order is stable: rows with equal keys keep store order. Missing names and
+ * days sort first. Names are compared by CollationKeys of the given locale, made once
+ * per distinct dictionary name; the keys carry over to the orders of the next store
+ * version when it shares the dictionary.
+ */
+public class SortOrders {
+    private static final int KEY_BATCH = 4096;
+
+    private final TaskStore store;
+    private final int modCount;
+    private final Locale locale;
+    private final AtomicReferenceArray<int[]> orders = new AtomicReferenceArray<>(SortKey.values().length);
+    private volatile CollationKey[] nameKeys;
+
+    private SortOrders(TaskStore store, Locale locale, CollationKey[] nameKeys) {
+        this.store = store;
+        this.modCount = store.getModCount();
+        this.locale = locale;
+        this.nameKeys = nameKeys;
+    }
+
+    public static SortOrders build(TaskStore store, Locale locale) {
+        return new SortOrders(store, locale, new CollationKey[0]);
+    }
+
+    // Reuses the name keys of previous when both stores share a dictionary and locale.
+    public static SortOrders build(TaskStore store, Locale locale, SortOrders previous) {
+        boolean reuse = previous != null && previous.store.getDictionary() == store.getDictionary()
+                && previous.locale.equals(locale);
+        return new SortOrders(store, locale, reuse ? previous.nameKeys : new CollationKey[0]);
+    }
+
+    public TaskStore getStore() {
+        return store;
+    }
+
+    public Locale getLocale() {
+        return locale;
+    }
+
+    // False once the store has been changed or reordered since these orders were made.
+    public boolean isCurrent() {
+        return store.getModCount() == modCount;
+    }
+
+    // Store rows in key order. The array is shared; callers must not modify it.
+    public int[] order(SortKey key) {
+        int[] order = orders.get(key.ordinal());
+        if (order == null) {
+            order = computeOrder(key);
+            orders.compareAndSet(key.ordinal(), null, order);
+        }
+        return orders.get(key.ordinal());
+    }
+
+    public List<TaskAbstract> view(SortKey key) {
+        return store.view(order(key));
+    }
+
+    // Computes the missing orders side by side on the common fork-join pool.
+    public void prepare(SortKey... keys) {
+        ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            SortKey key = keys[i];
+            tasks[i] = ForkJoinPool.commonPool().submit(() -> order(key));
+        }
+        for (ForkJoinTask<?> task : tasks) {
+            task.join();
+        }
+    }
+
+    private int[] computeOrder(SortKey key) {
+        int size = store.size();
+        int[] order = new int[size];
+        long[] keys = new long[size];
+        int missing = 0;
+        int count = 0;
+        switch (key) {
+            case NAME:
+                int[] ranks = nameRanks();
+                for (int row = 0; row < size; row++) {
+                    keys[count++] = (long) ranks[store.getNameCode(row)] << 32 | row;
+                }
+                break;
+            case START_DAY:
+            case END_DAY:
+                boolean start = key == SortKey.START_DAY;
+                for (int row = 0; row < size; row++) {
+                    if (start ? store.hasStartDay(row) : store.hasEndDay(row)) {
+                        keys[count++] = (long) (start ? store.getStartDay(row) : store.getEndDay(row)) << 32 | row;
+                    } else {
+                        order[missing++] = row;
+                    }
+                }
+                break;
+            default:
+                double[] values = new double[size];
+                for (int row = 0; row < size; row++) {
+                    values[row] = key == SortKey.COST ? store.getCost(row) : store.getEffort(row);
+                }
+                double[] distinct = distinctSorted(values);
+                for (int row = 0; row < size; row++) {
+                    keys[count++] = (long) Arrays.binarySearch(distinct, values[row]) << 32 | row;
+                }
+                break;
+        }
+        Arrays.parallelSort(keys, 0, count);
+        for (int i = 0; i < count; i++) {
+            order[missing + i] = (int) keys[i];
+        }
+        return order;
+    }
+
+    private static double[] distinctSorted(double[] values) {
+        double[] sorted = values.clone();
+        Arrays.parallelSort(sorted);
+        int count = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (count == 0 || Double.compare(sorted[count - 1], sorted[i]) != 0) {
+                sorted[count++] = sorted[i];
+            }
+        }
+        return Arrays.copyOf(sorted, count);
+    }
+
+    // Rank of every dictionary code among the distinct names in collation order.
+    private int[] nameRanks() {
+        NameDictionary dictionary = store.getDictionary();
+        int size = dictionary.size();
+        CollationKey[] keys = collationKeys(dictionary, size);
+        Integer[] codes = new Integer[size];
+        for (int code = 0; code < size; code++) {
+            codes[code] = code;
+        }
+        Arrays.parallelSort(codes, Comparator.comparing((Integer code) -> keys[code],
+                Comparator.nullsFirst(Comparator.naturalOrder())));
+        int[] ranks = new int[size];
+        for (int rank = 0; rank < size; rank++) {
+            ranks[codes[rank]] = rank;
+        }
+        return ranks;
+    }
+
+    private synchronized CollationKey[] collationKeys(NameDictionary dictionary, int size) {
+        CollationKey[] keys = nameKeys;
+        if (keys.length < size) {
+            int known = keys.length;
+            keys = Arrays.copyOf(keys, size);
+            ForkJoinPool.commonPool().invoke(new KeyTask(dictionary, keys, known, size));
+            nameKeys = keys;
+        }
+        return keys;
+    }
+
+    // Collators are not thread-safe, so every batch works with its own instance.
+    private final class KeyTask extends RecursiveAction {
+        private final NameDictionary dictionary;
+        private final CollationKey[] keys;
+        private final int from;
+        private final int to;
+
+        KeyTask(NameDictionary dictionary, CollationKey[] keys, int from, int to) {
+            this.dictionary = dictionary;
+            this.keys = keys;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > KEY_BATCH) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new KeyTask(dictionary, keys, from, mid), new KeyTask(dictionary, keys, mid, to));
+                return;
+            }
+            Collator collator = Collator.getInstance(locale);
+            for (int code = from; code < to; code++) {
+                String name = dictionary.name(code);
+                keys[code] = name != null ? collator.getCollationKey(name) : null;
+            }
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package util;
+
+import dom.gantt.Dependency;
+import dom.gantt.DependencyType;
+import dom.gantt.TaskAbstract;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+public class TaskDelta {
+    private final List<TaskAbstract> added = new ArrayList<>();
+    private final List<TaskAbstract> changed = new ArrayList<>();
+    private final List<TaskAbstract> removed = new ArrayList<>();
+
+    public void addAdded(TaskAbstract task) {
+        added.add(task);
+    }
+
+    public void addChanged(TaskAbstract task) {
+        changed.add(task);
+    }
+
+    public void addRemoved(TaskAbstract task) {
+        removed.add(task);
+    }
+
+    public List<TaskAbstract> getAdded() {
+        return Collections.unmodifiableList(added);
+    }
+
+    public List<TaskAbstract> getChanged() {
+        return Collections.unmodifiableList(changed);
+    }
+
+    public List<TaskAbstract> getRemoved() {
+        return Collections.unmodifiableList(removed);
+    }
+
+    public boolean isEmpty() {
+        return added.isEmpty() && changed.isEmpty() && removed.isEmpty();
+    }
+
+    public static long rowHash(TaskAbstract task) {
+        long h = rowHash(task.getId(), task.getName(), task.getContainerId(),
+                task.getStartDay() != null ? task.getStartDay() : Long.MIN_VALUE,
+                task.getEndDay() != null ? task.getEndDay() : Long.MIN_VALUE, task.getCost(), task.getEffort());
+        for (Dependency link : task.getDependencies()) {
+            h = linkHash(h, link.getPredecessorId(), link.getType(), link.getLag());
+        }
+        return h;
+    }
+
+    public static long rowHash(TaskStore store, int row) {
+        long h = rowHash(store.getId(row), store.getName(row), store.getContainerId(row),
+                store.hasStartDay(row) ? store.getStartDay(row) : Long.MIN_VALUE,
+                store.hasEndDay(row) ? store.getEndDay(row) : Long.MIN_VALUE, store.getCost(row), store.getEffort(row));
+        for (int i = 0; i < store.getPredecessorCount(row); i++) {
+            h = linkHash(h, store.getPredecessorId(row, i), store.getDependencyType(row, i), store.getLag(row, i));
+        }
+        return h;
+    }
+
+    private static long linkHash(long h, int predecessorId, DependencyType type, int lag) {
+        h = mix(h, predecessorId);
+        h = mix(h, type.ordinal());
+        return mix(h, lag);
+    }
+
+    private static long rowHash(int id, String name, int containerId, long startDay, long endDay, double cost, double effort) {
+        long h = 0x9E3779B97F4A7C15L;
+        h = mix(h, id);
+        h = mix(h, name != null ? name.hashCode() : 0);
+        h = mix(h, containerId);
+        h = mix(h, startDay);
+        h = mix(h, endDay);
+        h = mix(h, Double.doubleToLongBits(cost));
+        h = mix(h, Double.doubleToLongBits(effort));
+        return h;
+    }
+
+    public static boolean sameRow(TaskAbstract a, TaskAbstract b) {
+        return a.getId() == b.getId()
+                && Objects.equals(a.getName(), b.getName())
+                && a.getContainerId() == b.getContainerId()
+                && Objects.equals(a.getStartDay(), b.getStartDay())
+                && Objects.equals(a.getEndDay(), b.getEndDay())
+                && Double.doubleToLongBits(a.getCost()) == Double.doubleToLongBits(b.getCost())
+                && Double.doubleToLongBits(a.getEffort()) == Double.doubleToLongBits(b.getEffort())
+                && a.getDependencies().equals(b.getDependencies());
+    }
+
+    public static boolean sameRow(TaskStore a, int rowA, TaskStore b, int rowB) {
+        return a.getId(rowA) == b.getId(rowB)
+                && Objects.equals(a.getName(rowA), b.getName(rowB))
+                && a.getContainerId(rowA) == b.getContainerId(rowB)
+                && a.hasStartDay(rowA) == b.hasStartDay(rowB)
+                && (!a.hasStartDay(rowA) || a.getStartDay(rowA) == b.getStartDay(rowB))
+                && a.hasEndDay(rowA) == b.hasEndDay(rowB)
+                && (!a.hasEndDay(rowA) || a.getEndDay(rowA) == b.getEndDay(rowB))
+                && Double.doubleToLongBits(a.getCost(rowA)) == Double.doubleToLongBits(b.getCost(rowB))
+                && Double.doubleToLongBits(a.getEffort(rowA)) == Double.doubleToLongBits(b.getEffort(rowB))
+                && sameLinks(a, rowA, b, rowB);
+    }
+
+    private static boolean sameLinks(TaskStore a, int rowA, TaskStore b, int rowB) {
+        int count = a.getPredecessorCount(rowA);
+        if (count != b.getPredecessorCount(rowB)) {
+            return false;
+        }
+        for (int i = 0; i < count; i++) {
+            if (a.getPredecessorId(rowA, i) != b.getPredecessorId(rowB, i)
+                    || a.getDependencyType(rowA, i) != b.getDependencyType(rowB, i)
+                    || a.getLag(rowA, i) != b.getLag(rowB, i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long mix(long h, long value) {
+        h ^= value + 0x9E3779B97F4A7C15L + (h << 6) + (h >>> 2);
+        h *= 0xBF58476D1CE4E5B9L;
+        return h ^ (h >>> 31);
+    }
+
+    @Override
+    public String toString() {
+        return "TaskDelta{" +
+                "added=" + added.size() +
+                ", changed=" + changed.size() +
+                ", removed=" + removed.size() +
+                '}';
+    }
+}
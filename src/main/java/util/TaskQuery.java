@@ -0,0 +1,735 @@
+package util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*
+ * A conjunction of conditions over the task store, built fluently or parsed from text
+ * such as "cost > 100 and under 7 and days 10..20". Every condition compiles to a
+ * filter over the store columns. Conditions that an index can answer also offer
+ * candidate rows: id ranges on an id-sorted store, top-level rows, children and
+ * descendants through the hierarchy index, and day windows through the interval
+ * index. The smallest candidate set drives the query and the remaining conditions
+ * filter it; without any, the whole store is scanned, in parallel when it is large.
+ *
+ * Expression syntax, conditions joined by "and":
+ *   id 5..300 | id > 5 | start <= 10 | end = 4 | cost >= 1.5 | effort != 0
+ *   days 10..20 (active on some day of the window) | top | container = 7 (children)
+ *   under 7 (all descendants) | name ~ "text" (name contains text)
+ */
+public class TaskQuery {
+    private static final int PARALLEL_SCAN_ROWS = 1 << 16;
+    private static final int SCAN_CHUNK = 1 << 14;
+    private static final Pattern TOKEN = Pattern.compile(
+            "\\s*(\\.\\.|<=|>=|!=|=|<|>|~|\"(?:[^\"\\\\]|\\\\.)*\"|-?\\d+(?:\\.\\d+)?|[A-Za-z_]+)");
+
+    public enum Field {
+        ID, START_DAY, END_DAY, COST, EFFORT
+    }
+
+    public enum Op {
+        EQ("="), NE("!="), LT("<"), LE("<="), GT(">"), GE(">=");
+
+        private final String symbol;
+
+        Op(String symbol) {
+            this.symbol = symbol;
+        }
+
+        public String getSymbol() {
+            return symbol;
+        }
+
+        static Op fromSymbol(String symbol) {
+            for (Op op : values()) {
+                if (op.symbol.equals(symbol)) {
+                    return op;
+                }
+            }
+            return null;
+        }
+
+        boolean test(double value, double operand) {
+            int order = Double.compare(value, operand);
+            switch (this) {
+                case EQ: return order == 0;
+                case NE: return order != 0;
+                case LT: return order < 0;
+                case LE: return order <= 0;
+                case GT: return order > 0;
+                default: return order >= 0;
+            }
+        }
+    }
+
+    private final List<Condition> conditions = new ArrayList<>();
+
+    public static TaskQuery all() {
+        return new TaskQuery();
+    }
+
+    public TaskQuery where(Field field, Op op, double value) {
+        conditions.add(new Compare(field, op, value));
+        return this;
+    }
+
+    public TaskQuery idBetween(int firstIncluded, int lastIncluded) {
+        conditions.add(new IdRange(firstIncluded, lastIncluded));
+        return this;
+    }
+
+    public TaskQuery activeBetween(int firstDay, int lastDay) {
+        conditions.add(new ActiveWindow(firstDay, lastDay));
+        return this;
+    }
+
+    public TaskQuery topLevel() {
+        conditions.add(new TopLevel());
+        return this;
+    }
+
+    public TaskQuery childrenOf(int containerId) {
+        conditions.add(new ChildrenOf(containerId));
+        return this;
+    }
+
+    public TaskQuery descendantsOf(int containerId) {
+        conditions.add(new DescendantsOf(containerId));
+        return this;
+    }
+
+    public TaskQuery nameContains(String text) {
+        conditions.add(new NameContains(text));
+        return this;
+    }
+
+    // Throws IllegalArgumentException naming the offending position.
+    public static TaskQuery parse(String expression) {
+        return new Parser(expression).parse();
+    }
+
+    public QueryResult execute(ProjectInfo info, int parallelism) {
+        long started = System.nanoTime();
+        Context context = new Context(info, parallelism);
+        TaskStore store = context.store;
+
+        Condition driver = null;
+        TaskStore.Rows candidates = null;
+        List<String> considered = new ArrayList<>();
+        for (Condition condition : conditions) {
+            TaskStore.Rows rows = condition.exactCandidates(context);
+            if (rows != null) {
+                considered.add(condition + "=" + rows.size());
+                if (candidates == null || rows.size() < candidates.size()) {
+                    driver = condition;
+                    candidates = rows;
+                }
+            }
+        }
+        if (candidates == null || candidates.size() > store.size() / 8) {
+            for (Condition condition : conditions) {
+                TaskStore.Rows rows = condition.lazyCandidates(context);
+                if (rows != null) {
+                    considered.add(condition + "=" + rows.size());
+                    if (candidates == null || rows.size() < candidates.size()) {
+                        driver = condition;
+                        candidates = rows;
+                    }
+                }
+            }
+        }
+
+        List<Condition> residual = new ArrayList<>();
+        List<RowFilter> filters = new ArrayList<>();
+        for (Condition condition : conditions) {
+            if (condition != driver) {
+                residual.add(condition);
+                filters.add(condition.compile(context));
+            }
+        }
+
+        StringBuilder plan = new StringBuilder();
+        boolean parallel;
+        if (driver != null) {
+            parallel = !filters.isEmpty() && parallelism > 1 && candidates.size() >= PARALLEL_SCAN_ROWS;
+            plan.append("index ").append(driver).append(" (").append(candidates.size()).append(" rows)");
+        } else {
+            candidates = (TaskStore.Rows) store.asList();
+            parallel = !filters.isEmpty() && parallelism > 1 && store.size() >= PARALLEL_SCAN_ROWS;
+            plan.append("full scan (").append(store.size()).append(" rows)");
+        }
+
+        TaskStore.Rows matched;
+        if (filters.isEmpty()) {
+            matched = candidates;
+        } else {
+            RowFilter[] all = filters.toArray(new RowFilter[0]);
+            int[] rows = parallel
+                    ? ForkJoinPool.commonPool().invoke(new FilterTask(store, candidates, all, 0, candidates.size()))
+                    : filter(store, candidates, all, 0, candidates.size());
+            matched = (TaskStore.Rows) store.view(rows);
+            plan.append(parallel ? " -> parallel filter " : " -> filter ").append(residual);
+        }
+        plan.append(" -> ").append(matched.size()).append(" rows");
+        if (considered.size() > 1) {
+            plan.append("; candidates ").append(considered);
+        }
+        return new QueryResult(matched, plan.toString(), candidates.size(), System.nanoTime() - started);
+    }
+
+    @Override
+    public String toString() {
+        if (conditions.isEmpty()) {
+            return "all";
+        }
+        StringBuilder text = new StringBuilder();
+        for (Condition condition : conditions) {
+            if (text.length() > 0) {
+                text.append(" and ");
+            }
+            text.append(condition);
+        }
+        return text.toString();
+    }
+
+    private static int[] filter(TaskStore store, TaskStore.Rows candidates, RowFilter[] filters, int from, int to) {
+        int[] rows = new int[Math.min(to - from, 64)];
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            int row = candidates.storeRow(i);
+            boolean match = true;
+            for (int f = 0; f < filters.length && match; f++) {
+                match = filters[f].test(store, row);
+            }
+            if (match) {
+                if (count == rows.length) {
+                    rows = Arrays.copyOf(rows, count * 2);
+                }
+                rows[count++] = row;
+            }
+        }
+        return Arrays.copyOf(rows, count);
+    }
+
+    private interface RowFilter {
+        boolean test(TaskStore store, int row);
+    }
+
+    // Indexes are taken from ProjectInfo, which builds each one once per store version;
+    // rows worked out for a condition are kept for the rest of one execution. The store
+    // is read once, and an index over any other store is rebuilt for this one.
+    private static final class Context {
+        final ProjectInfo info;
+        final TaskStore store;
+        final int parallelism;
+        final Map<Condition, int[]> rows = new IdentityHashMap<>();
+
+        Context(ProjectInfo info, int parallelism) {
+            this.info = info;
+            this.store = info.getStore();
+            this.parallelism = parallelism;
+        }
+
+        HierarchyIndex hierarchy() {
+            HierarchyIndex index = info.getHierarchy(parallelism);
+            return index.getStore() == store ? index : HierarchyIndex.build(store, parallelism);
+        }
+
+        IntervalIndex intervals() {
+            IntervalIndex index = info.getIntervalIndex();
+            return index.getStore() == store ? index : IntervalIndex.build(store);
+        }
+    }
+
+    private abstract static class Condition {
+        // Candidate rows whose count is known without running the lookup; null if not indexable.
+        TaskStore.Rows exactCandidates(Context context) {
+            return null;
+        }
+
+        // Candidate rows that take an index lookup to count; null if not indexable.
+        TaskStore.Rows lazyCandidates(Context context) {
+            return null;
+        }
+
+        abstract RowFilter compile(Context context);
+    }
+
+    private static final class Compare extends Condition {
+        private final Field field;
+        private final Op op;
+        private final double value;
+
+        Compare(Field field, Op op, double value) {
+            this.field = field;
+            this.op = op;
+            this.value = value;
+        }
+
+        @Override
+        TaskStore.Rows exactCandidates(Context context) {
+            if (field != Field.ID || op == Op.NE || Double.isNaN(value) || !context.store.isSortedById()) {
+                return null;
+            }
+            long first = Integer.MIN_VALUE;
+            long last = Integer.MAX_VALUE;
+            switch (op) {
+                case EQ:
+                    first = (long) Math.ceil(value);
+                    last = (long) Math.floor(value);
+                    break;
+                case LT:
+                    last = (long) Math.ceil(value) - 1;
+                    break;
+                case LE:
+                    last = (long) Math.floor(value);
+                    break;
+                case GT:
+                    first = (long) Math.floor(value) + 1;
+                    break;
+                default:
+                    first = (long) Math.ceil(value);
+                    break;
+            }
+            first = Math.max(first, Integer.MIN_VALUE);
+            last = Math.min(last, Integer.MAX_VALUE);
+            if (first > last || first > Integer.MAX_VALUE || last < Integer.MIN_VALUE) {
+                return (TaskStore.Rows) context.store.view(new int[0]);
+            }
+            return (TaskStore.Rows) context.store.tasksWithIdBetween((int) first, (int) last);
+        }
+
+        @Override
+        RowFilter compile(Context context) {
+            switch (field) {
+                case ID:
+                    return (store, row) -> op.test(store.getId(row), value);
+                case START_DAY:
+                    return (store, row) -> store.hasStartDay(row) && op.test(store.getStartDay(row), value);
+                case END_DAY:
+                    return (store, row) -> store.hasEndDay(row) && op.test(store.getEndDay(row), value);
+                case COST:
+                    return (store, row) -> op.test(store.getCost(row), value);
+                default:
+                    return (store, row) -> op.test(store.getEffort(row), value);
+            }
+        }
+
+        @Override
+        public String toString() {
+            String name = field == Field.START_DAY ? "start" : field == Field.END_DAY ? "end"
+                    : field.name().toLowerCase(Locale.ROOT);
+            return name + " " + op.getSymbol() + " " + formatNumber(value);
+        }
+    }
+
+    private static final class IdRange extends Condition {
+        private final int first;
+        private final int last;
+
+        IdRange(int first, int last) {
+            this.first = first;
+            this.last = last;
+        }
+
+        @Override
+        TaskStore.Rows exactCandidates(Context context) {
+            return context.store.isSortedById() ? (TaskStore.Rows) context.store.tasksWithIdBetween(first, last) : null;
+        }
+
+        @Override
+        RowFilter compile(Context context) {
+            return (store, row) -> store.getId(row) >= first && store.getId(row) <= last;
+        }
+
+        @Override
+        public String toString() {
+            return "id " + first + ".." + last;
+        }
+    }
+
+    private static final class ActiveWindow extends Condition {
+        private final int first;
+        private final int last;
+
+        ActiveWindow(int first, int last) {
+            this.first = first;
+            this.last = last;
+        }
+
+        @Override
+        TaskStore.Rows lazyCandidates(Context context) {
+            return (TaskStore.Rows) context.store.view(context.intervals().activeRows(first, last));
+        }
+
+        // Same rule as IntervalIndex: both days present, start <= end, and overlapping the window.
+        @Override
+        RowFilter compile(Context context) {
+            return (store, row) -> first <= last && store.hasStartDay(row) && store.hasEndDay(row)
+                    && store.getStartDay(row) <= store.getEndDay(row)
+                    && store.getStartDay(row) <= last && store.getEndDay(row) >= first;
+        }
+
+        @Override
+        public String toString() {
+            return "days " + first + ".." + last;
+        }
+    }
+
+    private static final class TopLevel extends Condition {
+        @Override
+        TaskStore.Rows exactCandidates(Context context) {
+            return (TaskStore.Rows) context.store.topLevelTasks();
+        }
+
+        @Override
+        RowFilter compile(Context context) {
+            return TaskStore::isTopLevel;
+        }
+
+        @Override
+        public String toString() {
+            return "top";
+        }
+    }
+
+    private static final class ChildrenOf extends Condition {
+        private final int containerId;
+
+        ChildrenOf(int containerId) {
+            this.containerId = containerId;
+        }
+
+        // Rows pointing at a missing container are orphans outside the index and need the scan.
+        @Override
+        TaskStore.Rows exactCandidates(Context context) {
+            if (containerId == 0) {
+                return null;
+            }
+            HierarchyIndex hierarchy = context.hierarchy();
+            int parent = hierarchy.rowOfId(containerId);
+            return parent >= 0 ? (TaskStore.Rows) context.store.view(hierarchy.childRows(parent)) : null;
+        }
+
+        @Override
+        RowFilter compile(Context context) {
+            return (store, row) -> store.getContainerId(row) == containerId;
+        }
+
+        @Override
+        public String toString() {
+            return "container = " + containerId;
+        }
+    }
+
+    private static final class DescendantsOf extends Condition {
+        private final int containerId;
+
+        DescendantsOf(int containerId) {
+            this.containerId = containerId;
+        }
+
+        @Override
+        TaskStore.Rows lazyCandidates(Context context) {
+            return (TaskStore.Rows) context.store.view(descendants(context));
+        }
+
+        @Override
+        RowFilter compile(Context context) {
+            boolean[] member = new boolean[context.store.size()];
+            for (int row : descendants(context)) {
+                member[row] = true;
+            }
+            return (store, row) -> member[row];
+        }
+
+        /*
+         * Breadth-first over the children arrays from the rows whose containerId is the
+         * given id, so orphans pointing at a missing container are found as well. The
+         * visited marks stop the walk on containerId cycles, where the container itself
+         * turns up among its descendants.
+         */
+        private int[] descendants(Context context) {
+            int[] rows = context.rows.get(this);
+            if (rows != null) {
+                return rows;
+            }
+            TaskStore store = context.store;
+            HierarchyIndex hierarchy = context.hierarchy();
+            boolean[] visited = new boolean[store.size()];
+            int[] found = new int[16];
+            int count = 0;
+            int parent = containerId == 0 ? -1 : hierarchy.rowOfId(containerId);
+            if (parent >= 0) {
+                for (int child : hierarchy.childRows(parent)) {
+                    visited[child] = true;
+                    if (count == found.length) {
+                        found = Arrays.copyOf(found, count * 2);
+                    }
+                    found[count++] = child;
+                }
+            } else {
+                for (int row = 0; row < store.size(); row++) {
+                    if (store.getContainerId(row) == containerId) {
+                        visited[row] = true;
+                        if (count == found.length) {
+                            found = Arrays.copyOf(found, count * 2);
+                        }
+                        found[count++] = row;
+                    }
+                }
+            }
+            for (int i = 0; i < count; i++) {
+                int row = found[i];
+                for (int c = 0; c < hierarchy.getChildCount(row); c++) {
+                    int child = hierarchy.getChildRow(row, c);
+                    if (!visited[child]) {
+                        visited[child] = true;
+                        if (count == found.length) {
+                            found = Arrays.copyOf(found, count * 2);
+                        }
+                        found[count++] = child;
+                    }
+                }
+            }
+            rows = Arrays.copyOf(found, count);
+            Arrays.sort(rows);
+            context.rows.put(this, rows);
+            return rows;
+        }
+
+        @Override
+        public String toString() {
+            return "under " + containerId;
+        }
+    }
+
+    private static final class NameContains extends Condition {
+        private final String text;
+
+        NameContains(String text) {
+            this.text = text;
+        }
+
+        // Each distinct name is checked once; rows then test their dictionary code.
+        @Override
+        RowFilter compile(Context context) {
+            NameDictionary dictionary = context.store.getDictionary();
+            boolean[] matches = new boolean[dictionary.size()];
+            for (int code = 0; code < matches.length; code++) {
+                String name = dictionary.name(code);
+                matches[code] = name != null && name.contains(text);
+            }
+            return (store, row) -> matches[store.getNameCode(row)];
+        }
+
+        @Override
+        public String toString() {
+            return "name ~ \"" + text.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+        }
+    }
+
+    private static final class FilterTask extends RecursiveTask<int[]> {
+        private final TaskStore store;
+        private final TaskStore.Rows candidates;
+        private final RowFilter[] filters;
+        private final int from;
+        private final int to;
+
+        FilterTask(TaskStore store, TaskStore.Rows candidates, RowFilter[] filters, int from, int to) {
+            this.store = store;
+            this.candidates = candidates;
+            this.filters = filters;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected int[] compute() {
+            if (to - from <= SCAN_CHUNK) {
+                return filter(store, candidates, filters, from, to);
+            }
+            int mid = (from + to) >>> 1;
+            FilterTask left = new FilterTask(store, candidates, filters, from, mid);
+            left.fork();
+            int[] right = new FilterTask(store, candidates, filters, mid, to).compute();
+            int[] leftRows = left.join();
+            int[] rows = Arrays.copyOf(leftRows, leftRows.length + right.length);
+            System.arraycopy(right, 0, rows, leftRows.length, right.length);
+            return rows;
+        }
+    }
+
+    private static String formatNumber(double value) {
+        return value == Math.rint(value) && !Double.isInfinite(value) && Math.abs(value) < 1e15
+                ? Long.toString((long) value) : Double.toString(value);
+    }
+
+    private static final class Parser {
+        private final String expression;
+        private final List<String> tokens = new ArrayList<>();
+        private final List<Integer> positions = new ArrayList<>();
+        private int next;
+
+        Parser(String expression) {
+            this.expression = expression;
+            Matcher matcher = TOKEN.matcher(expression);
+            int position = 0;
+            while (!expression.substring(position).trim().isEmpty()) {
+                matcher.region(position, expression.length());
+                if (!matcher.lookingAt()) {
+                    int bad = position;
+                    while (Character.isWhitespace(expression.charAt(bad))) {
+                        bad++;
+                    }
+                    throw error(bad, "unexpected character '" + expression.charAt(bad) + "'");
+                }
+                tokens.add(matcher.group(1));
+                positions.add(matcher.start(1));
+                position = matcher.end();
+            }
+        }
+
+        TaskQuery parse() {
+            TaskQuery query = new TaskQuery();
+            if (tokens.isEmpty()) {
+                return query;
+            }
+            condition(query);
+            while (next < tokens.size()) {
+                expectKeyword("and");
+                condition(query);
+            }
+            return query;
+        }
+
+        private void condition(TaskQuery query) {
+            int position = position();
+            String keyword = take("a condition").toLowerCase(Locale.ROOT);
+            switch (keyword) {
+                case "top":
+                    query.topLevel();
+                    break;
+                case "id":
+                    if (peekIsNumber() && next + 1 < tokens.size() && tokens.get(next + 1).equals("..")) {
+                        int first = integer();
+                        take("..");
+                        query.idBetween(first, integer());
+                    } else {
+                        query.where(Field.ID, op(), number());
+                    }
+                    break;
+                case "days":
+                    int first = integer();
+                    expect("..");
+                    query.activeBetween(first, integer());
+                    break;
+                case "start":
+                    query.where(Field.START_DAY, op(), number());
+                    break;
+                case "end":
+                    query.where(Field.END_DAY, op(), number());
+                    break;
+                case "cost":
+                    query.where(Field.COST, op(), number());
+                    break;
+                case "effort":
+                    query.where(Field.EFFORT, op(), number());
+                    break;
+                case "container":
+                    expect("=");
+                    query.childrenOf(integer());
+                    break;
+                case "under":
+                    query.descendantsOf(integer());
+                    break;
+                case "name":
+                    expect("~");
+                    query.nameContains(string());
+                    break;
+                default:
+                    throw error(position, "unknown condition '" + keyword + "'");
+            }
+        }
+
+        private Op op() {
+            int position = position();
+            Op op = Op.fromSymbol(take("a comparison"));
+            if (op == null) {
+                throw error(position, "expected one of = != < <= > >=");
+            }
+            return op;
+        }
+
+        private double number() {
+            int position = position();
+            String token = take("a number");
+            try {
+                return Double.parseDouble(token);
+            } catch (NumberFormatException e) {
+                throw error(position, "expected a number, found '" + token + "'");
+            }
+        }
+
+        private int integer() {
+            int position = position();
+            String token = take("an integer");
+            try {
+                return Integer.parseInt(token);
+            } catch (NumberFormatException e) {
+                throw error(position, "expected an integer, found '" + token + "'");
+            }
+        }
+
+        private String string() {
+            int position = position();
+            String token = take("a quoted string");
+            if (token.length() < 2 || token.charAt(0) != '"') {
+                throw error(position, "expected a quoted string");
+            }
+            return token.substring(1, token.length() - 1).replaceAll("\\\\(.)", "$1");
+        }
+
+        private boolean peekIsNumber() {
+            return next < tokens.size() && tokens.get(next).matches("-?\\d+");
+        }
+
+        private void expect(String token) {
+            int position = position();
+            if (!take("'" + token + "'").equals(token)) {
+                throw error(position, "expected '" + token + "'");
+            }
+        }
+
+        private void expectKeyword(String keyword) {
+            int position = position();
+            if (!take("'" + keyword + "'").equalsIgnoreCase(keyword)) {
+                throw error(position, "expected '" + keyword + "'");
+            }
+        }
+
+        private String take(String wanted) {
+            if (next >= tokens.size()) {
+                throw error(expression.length(), "expected " + wanted + " but the query ended");
+            }
+            return tokens.get(next++);
+        }
+
+        private int position() {
+            return next < positions.size() ? positions.get(next) : expression.length();
+        }
+
+        private IllegalArgumentException error(int position, String message) {
+            return new IllegalArgumentException("Query error at position " + position + ": " + message
+                    + " in \"" + expression + "\"");
+        }
+    }
+}
@@ -0,0 +1,633 @@
+package util;
+
+import dom.gantt.Dependency;
+import dom.gantt.DependencyType;
+import dom.gantt.TaskAbstract;
+import dom.gantt.TaskConcrete;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.RandomAccess;
+
+/*
+ * Column-oriented task storage: one primitive array per field and a bitmap for
+ * missing start/end days. Names are kept as codes into a NameDictionary.
+ * TaskAbstract objects are only created when a row is read through one of the list
+ * views, so queries and the Gantt renderer can scan the arrays directly.
+ *
+ * Predecessor links live in their own arrays: the links of row r are the linkCount[r]
+ * entries from linkStart[r]. A row's links are appended right after the row itself,
+ * and the per-row arrays are only allocated once some row has a link.
+ *
+ * A store handed to other threads, such as one published in a project snapshot, is
+ * not changed again; readers then need no locks and its views stay valid for as
+ * long as they are held.
+ */
+public class TaskStore {
+    private static final int DEFAULT_CAPACITY = 16;
+    private static final int TO_END = -1;
+    private static final DependencyType[] DEPENDENCY_TYPES = DependencyType.values();
+
+    private int size;
+    private int modCount;
+    private boolean sortedById = true;
+    private volatile TopLevelRows topLevel;
+    private final NameDictionary dictionary;
+    private int[] ids;
+    private int[] nameCodes;
+    private int[] containerIds;
+    private int[] startDays;
+    private int[] endDays;
+    private double[] costs;
+    private double[] efforts;
+    private long[] missingStart;
+    private long[] missingEnd;
+    private int[] linkStart;
+    private int[] linkCount;
+    private int[] linkIds;
+    private byte[] linkTypes;
+    private int[] linkLags;
+    private int links;
+
+    public TaskStore() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public TaskStore(int capacity) {
+        this(capacity, new NameDictionary());
+    }
+
+    // Stores sharing a dictionary can copy rows between each other without re-interning names.
+    public TaskStore(int capacity, NameDictionary dictionary) {
+        this.dictionary = dictionary;
+        allocate(Math.max(1, capacity));
+    }
+
+    // A full view of a store hands back that store; any other list is copied.
+    public static TaskStore from(List<TaskAbstract> tasks) {
+        if (tasks instanceof Rows && ((Rows) tasks).isFullView()) {
+            return ((Rows) tasks).store;
+        }
+        TaskStore store = new TaskStore(tasks.size());
+        for (TaskAbstract task : tasks) {
+            store.add(task);
+        }
+        return store;
+    }
+
+    public void add(TaskAbstract task) {
+        add(task.getId(), task.getName(), task.getContainerId(), task.getStartDay(), task.getEndDay(),
+                task.getCost(), task.getEffort());
+        for (Dependency link : task.getDependencies()) {
+            addPredecessor(link.getPredecessorId(), link.getType(), link.getLag());
+        }
+    }
+
+    public void add(int id, String name, int containerId, Integer startDay, Integer endDay, double cost, double effort) {
+        add(id, name, containerId, startDay != null, startDay != null ? startDay : 0,
+                endDay != null, endDay != null ? endDay : 0, cost, effort);
+    }
+
+    public void add(int id, String name, int containerId, boolean hasStartDay, int startDay, boolean hasEndDay, int endDay,
+                    double cost, double effort) {
+        addCoded(id, dictionary.intern(name), containerId, hasStartDay, startDay, hasEndDay, endDay, cost, effort);
+    }
+
+    // nameCode must come from this store's dictionary.
+    public void addCoded(int id, int nameCode, int containerId, boolean hasStartDay, int startDay, boolean hasEndDay,
+                         int endDay, double cost, double effort) {
+        if (size == ids.length) {
+            grow();
+        }
+        int row = size++;
+        modCount++;
+        if (row > 0 && ids[row - 1] > id) {
+            sortedById = false;
+        }
+        ids[row] = id;
+        nameCodes[row] = nameCode;
+        containerIds[row] = containerId;
+        startDays[row] = startDay;
+        endDays[row] = endDay;
+        costs[row] = cost;
+        efforts[row] = effort;
+        setBit(missingStart, row, !hasStartDay);
+        setBit(missingEnd, row, !hasEndDay);
+    }
+
+    public void addRow(TaskStore source, int row) {
+        int nameCode = source.dictionary == dictionary ? source.nameCodes[row] : dictionary.intern(source.getName(row));
+        addCoded(source.ids[row], nameCode, source.containerIds[row], source.hasStartDay(row), source.startDays[row],
+                source.hasEndDay(row), source.endDays[row], source.costs[row], source.efforts[row]);
+        addPredecessorsOf(source, row);
+    }
+
+    // Adds a predecessor link to the row added last.
+    public void addPredecessor(int predecessorId, DependencyType type, int lag) {
+        int row = size - 1;
+        if (row < 0) {
+            throw new IllegalStateException("No row to link");
+        }
+        if (linkStart == null) {
+            linkStart = new int[ids.length];
+            linkCount = new int[ids.length];
+            linkIds = new int[DEFAULT_CAPACITY];
+            linkTypes = new byte[DEFAULT_CAPACITY];
+            linkLags = new int[DEFAULT_CAPACITY];
+        }
+        if (linkCount[row] == 0) {
+            linkStart[row] = links;
+        } else if (linkStart[row] + linkCount[row] != links) {
+            throw new IllegalStateException("Links of row " + row + " must be added right after the row");
+        }
+        if (links == linkIds.length) {
+            int capacity = links * 2;
+            linkIds = Arrays.copyOf(linkIds, capacity);
+            linkTypes = Arrays.copyOf(linkTypes, capacity);
+            linkLags = Arrays.copyOf(linkLags, capacity);
+        }
+        linkIds[links] = predecessorId;
+        linkTypes[links] = (byte) type.ordinal();
+        linkLags[links] = lag;
+        links++;
+        linkCount[row]++;
+        modCount++;
+    }
+
+    // Copies the links of a source row to the row added last.
+    public void addPredecessorsOf(TaskStore source, int row) {
+        for (int i = 0; i < source.getPredecessorCount(row); i++) {
+            addPredecessor(source.getPredecessorId(row, i), source.getDependencyType(row, i), source.getLag(row, i));
+        }
+    }
+
+    // Moves a row to other days; meant for a copy that has not been handed to other threads yet.
+    public void setDays(int row, Integer startDay, Integer endDay) {
+        modCount++;
+        startDays[row] = startDay != null ? startDay : 0;
+        endDays[row] = endDay != null ? endDay : 0;
+        setBit(missingStart, row, startDay == null);
+        setBit(missingEnd, row, endDay == null);
+    }
+
+    // Same rows and dictionary in independent columns, so reordering the copy leaves views of this store alone.
+    public TaskStore copy() {
+        TaskStore copy = new TaskStore(1, dictionary);
+        copy.size = size;
+        copy.sortedById = sortedById;
+        copy.ids = ids.clone();
+        copy.nameCodes = nameCodes.clone();
+        copy.containerIds = containerIds.clone();
+        copy.startDays = startDays.clone();
+        copy.endDays = endDays.clone();
+        copy.costs = costs.clone();
+        copy.efforts = efforts.clone();
+        copy.missingStart = missingStart.clone();
+        copy.missingEnd = missingEnd.clone();
+        if (linkStart != null) {
+            copy.linkStart = linkStart.clone();
+            copy.linkCount = linkCount.clone();
+            copy.linkIds = linkIds.clone();
+            copy.linkTypes = linkTypes.clone();
+            copy.linkLags = linkLags.clone();
+            copy.links = links;
+        }
+        return copy;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Changes whenever rows are added, moved, replaced or reordered; indexes built over the store compare it.
+    public int getModCount() {
+        return modCount;
+    }
+
+    public int getId(int row) {
+        return ids[row];
+    }
+
+    public String getName(int row) {
+        return dictionary.name(nameCodes[row]);
+    }
+
+    public int getNameCode(int row) {
+        return nameCodes[row];
+    }
+
+    public NameDictionary getDictionary() {
+        return dictionary;
+    }
+
+    public int getContainerId(int row) {
+        return containerIds[row];
+    }
+
+    public boolean isTopLevel(int row) {
+        return containerIds[row] == 0;
+    }
+
+    public boolean hasStartDay(int row) {
+        return !getBit(missingStart, row);
+    }
+
+    public boolean hasEndDay(int row) {
+        return !getBit(missingEnd, row);
+    }
+
+    // Only meaningful when hasStartDay(row) is true.
+    public int getStartDay(int row) {
+        return startDays[row];
+    }
+
+    // Only meaningful when hasEndDay(row) is true.
+    public int getEndDay(int row) {
+        return endDays[row];
+    }
+
+    public double getCost(int row) {
+        return costs[row];
+    }
+
+    public double getEffort(int row) {
+        return efforts[row];
+    }
+
+    public int getPredecessorCount(int row) {
+        return linkCount != null ? linkCount[row] : 0;
+    }
+
+    public int getPredecessorId(int row, int index) {
+        return linkIds[linkStart[row] + index];
+    }
+
+    public DependencyType getDependencyType(int row, int index) {
+        return DEPENDENCY_TYPES[linkTypes[linkStart[row] + index]];
+    }
+
+    public int getLag(int row, int index) {
+        return linkLags[linkStart[row] + index];
+    }
+
+    // Links over all rows.
+    public int getLinkCount() {
+        return links;
+    }
+
+    public TaskAbstract getTask(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row " + row + " of " + size);
+        }
+        return new TaskConcrete(ids[row], getName(row), containerIds[row],
+                hasStartDay(row) ? startDays[row] : null, hasEndDay(row) ? endDays[row] : null, costs[row], efforts[row],
+                getDependencies(row));
+    }
+
+    private List<Dependency> getDependencies(int row) {
+        int count = getPredecessorCount(row);
+        if (count == 0) {
+            return Collections.emptyList();
+        }
+        List<Dependency> dependencies = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            dependencies.add(new Dependency(getPredecessorId(row, i), getDependencyType(row, i), getLag(row, i)));
+        }
+        return dependencies;
+    }
+
+    public List<TaskAbstract> asList() {
+        return new Rows(this, null, 0, TO_END);
+    }
+
+    public List<TaskAbstract> view(int[] rows) {
+        return new Rows(this, rows, 0, rows.length);
+    }
+
+    // View over the top-level rows, sharing an index array that is kept until the store changes.
+    public List<TaskAbstract> topLevelTasks() {
+        int[] rows = topLevelIndex();
+        return new Rows(this, rows, 0, rows.length);
+    }
+
+    public int[] topLevelRows() {
+        return topLevelIndex().clone();
+    }
+
+    /*
+     * View over the rows with an id in [firstIncluded, lastIncluded], in store order.
+     * On an id-sorted store the bounds are found by binary search and the view is a
+     * window onto the store; otherwise the matching rows are collected by a scan.
+     */
+    public List<TaskAbstract> tasksWithIdBetween(int firstIncluded, int lastIncluded) {
+        if (sortedById) {
+            int from = firstRowWithIdAtLeast(firstIncluded);
+            int to = firstIncluded > lastIncluded ? from : Math.max(from, firstRowWithIdAbove(lastIncluded));
+            return new Rows(this, null, from, to);
+        }
+        return view(rowsWithIdBetween(firstIncluded, lastIncluded));
+    }
+
+    public int[] rowsWithIdBetween(int firstIncluded, int lastIncluded) {
+        if (sortedById) {
+            int from = firstRowWithIdAtLeast(firstIncluded);
+            int to = firstIncluded > lastIncluded ? from : Math.max(from, firstRowWithIdAbove(lastIncluded));
+            int[] rows = new int[to - from];
+            for (int i = 0; i < rows.length; i++) {
+                rows[i] = from + i;
+            }
+            return rows;
+        }
+        int[] rows = new int[DEFAULT_CAPACITY];
+        int count = 0;
+        for (int row = 0; row < size; row++) {
+            int id = ids[row];
+            if (id >= firstIncluded && id <= lastIncluded) {
+                if (count == rows.length) {
+                    rows = Arrays.copyOf(rows, count * 2);
+                }
+                rows[count++] = row;
+            }
+        }
+        return Arrays.copyOf(rows, count);
+    }
+
+    // Tracked as rows are added and reordered, so this does not scan.
+    public boolean isSortedById() {
+        return sortedById;
+    }
+
+    // Stable: rows with equal ids keep their relative order.
+    public void sortById() {
+        if (isSortedById()) {
+            return;
+        }
+        reorder(orderById(null));
+    }
+
+    // Distinct names are compared once; rows are then ordered by the rank of their name code.
+    public void sortByName() {
+        int[] ranks = dictionary.sortedRanks();
+        long[] keys = new long[size];
+        for (int row = 0; row < size; row++) {
+            keys[row] = (long) ranks[nameCodes[row]] << 32 | row;
+        }
+        Arrays.sort(keys);
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = (int) keys[i];
+        }
+        reorder(order);
+    }
+
+    /*
+     * Returns the given rows (all rows when null) ordered by id, equal ids keeping
+     * their order. Each key packs the id above the position, so a plain primitive
+     * sort is stable.
+     */
+    public int[] orderById(int[] rows) {
+        int count = rows != null ? rows.length : size;
+        long[] keys = new long[count];
+        for (int i = 0; i < count; i++) {
+            int row = rows != null ? rows[i] : i;
+            keys[i] = (long) ids[row] << 32 | i;
+        }
+        Arrays.sort(keys);
+        int[] ordered = new int[count];
+        for (int i = 0; i < count; i++) {
+            int position = (int) keys[i];
+            ordered[i] = rows != null ? rows[position] : position;
+        }
+        return ordered;
+    }
+
+    private void reorder(int[] order) {
+        int[] newIds = new int[ids.length];
+        int[] newNameCodes = new int[nameCodes.length];
+        int[] newContainerIds = new int[containerIds.length];
+        int[] newStartDays = new int[startDays.length];
+        int[] newEndDays = new int[endDays.length];
+        double[] newCosts = new double[costs.length];
+        double[] newEfforts = new double[efforts.length];
+        long[] newMissingStart = new long[missingStart.length];
+        long[] newMissingEnd = new long[missingEnd.length];
+        int[] newLinkStart = linkStart != null ? new int[linkStart.length] : null;
+        int[] newLinkCount = linkCount != null ? new int[linkCount.length] : null;
+        for (int i = 0; i < size; i++) {
+            int row = order[i];
+            newIds[i] = ids[row];
+            newNameCodes[i] = nameCodes[row];
+            newContainerIds[i] = containerIds[row];
+            newStartDays[i] = startDays[row];
+            newEndDays[i] = endDays[row];
+            newCosts[i] = costs[row];
+            newEfforts[i] = efforts[row];
+            setBit(newMissingStart, i, getBit(missingStart, row));
+            setBit(newMissingEnd, i, getBit(missingEnd, row));
+            if (newLinkStart != null) {
+                newLinkStart[i] = linkStart[row];
+                newLinkCount[i] = linkCount[row];
+            }
+        }
+        modCount++;
+        ids = newIds;
+        nameCodes = newNameCodes;
+        containerIds = newContainerIds;
+        startDays = newStartDays;
+        endDays = newEndDays;
+        costs = newCosts;
+        efforts = newEfforts;
+        missingStart = newMissingStart;
+        missingEnd = newMissingEnd;
+        linkStart = newLinkStart;
+        linkCount = newLinkCount;
+        sortedById = true;
+        for (int row = 1; row < size && sortedById; row++) {
+            sortedById = ids[row - 1] <= ids[row];
+        }
+    }
+
+    // Readers on other threads may build this at the same time; the rows and their modCount are published together.
+    private int[] topLevelIndex() {
+        TopLevelRows cached = topLevel;
+        if (cached == null || cached.modCount != modCount) {
+            int count = 0;
+            for (int row = 0; row < size; row++) {
+                if (containerIds[row] == 0) {
+                    count++;
+                }
+            }
+            int[] rows = new int[count];
+            int next = 0;
+            for (int row = 0; row < size; row++) {
+                if (containerIds[row] == 0) {
+                    rows[next++] = row;
+                }
+            }
+            cached = new TopLevelRows(modCount, rows);
+            topLevel = cached;
+        }
+        return cached.rows;
+    }
+
+    private static final class TopLevelRows {
+        final int modCount;
+        final int[] rows;
+
+        TopLevelRows(int modCount, int[] rows) {
+            this.modCount = modCount;
+            this.rows = rows;
+        }
+    }
+
+    // Only valid on an id-sorted store.
+    private int firstRowWithIdAtLeast(int id) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (ids[mid] < id) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // Only valid on an id-sorted store.
+    private int firstRowWithIdAbove(int id) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (ids[mid] <= id) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private void allocate(int capacity) {
+        ids = new int[capacity];
+        nameCodes = new int[capacity];
+        containerIds = new int[capacity];
+        startDays = new int[capacity];
+        endDays = new int[capacity];
+        costs = new double[capacity];
+        efforts = new double[capacity];
+        missingStart = new long[(capacity + 63) >>> 6];
+        missingEnd = new long[(capacity + 63) >>> 6];
+    }
+
+    private void grow() {
+        int capacity = ids.length * 2;
+        ids = Arrays.copyOf(ids, capacity);
+        nameCodes = Arrays.copyOf(nameCodes, capacity);
+        containerIds = Arrays.copyOf(containerIds, capacity);
+        startDays = Arrays.copyOf(startDays, capacity);
+        endDays = Arrays.copyOf(endDays, capacity);
+        costs = Arrays.copyOf(costs, capacity);
+        efforts = Arrays.copyOf(efforts, capacity);
+        missingStart = Arrays.copyOf(missingStart, (capacity + 63) >>> 6);
+        missingEnd = Arrays.copyOf(missingEnd, (capacity + 63) >>> 6);
+        if (linkStart != null) {
+            linkStart = Arrays.copyOf(linkStart, capacity);
+            linkCount = Arrays.copyOf(linkCount, capacity);
+        }
+    }
+
+    private static boolean getBit(long[] bits, int row) {
+        return (bits[row >>> 6] & (1L << row)) != 0;
+    }
+
+    private static void setBit(long[] bits, int row, boolean value) {
+        if (value) {
+            bits[row >>> 6] |= 1L << row;
+        } else {
+            bits[row >>> 6] &= ~(1L << row);
+        }
+    }
+
+    /*
+     * Read-only list over all rows of a store, over a window of consecutive rows, or
+     * over a slice of an array of row numbers. Every get() builds a fresh TaskConcrete;
+     * callers that know about the store can read the columns through getStore() and
+     * storeRow() instead. subList() returns another view without copying.
+     */
+    public static final class Rows extends AbstractList<TaskAbstract> implements RandomAccess {
+        private final TaskStore store;
+        private final int[] rows;
+        private final int from;
+        private final int to;
+
+        // to == TO_END only for the full view of a store, which follows the store as it grows.
+        private Rows(TaskStore store, int[] rows, int from, int to) {
+            this.store = store;
+            this.rows = rows;
+            this.from = from;
+            this.to = to;
+        }
+
+        public TaskStore getStore() {
+            return store;
+        }
+
+        public int storeRow(int index) {
+            int size = size();
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index " + index + " of " + size);
+            }
+            return rows == null ? from + index : rows[from + index];
+        }
+
+        public Rows sortedById() {
+            if (rows == null && store.sortedById) {
+                return this;
+            }
+            int size = size();
+            for (int i = 1; i < size; i++) {
+                if (store.ids[storeRow(i - 1)] > store.ids[storeRow(i)]) {
+                    int[] ordered = store.orderById(selectedRows());
+                    return new Rows(store, ordered, 0, ordered.length);
+                }
+            }
+            return this;
+        }
+
+        @Override
+        public TaskAbstract get(int index) {
+            return store.getTask(storeRow(index));
+        }
+
+        @Override
+        public int size() {
+            return to == TO_END ? store.size : to - from;
+        }
+
+        @Override
+        public List<TaskAbstract> subList(int fromIndex, int toIndex) {
+            if (fromIndex < 0 || toIndex > size() || fromIndex > toIndex) {
+                throw new IndexOutOfBoundsException("Range " + fromIndex + ".." + toIndex + " of " + size());
+            }
+            return new Rows(store, rows, from + fromIndex, from + toIndex);
+        }
+
+        private boolean isFullView() {
+            return to == TO_END;
+        }
+
+        private int[] selectedRows() {
+            int[] selected = new int[size()];
+            for (int i = 0; i < selected.length; i++) {
+                selected[i] = storeRow(i);
+            }
+            return selected;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package util;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/*
+ * Working days around a project start date. Day numbers are the task day numbers:
+ * day 0 is the start date and day d falls d calendar days later. Over the span
+ * firstDay..lastDay the calendar keeps, in tables built once, the number of working
+ * days before each day, the day of every working day in order and a date label per
+ * day. A working-day test, a count of working days between two days, an offset by
+ * working days and a label are then single array lookups.
+ *
+ * Days outside the span are rejected; covering() gives the same calendar over a
+ * wider span.
+ */
+public class WorkCalendar {
+    private static final DateTimeFormatter LABEL_FORMAT = DateTimeFormatter.ofPattern("dd-MM-yyyy");
+
+    private final LocalDate startDate;
+    private final boolean[] weekend = new boolean[7];
+    private final Set<LocalDate> holidays;
+    private final int firstDay;
+    private final int lastDay;
+    // workingBefore[i] counts the working days in firstDay .. firstDay + i - 1.
+    private final int[] workingBefore;
+    private final int[] workingDays;
+    private final String[] labels;
+
+    public WorkCalendar(LocalDate startDate, Collection<DayOfWeek> weekendDays, Collection<LocalDate> holidays,
+                        int firstDay, int lastDay) {
+        if (lastDay < firstDay) {
+            throw new IllegalArgumentException("Empty calendar span " + firstDay + ".." + lastDay);
+        }
+        this.startDate = startDate;
+        for (DayOfWeek day : weekendDays) {
+            weekend[day.ordinal()] = true;
+        }
+        this.holidays = new HashSet<>(holidays);
+        this.firstDay = firstDay;
+        this.lastDay = lastDay;
+
+        int span = lastDay - firstDay + 1;
+        workingBefore = new int[span + 1];
+        labels = new String[span];
+        int[] working = new int[span];
+        int count = 0;
+        LocalDate date = startDate.plusDays(firstDay);
+        for (int i = 0; i < span; i++) {
+            if (!weekend[date.getDayOfWeek().ordinal()] && !this.holidays.contains(date)) {
+                working[count++] = firstDay + i;
+            }
+            workingBefore[i + 1] = count;
+            labels[i] = LABEL_FORMAT.format(date);
+            date = date.plusDays(1);
+        }
+        workingDays = Arrays.copyOf(working, count);
+    }
+
+    // Saturday and Sunday off, no holidays.
+    public static WorkCalendar standard(LocalDate startDate, int firstDay, int lastDay) {
+        return new WorkCalendar(startDate, Arrays.asList(DayOfWeek.SATURDAY, DayOfWeek.SUNDAY),
+                new HashSet<LocalDate>(), firstDay, lastDay);
+    }
+
+    // This calendar when it already spans from..to, otherwise the same rules over the wider span.
+    public WorkCalendar covering(int from, int to) {
+        if (from >= firstDay && to <= lastDay) {
+            return this;
+        }
+        Set<DayOfWeek> weekendDays = new HashSet<>();
+        for (DayOfWeek day : DayOfWeek.values()) {
+            if (weekend[day.ordinal()]) {
+                weekendDays.add(day);
+            }
+        }
+        return new WorkCalendar(startDate, weekendDays, holidays, Math.min(from, firstDay), Math.max(to, lastDay));
+    }
+
+    public LocalDate getStartDate() {
+        return startDate;
+    }
+
+    public int getFirstDay() {
+        return firstDay;
+    }
+
+    public int getLastDay() {
+        return lastDay;
+    }
+
+    public boolean covers(int day) {
+        return day >= firstDay && day <= lastDay;
+    }
+
+    // Plain date arithmetic, so any day converts, inside the span or not.
+    public LocalDate toDate(int day) {
+        return startDate.plusDays(day);
+    }
+
+    public int toDay(LocalDate date) {
+        return Math.toIntExact(date.toEpochDay() - startDate.toEpochDay());
+    }
+
+    public boolean isWorkingDay(int day) {
+        int i = index(day);
+        return workingBefore[i + 1] > workingBefore[i];
+    }
+
+    // Working days in from..to, both included; zero when to is before from.
+    public int countWorkingDays(int from, int to) {
+        if (to < from) {
+            return 0;
+        }
+        return workingBefore[index(to) + 1] - workingBefore[index(from)];
+    }
+
+    /*
+     * The day that lies the given number of working days after the first working
+     * day on or after day, so 0 moves a weekend or holiday to the next working day.
+     */
+    public int addWorkingDays(int day, int workingDayCount) {
+        int rank = workingBefore[index(day)] + workingDayCount;
+        if (workingDayCount < 0 || rank >= workingDays.length) {
+            throw new IllegalArgumentException("No working day " + workingDayCount + " after day " + day
+                    + " within the calendar");
+        }
+        return workingDays[rank];
+    }
+
+    // The day's date as dd-MM-yyyy, formatted when the calendar was built.
+    public String getLabel(int day) {
+        return labels[index(day)];
+    }
+
+    private int index(int day) {
+        if (day < firstDay || day > lastDay) {
+            throw new IllegalArgumentException("Day " + day + " is outside the calendar span " + firstDay + ".." + lastDay);
+        }
+        return day - firstDay;
+    }
+}
@@ -0,0 +1,126 @@
+package app.ingest;
+
+import org.apache.poi.hssf.record.FormulaRecord;
+import org.apache.poi.hssf.record.Record;
+import org.apache.poi.hssf.record.RecordFactory;
+import org.apache.poi.hssf.record.RecordInputStream;
+import org.apache.poi.hssf.record.SharedFormulaRecord;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.poifs.filesystem.POIFSFileSystem;
+import org.apache.poi.ss.formula.ptg.ExpPtg;
+import org.apache.poi.ss.formula.ptg.Ptg;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class XlsEventReaderTest {
+    private static final int ROWS = 4;
+
+    @Test
+    public void sharedFormulasDescribeAsTheUsermodelShowsThem() throws IOException {
+        byte[] workbook = filledDownFormulaWorkbook();
+
+        List<String> expected = new ArrayList<>();
+        try (HSSFWorkbook usermodel = new HSSFWorkbook(new ByteArrayInputStream(workbook))) {
+            for (Row row : usermodel.getSheetAt(0)) {
+                for (Cell cell : row) {
+                    expected.add(cell.toString());
+                }
+            }
+        }
+        List<String> described = new ArrayList<>();
+        List<CellType> types = new ArrayList<>();
+        try (InputStream in = new ByteArrayInputStream(workbook)) {
+            new XlsEventReader(in).readFirstSheet(row -> {
+                for (int col = 0; col < row.getWidth(); col++) {
+                    described.add(row.describe(col));
+                    types.add(row.getCellType(col));
+                }
+            });
+        }
+
+        assertEquals("A2*2", expected.get(3));
+        assertEquals(expected, described);
+        for (int row = 0; row < ROWS; row++) {
+            assertEquals(CellType.FORMULA, types.get(row * 2 + 1));
+        }
+    }
+
+    /*
+     * Column A holds 1..4 and column B the formula A1*2 filled down, stored the way
+     * Excel stores a fill: one SHRFMLA record after the first formula cell, and
+     * every formula cell holding only a pointer to it. HSSFWorkbook does not write
+     * shared formulas, so its records are rewritten.
+     */
+    private static byte[] filledDownFormulaWorkbook() throws IOException {
+        ByteArrayOutputStream plain = new ByteArrayOutputStream();
+        try (HSSFWorkbook workbook = new HSSFWorkbook()) {
+            Sheet sheet = workbook.createSheet("Tasks");
+            for (int r = 0; r < ROWS; r++) {
+                Row row = sheet.createRow(r);
+                row.createCell(0).setCellValue(r + 1);
+                row.createCell(1).setCellFormula("A" + (r + 1) + "*2");
+            }
+            workbook.write(plain);
+        }
+
+        List<Record> records;
+        try (POIFSFileSystem fs = new POIFSFileSystem(new ByteArrayInputStream(plain.toByteArray()))) {
+            records = RecordFactory.createRecords(fs.createDocumentInputStream("Workbook"));
+        }
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        for (Record record : records) {
+            if (record instanceof FormulaRecord) {
+                FormulaRecord formula = (FormulaRecord) record;
+                formula.setParsedExpression(new Ptg[]{new ExpPtg(0, 1)});
+                formula.setSharedFormula(true);
+                stream.write(formula.serialize());
+                if (formula.getRow() == 0) {
+                    stream.write(sharedFormulaRecord().serialize());
+                }
+            } else {
+                stream.write(record.serialize());
+            }
+        }
+
+        ByteArrayOutputStream rewritten = new ByteArrayOutputStream();
+        try (POIFSFileSystem fs = new POIFSFileSystem()) {
+            fs.createDocument(new ByteArrayInputStream(stream.toByteArray()), "Workbook");
+            fs.writeFilesystem(rewritten);
+        }
+        return rewritten.toByteArray();
+    }
+
+    // B1:B4 sharing "the cell to the left times 2": a relative RefN token, the integer 2 and a multiply.
+    private static SharedFormulaRecord sharedFormulaRecord() {
+        byte[] tokens = {0x4C, 0x00, 0x00, (byte) 0xFF, (byte) 0xC0, 0x1E, 0x02, 0x00, 0x05};
+        byte[] body = new byte[10 + tokens.length];
+        body[2] = ROWS - 1;
+        body[4] = 1;
+        body[5] = 1;
+        body[7] = ROWS;
+        body[8] = (byte) tokens.length;
+        System.arraycopy(tokens, 0, body, 10, tokens.length);
+
+        ByteArrayOutputStream record = new ByteArrayOutputStream();
+        record.write(SharedFormulaRecord.sid & 0xFF);
+        record.write(SharedFormulaRecord.sid >> 8);
+        record.write(body.length);
+        record.write(0);
+        record.write(body, 0, body.length);
+        RecordInputStream in = new RecordInputStream(new ByteArrayInputStream(record.toByteArray()));
+        in.nextRecord();
+        return new SharedFormulaRecord(in);
+    }
+}
@@ -0,0 +1,107 @@
+package util;
+
+import org.junit.Test;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/*
+ * Moves tasks the way the controller does, updates the schedule incrementally and
+ * checks it against a schedule computed from scratch for the moved store.
+ */
+public class CriticalPathUpdateTest {
+    @Test
+    public void updateMatchesComputeAfterRandomMoves() {
+        Random random = new Random(11);
+        for (int trial = 0; trial < 500; trial++) {
+            int size = 1 + random.nextInt(40);
+            TaskStore store = RandomStores.randomStore(random, size, random.nextInt(5) == 0);
+            CriticalPath schedule = CriticalPath.compute(store);
+            for (int edit = 0; edit < 10; edit++) {
+                String context = "trial " + trial + ", edit " + edit;
+                CriticalPath updated = move(schedule, random);
+                CriticalPath full = CriticalPath.compute(updated.getStore().copy());
+                assertSameSchedule(context, full, updated);
+                assertArrayEquals(context, expectedChangedRows(schedule, full), updated.getChangedRows());
+                schedule = updated;
+            }
+        }
+    }
+
+    /*
+     * Moves up to three tasks to random days, pushes the tasks that can no longer start
+     * on their own start day to their early start, and carries the schedule over to the
+     * result, as the controller's moveTask does.
+     */
+    private static CriticalPath move(CriticalPath schedule, Random random) {
+        TaskStore next = schedule.getStore().copy();
+        int[] rows = new int[1 + random.nextInt(3)];
+        BitSet moved = new BitSet(next.size());
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = random.nextInt(next.size());
+            int startDay = random.nextInt(25) - 2;
+            int kind = random.nextInt(6);
+            next.setDays(rows[i], kind == 0 ? null : Integer.valueOf(startDay),
+                    kind == 1 ? null : Integer.valueOf(startDay + random.nextInt(7) - 1));
+            moved.set(rows[i]);
+        }
+        CriticalPath pushed = schedule.update(next, rows);
+        for (int row : pushed.getChangedRows()) {
+            if (!moved.get(row) && pushed.isScheduled(row) && next.hasStartDay(row)
+                    && pushed.getEarlyStart(row) != next.getStartDay(row)) {
+                int shift = pushed.getEarlyStart(row) - next.getStartDay(row);
+                next.setDays(row, next.getStartDay(row) + shift, next.hasEndDay(row) ? next.getEndDay(row) + shift : null);
+                moved.set(row);
+            }
+        }
+        return schedule.update(next, moved.stream().toArray());
+    }
+
+    private static void assertSameSchedule(String context, CriticalPath expected, CriticalPath actual) {
+        assertEquals(context, expected.getProjectStart(), actual.getProjectStart());
+        assertEquals(context, expected.getProjectFinish(), actual.getProjectFinish());
+        for (int row = 0; row < expected.getStore().size(); row++) {
+            String where = context + ", row " + row;
+            assertEquals(where, expected.isScheduled(row), actual.isScheduled(row));
+            assertEquals(where, expected.getDuration(row), actual.getDuration(row));
+            if (expected.isScheduled(row)) {
+                assertEquals(where, expected.getEarlyStart(row), actual.getEarlyStart(row));
+                assertEquals(where, expected.getLateStart(row), actual.getLateStart(row));
+                assertEquals(where, expected.getSlack(row), actual.getSlack(row));
+            }
+        }
+    }
+
+    /*
+     * Rows whose scheduling or duration changed, and scheduled rows whose early start
+     * or distance from late finish to the end of the project changed.
+     */
+    private static int[] expectedChangedRows(CriticalPath before, CriticalPath after) {
+        int size = after.getStore().size();
+        int beforeEnd = end(before);
+        int afterEnd = end(after);
+        BitSet changed = new BitSet(size);
+        for (int row = 0; row < size; row++) {
+            if (before.isScheduled(row) != after.isScheduled(row) || before.getDuration(row) != after.getDuration(row)
+                    || after.isScheduled(row) && (before.getEarlyStart(row) != after.getEarlyStart(row)
+                    || beforeEnd - before.getLateStart(row) != afterEnd - after.getLateStart(row))) {
+                changed.set(row);
+            }
+        }
+        return changed.stream().toArray();
+    }
+
+    // The day after the last early finish, as the late dates count back from it.
+    private static int end(CriticalPath schedule) {
+        int end = schedule.getProjectStart();
+        for (int row = 0; row < schedule.getStore().size(); row++) {
+            if (schedule.isScheduled(row)) {
+                end = Math.max(end, schedule.getEarlyStart(row) + schedule.getDuration(row));
+            }
+        }
+        return end;
+    }
+}
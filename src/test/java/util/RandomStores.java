@@ -0,0 +1,37 @@
+package util;
+
+import dom.gantt.DependencyType;
+
+import java.util.Random;
+
+// Random task stores shared by the tests that check schedules against a reference.
+final class RandomStores {
+    private static final DependencyType[] TYPES = DependencyType.values();
+
+    private RandomStores() {
+    }
+
+    /*
+     * Nested tasks, some without days and some without an end day, with up to three
+     * FS/SS/FF/SF links each and lags from -3 to 3. Without cycles a task only links
+     * to tasks before it; with cycles links may point anywhere, past the last id too.
+     */
+    static TaskStore randomStore(Random random, int size, boolean cycles) {
+        TaskStore store = new TaskStore();
+        for (int id = 1; id <= size; id++) {
+            boolean dated = random.nextInt(6) != 0;
+            int startDay = random.nextInt(20) - 5;
+            int containerId = id == 1 || random.nextInt(3) == 0 ? 0 : 1 + random.nextInt(id - 1);
+            store.add(id, "Task " + id, containerId, dated ? Integer.valueOf(startDay) : null,
+                    dated && random.nextInt(5) != 0 ? Integer.valueOf(startDay + random.nextInt(8) - 1) : null, 0, 0);
+            int links = random.nextInt(4);
+            for (int i = 0; i < links; i++) {
+                int predecessor = cycles ? 1 + random.nextInt(size + 2) : id > 1 ? 1 + random.nextInt(id - 1) : 0;
+                if (predecessor > 0) {
+                    store.addPredecessor(predecessor, TYPES[random.nextInt(TYPES.length)], random.nextInt(7) - 3);
+                }
+            }
+        }
+        return store;
+    }
+}
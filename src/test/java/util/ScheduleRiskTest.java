@@ -0,0 +1,112 @@
+package util;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.SplittableRandom;
+
+import static org.junit.Assert.assertEquals;
+
+/*
+ * Checks the simulation against a reference that, for every iteration, writes the
+ * sampled durations into a copy of the store and computes its schedule from scratch.
+ * With one worker the simulation draws the same durations in the same order.
+ */
+public class ScheduleRiskTest {
+    private static final double[] PERCENTS = {0, 10, 50, 80, 95, 100};
+    private static final double LOW_FACTOR = 0.5;
+    private static final double HIGH_FACTOR = 2.0;
+
+    @Test
+    public void percentilesMatchScheduleRebuiltPerIteration() {
+        Random random = new Random(11);
+        for (int trial = 0; trial < 200; trial++) {
+            int size = 1 + random.nextInt(40);
+            TaskStore store = RandomStores.randomStore(random, size, random.nextInt(4) == 0);
+            CriticalPath schedule = CriticalPath.compute(store);
+            HierarchyIndex hierarchy = HierarchyIndex.build(store);
+            DurationDistribution distribution = DurationDistribution.values()[random.nextInt(3)];
+            int iterations = 1 + random.nextInt(300);
+            long seed = random.nextLong();
+
+            ScheduleRisk risk = ScheduleRisk.simulate(schedule, hierarchy, distribution, LOW_FACTOR, HIGH_FACTOR,
+                    iterations, seed, 1);
+            int[][] finishes = referenceFinishes(store, schedule, hierarchy, distribution, iterations, seed);
+            for (int row = 0; row <= size; row++) {
+                int[] sorted = finishes[row].clone();
+                Arrays.sort(sorted);
+                for (double percent : PERCENTS) {
+                    int index = (int) Math.max(1, Math.ceil(percent / 100 * iterations)) - 1;
+                    int actual = row == size ? risk.getProjectFinishPercentile(percent)
+                            : risk.getFinishPercentile(row, percent);
+                    assertEquals("trial " + trial + ", row " + row + ", P" + percent, sorted[index], actual);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void fixedDurationsGiveTheSameFinishesOnAnyNumberOfWorkers() {
+        Random random = new Random(5);
+        for (int trial = 0; trial < 50; trial++) {
+            int size = 1 + random.nextInt(40);
+            TaskStore store = RandomStores.randomStore(random, size, false);
+            CriticalPath schedule = CriticalPath.compute(store);
+            HierarchyIndex hierarchy = HierarchyIndex.build(store);
+            ScheduleRisk sequential = ScheduleRisk.simulate(schedule, hierarchy, DurationDistribution.FIXED,
+                    LOW_FACTOR, HIGH_FACTOR, 100, trial, 1);
+            ScheduleRisk parallel = ScheduleRisk.simulate(schedule, hierarchy, DurationDistribution.FIXED,
+                    LOW_FACTOR, HIGH_FACTOR, 100, trial, 4);
+            for (int row = 0; row < size; row++) {
+                assertEquals(sequential.getFinishPercentile(row, 50), parallel.getFinishPercentile(row, 50));
+            }
+            assertEquals(schedule.getProjectFinish(), parallel.getProjectFinishPercentile(100));
+        }
+    }
+
+    /*
+     * The finish day of every row in every iteration, and the project finish in the
+     * last row. Rows left unscheduled finish on their own start, or the project start
+     * without one, plus their sampled duration; a container finishes on the latest
+     * day of its subtree.
+     */
+    private static int[][] referenceFinishes(TaskStore store, CriticalPath schedule, HierarchyIndex hierarchy,
+                                             DurationDistribution distribution, int iterations, long seed) {
+        int size = store.size();
+        SplittableRandom random = new SplittableRandom(seed).split();
+        int[][] finishes = new int[size + 1][iterations];
+        int[] durations = new int[size];
+        int[] own = new int[size];
+        for (int iteration = 0; iteration < iterations; iteration++) {
+            TaskStore sampled = store.copy();
+            for (int row = 0; row < size; row++) {
+                double planned = schedule.getDuration(row);
+                durations[row] = planned == 0 ? 0 : (int) Math.round(distribution.sample(
+                        planned * LOW_FACTOR, planned, planned * HIGH_FACTOR, random.nextDouble()));
+                if (planned != 0) {
+                    sampled.setDays(row, store.getStartDay(row), store.getStartDay(row) + durations[row] - 1);
+                }
+            }
+            CriticalPath rebuilt = CriticalPath.compute(sampled);
+            for (int row = 0; row < size; row++) {
+                int start = rebuilt.isScheduled(row) ? rebuilt.getEarlyStart(row)
+                        : store.hasStartDay(row) ? store.getStartDay(row) : rebuilt.getProjectStart();
+                own[row] = start + Math.max(durations[row], 1) - 1;
+            }
+            for (int row = 0; row < size; row++) {
+                finishes[row][iteration] = subtreeFinish(hierarchy, own, row);
+            }
+            finishes[size][iteration] = rebuilt.getProjectFinish();
+        }
+        return finishes;
+    }
+
+    private static int subtreeFinish(HierarchyIndex hierarchy, int[] own, int row) {
+        int finish = own[row];
+        for (int child : hierarchy.childRows(row)) {
+            finish = Math.max(finish, subtreeFinish(hierarchy, own, child));
+        }
+        return finish;
+    }
+}